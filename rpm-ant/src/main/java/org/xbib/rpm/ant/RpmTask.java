@@ -13,11 +13,13 @@ import org.xbib.rpm.header.HeaderTag;
 import org.xbib.rpm.lead.Architecture;
 import org.xbib.rpm.lead.Os;
 import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.ArchiveEntry;
 import org.xbib.rpm.payload.CpioHeader;
 import org.xbib.rpm.payload.Directive;
 import org.xbib.rpm.payload.EmptyDir;
 import org.xbib.rpm.payload.Ghost;
 import org.xbib.rpm.payload.Link;
+import org.xbib.rpm.payload.ZipArchive;
 import org.xbib.rpm.trigger.TriggerIn;
 import org.xbib.rpm.trigger.TriggerPostUn;
 import org.xbib.rpm.trigger.TriggerPreIn;
@@ -26,7 +28,6 @@ import org.xbib.rpm.trigger.TriggerUn;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
-import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -182,6 +183,7 @@ public class RpmTask extends Task {
                 rpmBuilder.addBuiltinDirectory(builtIn.getText());
             }
         }
+        List<ZipArchive> archives = new ArrayList<>();
         try {
             if (preTransScript != null) {
                 rpmBuilder.setPreTrans(preTransScript);
@@ -209,8 +211,12 @@ public class RpmTask extends Task {
                         emptyDir.getUsername(), emptyDir.getGroup(), true);
             }
             for (ArchiveFileSet fileset : filesets) {
-                Path archive = fileset.getSrc(getProject()) != null ?
-                        fileset.getSrc(getProject()).toPath() : null;
+                ZipArchive archive = null;
+                if (fileset.getSrc(getProject()) != null) {
+                    // all entries are read from the archive opened once, with the sizes of its central directory
+                    archive = new ZipArchive(fileset.getSrc(getProject()).toPath());
+                    archives.add(archive);
+                }
                 String prefix = CpioHeader.normalizePath(fileset.getPrefix(getProject()));
                 if (!prefix.endsWith("/")) {
                     prefix += "/";
@@ -238,8 +244,12 @@ public class RpmTask extends Task {
                 }
                 for (String entry : directoryScanner.getIncludedFiles()) {
                     if (archive != null) {
-                        URL url = new URL("jar:" + archive.toUri().toURL() + "!/" + entry);
-                        rpmBuilder.addURL(prefix + entry, url, filemode, dirmode, directive, username, group);
+                        ArchiveEntry archiveEntry = archive.getEntry(entry);
+                        if (archiveEntry == null) {
+                            throw new BuildException("entry " + entry + " not found in " + archive);
+                        }
+                        rpmBuilder.addArchiveEntry(prefix + entry, archiveEntry, filemode, dirmode, directive,
+                                username, group);
                     } else {
                         Path path = directoryScanner.getBasedir().toPath().resolve(entry);
                         rpmBuilder.addFile(prefix + entry, path, filemode, dirmode, directive, username, group, true);
@@ -282,6 +292,14 @@ public class RpmTask extends Task {
             rpmBuilder.build(destination);
         } catch (IOException | RpmException | NoSuchAlgorithmException e) {
             throw new BuildException("error while building package", e);
+        } finally {
+            for (ZipArchive archive : archives) {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    log("unable to close " + archive + ": " + e.getMessage());
+                }
+            }
         }
     }
 
@@ -0,0 +1,65 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.payload.CompressionType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds packages of many small files and of a few huge files, with each payload compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BuildBenchmark {
+
+    @Param({"SMALL", "HUGE"})
+    public Fixtures.Layout layout;
+
+    @Param({"NONE", "GZIP", "BZIP2", "XZ", "ZSTD"})
+    public CompressionType compressionType;
+
+    private Path directory;
+
+    private Path target;
+
+    private List<Path> files;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("rpm-benchmark-files");
+        target = Files.createTempDirectory("rpm-benchmark-build");
+        files = Fixtures.createFiles(directory, layout);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+        Fixtures.delete(target);
+    }
+
+    @Benchmark
+    public long build() throws Exception {
+        RpmBuilder rpmBuilder = Fixtures.newBuilder("build-benchmark", compressionType, directory, files);
+        rpmBuilder.build(target);
+        return Files.size(target.resolve("build-benchmark-1.0-1.noarch.rpm"));
+    }
+}
@@ -0,0 +1,73 @@
+package org.xbib.rpm.benchmark;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A channel reading from and writing to a byte buffer, so the benchmarks measure encoding and decoding
+ * without any I/O. Writes beyond the capacity are counted, but discarded.
+ */
+public class ByteBufferChannel implements ReadableByteChannel, WritableByteChannel {
+
+    private final ByteBuffer buffer;
+
+    private long written;
+
+    public ByteBufferChannel(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    public ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Rewinds the channel, so the same bytes can be read or written again.
+     *
+     * @return this channel
+     */
+    public ByteBufferChannel rewind() {
+        buffer.rewind();
+        written = 0;
+        return this;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) {
+        if (!buffer.hasRemaining()) {
+            return -1;
+        }
+        int n = Math.min(dst.remaining(), buffer.remaining());
+        ByteBuffer slice = buffer.slice();
+        slice.limit(n);
+        dst.put(slice);
+        buffer.position(buffer.position() + n);
+        return n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        int n = src.remaining();
+        int stored = Math.min(n, buffer.remaining());
+        ByteBuffer slice = src.slice();
+        slice.limit(stored);
+        buffer.put(slice);
+        src.position(src.position() + n);
+        written += n;
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,133 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.io.ChannelWrapper;
+import org.xbib.rpm.io.ReadableChannelWrapper;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads 16 MiB through a channel wrapper with MD5, SHA-1 and SHA-256 digest consumers, like the signature
+ * header digests of a build, to measure the dispatch of the read bytes to the consumers for heap and direct
+ * buffers. The baseline repeats the former dispatch, from a hash map of consumers and with a duplicate of
+ * the buffer for every consumer on every read.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelWrapperBenchmark {
+
+    private static final String[] ALGORITHMS = { "MD5", "SHA-1", "SHA-256" };
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    @Param({"1", "3"})
+    public int consumers;
+
+    @Param({"8192", "65536"})
+    public int bufferSize;
+
+    private ByteBufferChannel input;
+
+    private ByteBuffer buffer;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        byte[] bytes = new byte[16 * 1024 * 1024];
+        new Random(42L).nextBytes(bytes);
+        input = new ByteBufferChannel(ByteBuffer.wrap(bytes));
+        buffer = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    @Benchmark
+    public int dispatch() throws Exception {
+        ReadableChannelWrapper wrapper = new ReadableChannelWrapper(input.rewind());
+        List<ChannelWrapper.Key<byte[]>> keys = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            keys.add(wrapper.startDigest(MessageDigest.getInstance(ALGORITHMS[i % ALGORITHMS.length])));
+        }
+        buffer.clear();
+        while (wrapper.read(buffer) != -1) {
+            buffer.clear();
+        }
+        int total = 0;
+        for (ChannelWrapper.Key<byte[]> key : keys) {
+            total += wrapper.finish(key)[0];
+        }
+        return total;
+    }
+
+    @Benchmark
+    public int baseline() throws Exception {
+        HashMapWrapper wrapper = new HashMapWrapper(input.rewind());
+        List<Object> keys = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            keys.add(wrapper.startDigest(ALGORITHMS[i % ALGORITHMS.length]));
+        }
+        buffer.clear();
+        while (wrapper.read(buffer) != -1) {
+            buffer.clear();
+        }
+        int total = 0;
+        for (Object key : keys) {
+            total += wrapper.finish(key)[0];
+        }
+        return total;
+    }
+
+    /**
+     * The former dispatch of ReadableChannelWrapper.
+     */
+    private static class HashMapWrapper {
+
+        private final Map<Object, MessageDigest> consumers = new HashMap<>();
+
+        private final ReadableByteChannel channel;
+
+        HashMapWrapper(ReadableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        Object startDigest(String algorithm) throws NoSuchAlgorithmException {
+            Object key = new Object();
+            consumers.put(key, MessageDigest.getInstance(algorithm));
+            return key;
+        }
+
+        int read(ByteBuffer buffer) throws IOException {
+            int read = channel.read(buffer);
+            for (MessageDigest digest : consumers.values()) {
+                digest.update(buffer.duplicate().flip());
+            }
+            return read;
+        }
+
+        byte[] finish(Object key) {
+            return consumers.remove(key).digest();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.payload.Contents;
+import org.xbib.rpm.payload.CpioHeader;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds the entries of a deep directory tree to the contents, with their parent directories, and iterates
+ * them in archive order. The baseline repeats the former indexing of the contents, with sets of path strings,
+ * parent directories found by walking {@link Path} objects, and a tree set of headers ordered by name.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class ContentsBenchmark {
+
+    private static final int FILES_PER_DIRECTORY = 20;
+
+    private static final int DIRECTORIES_PER_LEVEL = 10;
+
+    @Param({"100000", "1000000"})
+    private int count;
+
+    private List<String> paths;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder sb = new StringBuilder("/opt/benchmark");
+            for (int d = i / FILES_PER_DIRECTORY; d > 0; d /= DIRECTORIES_PER_LEVEL) {
+                sb.append("/dir-").append(d % DIRECTORIES_PER_LEVEL);
+            }
+            paths.add(sb.append("/file-").append(i).append(".so.1").toString());
+        }
+    }
+
+    @Benchmark
+    public int contents() {
+        Contents contents = new Contents();
+        for (String path : paths) {
+            contents.addLink(path, "target", -1, null, null, 0, 0, true);
+        }
+        int n = 0;
+        for (CpioHeader header : contents.headers()) {
+            n += header.getName().length();
+        }
+        return n;
+    }
+
+    @Benchmark
+    public int baseline() {
+        Set<String> builtins = new LinkedHashSet<>(List.of("/", "/opt"));
+        Set<String> files = new LinkedHashSet<>();
+        Set<CpioHeader> headers = new TreeSet<>(Comparator.comparing(CpioHeader::getName));
+        for (String path : paths) {
+            add(path, files, headers, builtins);
+        }
+        int n = 0;
+        for (CpioHeader header : headers) {
+            n += header.getName().length();
+        }
+        return n;
+    }
+
+    private static void add(String path, Set<String> files, Set<CpioHeader> headers, Set<String> builtins) {
+        if (files.contains(path)) {
+            return;
+        }
+        List<String> parents = new ArrayList<>();
+        Path parent = Paths.get(path).getParent();
+        while (parent != null) {
+            String s = CpioHeader.normalizePath(parent.toString());
+            if (builtins.contains(s)) {
+                break;
+            }
+            parents.add(s);
+            parent = parent.getParent();
+        }
+        for (String s : parents) {
+            add(s, files, headers, builtins);
+        }
+        files.add(path);
+        headers.add(new CpioHeader(path));
+    }
+}
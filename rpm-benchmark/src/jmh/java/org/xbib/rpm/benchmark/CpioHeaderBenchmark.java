@@ -0,0 +1,77 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.payload.CpioHeader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encodes and decodes CPIO headers in the classic and in the stripped format.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CpioHeaderBenchmark {
+
+    private CpioHeader header;
+
+    private ByteBufferChannel output;
+
+    private ByteBufferChannel input;
+
+    private ByteBufferChannel strippedInput;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        header = new CpioHeader("./opt/benchmark/dir-0042/file-004217.bin");
+        header.setType(CpioHeader.FILE);
+        header.setPermissions(0644);
+        header.setFileSize(4096);
+        header.setMtime(1600000000000L);
+        header.setInode(4217);
+        output = new ByteBufferChannel(ByteBuffer.allocate(512));
+        header.write(output, 0);
+        input = new ByteBufferChannel(output.getBuffer().flip().slice());
+        ByteBufferChannel stripped = new ByteBufferChannel(ByteBuffer.allocate(512));
+        header.writeStripped(stripped, 0, 4217);
+        strippedInput = new ByteBufferChannel(stripped.getBuffer().flip().slice());
+        output = new ByteBufferChannel(ByteBuffer.allocate(512));
+    }
+
+    @Benchmark
+    public int encode() throws Exception {
+        return header.write(output.rewind(), 0);
+    }
+
+    @Benchmark
+    public int encodeStripped() throws Exception {
+        return header.writeStripped(output.rewind(), 0, 4217);
+    }
+
+    @Benchmark
+    public CpioHeader decode() throws Exception {
+        CpioHeader cpioHeader = new CpioHeader();
+        cpioHeader.read(input.rewind(), 0);
+        return cpioHeader;
+    }
+
+    @Benchmark
+    public CpioHeader decodeStripped() throws Exception {
+        CpioHeader cpioHeader = new CpioHeader();
+        cpioHeader.read(strippedInput.rewind(), 0);
+        return cpioHeader;
+    }
+}
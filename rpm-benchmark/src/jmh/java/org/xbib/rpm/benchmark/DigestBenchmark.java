@@ -0,0 +1,61 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.payload.CompressionType;
+import org.xbib.rpm.payload.Contents;
+import org.xbib.rpm.security.HashAlgo;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Computes the file digests of the contents of a package, serially and in parallel.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DigestBenchmark {
+
+    @Param({"SMALL", "HUGE"})
+    public Fixtures.Layout layout;
+
+    @Param({"1", "4"})
+    public int parallelism;
+
+    private Path directory;
+
+    private Contents contents;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("rpm-benchmark-files");
+        contents = Fixtures.newBuilder("digest-benchmark", CompressionType.NONE, directory,
+                Fixtures.createFiles(directory, layout)).getContents();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+    }
+
+    @Benchmark
+    public StringList getDigests() throws Exception {
+        return contents.getDigests(HashAlgo.SHA256, parallelism);
+    }
+}
@@ -0,0 +1,223 @@
+package org.xbib.rpm.benchmark;
+
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.exception.RpmException;
+import org.xbib.rpm.header.Header;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.IntegerList;
+import org.xbib.rpm.header.ShortList;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.CompressionType;
+import org.xbib.rpm.payload.Directive;
+import org.xbib.rpm.security.HashAlgo;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Generators for the synthetic files, packages and headers the benchmarks run on. All fixtures are
+ * generated from fixed seeds, so every run measures the same input.
+ */
+public final class Fixtures {
+
+    /**
+     * The shapes of the packages.
+     */
+    public enum Layout {
+
+        /**
+         * Many small files in many directories, where the per file overhead dominates.
+         */
+        SMALL(10000, 1024),
+
+        /**
+         * A few huge files, where copying, hashing and compressing the contents dominate.
+         */
+        HUGE(3, 32 * 1024 * 1024);
+
+        private final int count;
+
+        private final int size;
+
+        Layout(int count, int size) {
+            this.count = count;
+            this.size = size;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private static final byte[] TEXT = ("Lorem ipsum dolor sit amet, consectetur adipiscing elit, "
+            + "sed do eiusmod tempor incididunt ut labore et dolore magna aliqua.\n").getBytes(StandardCharsets.US_ASCII);
+
+    private Fixtures() {
+    }
+
+    /**
+     * Creates the files of a layout in a directory. The contents are half random and half text, so they
+     * compress to roughly half of their size, like typical binaries.
+     *
+     * @param directory the directory
+     * @param layout the layout
+     * @return the files
+     * @throws IOException if a file could not be written
+     */
+    public static List<Path> createFiles(Path directory, Layout layout) throws IOException {
+        Random random = new Random(42L);
+        List<Path> files = new ArrayList<>();
+        byte[] chunk = new byte[65536];
+        for (int i = 0; i < layout.getCount(); i++) {
+            Path dir = Files.createDirectories(directory.resolve(String.format("dir-%04d", i / FILES_PER_DIRECTORY)));
+            Path file = dir.resolve(String.format("file-%06d.bin", i));
+            try (OutputStream outputStream = Files.newOutputStream(file)) {
+                long remaining = layout.getSize();
+                while (remaining > 0) {
+                    fill(chunk, random);
+                    int n = (int) Math.min(chunk.length, remaining);
+                    outputStream.write(chunk, 0, n);
+                    remaining -= n;
+                }
+            }
+            files.add(file);
+        }
+        return files;
+    }
+
+    private static void fill(byte[] chunk, Random random) {
+        int half = chunk.length / 2;
+        byte[] bytes = new byte[half];
+        random.nextBytes(bytes);
+        System.arraycopy(bytes, 0, chunk, 0, half);
+        for (int i = half; i < chunk.length; i++) {
+            chunk[i] = TEXT[(i - half) % TEXT.length];
+        }
+    }
+
+    /**
+     * Returns a builder for a package of the given files, installed below /opt/benchmark with the
+     * same relative paths as below the source directory.
+     *
+     * @param name the package name
+     * @param compressionType the payload compression
+     * @param directory the source directory
+     * @param files the files
+     * @return the builder
+     * @throws IOException if a file could not be added
+     */
+    public static RpmBuilder newBuilder(String name, CompressionType compressionType, Path directory,
+                                        List<Path> files) throws IOException {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, compressionType);
+        rpmBuilder.setPackage(name, "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("Apache-2.0");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        for (Path file : files) {
+            String path = "/opt/benchmark/" + directory.relativize(file).toString().replace('\\', '/');
+            rpmBuilder.addFile(path, file, 0644, 0755, EnumSet.of(Directive.NONE), "root", "root", true);
+        }
+        return rpmBuilder;
+    }
+
+    /**
+     * Builds a package of the given files into a directory.
+     *
+     * @param target the directory for the package
+     * @param name the package name
+     * @param compressionType the payload compression
+     * @param directory the source directory
+     * @param files the files
+     * @return the package
+     * @throws IOException if the package could not be built
+     * @throws RpmException if the package could not be generated
+     * @throws NoSuchAlgorithmException if a digest algorithm is missing
+     */
+    public static Path buildPackage(Path target, String name, CompressionType compressionType, Path directory,
+                                    List<Path> files) throws IOException, RpmException, NoSuchAlgorithmException {
+        newBuilder(name, compressionType, directory, files).build(target);
+        return target.resolve(name + "-1.0-1.noarch.rpm");
+    }
+
+    /**
+     * Creates a header with file tags of the given number of entries, shaped like the file list
+     * of a large package.
+     *
+     * @param entries the number of entries of each tag
+     * @return the header
+     */
+    public static Header createHeader(int entries) {
+        Random random = new Random(42L);
+        StringList dirNames = new StringList();
+        IntegerList dirIndexes = new IntegerList();
+        StringList baseNames = new StringList();
+        IntegerList sizes = new IntegerList();
+        ShortList modes = new ShortList();
+        StringList digests = new StringList();
+        StringList users = new StringList();
+        byte[] digest = new byte[32];
+        for (int i = 0; i < entries; i++) {
+            if (i % FILES_PER_DIRECTORY == 0) {
+                dirNames.add(String.format("/opt/benchmark/dir-%04d/", i / FILES_PER_DIRECTORY));
+            }
+            dirIndexes.add(i / FILES_PER_DIRECTORY);
+            baseNames.add(String.format("file-%06d.bin", i));
+            sizes.add(random.nextInt(1 << 20));
+            modes.add((short) 0100644);
+            random.nextBytes(digest);
+            digests.add(hex(digest));
+            users.add("root");
+        }
+        Header header = new Header();
+        header.createEntry(HeaderTag.DIRNAMES, dirNames);
+        header.createEntry(HeaderTag.DIRINDEXES, dirIndexes);
+        header.createEntry(HeaderTag.BASENAMES, baseNames);
+        header.createEntry(HeaderTag.FILESIZES, sizes);
+        header.createEntry(HeaderTag.FILEMODES, modes);
+        header.createEntry(HeaderTag.FILEDIGESTS, digests);
+        header.createEntry(HeaderTag.FILEUSERNAME, users);
+        return header;
+    }
+
+    /**
+     * Deletes a directory with all of its contents.
+     *
+     * @param directory the directory
+     * @throws IOException if the directory could not be walked
+     */
+    public static void delete(Path directory) throws IOException {
+        if (directory == null || !Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.header.Header;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes and reads a header with file tags of many entries. Reading is lazy, so reading all entries
+ * is measured separately from reading the raw sections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HeaderBenchmark {
+
+    @Param({"100000"})
+    public int entries;
+
+    private Header header;
+
+    private ByteBufferChannel output;
+
+    private ByteBuffer bytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        header = Fixtures.createHeader(entries);
+        ByteBufferChannel channel = new ByteBufferChannel(ByteBuffer.allocate(0));
+        header.write(channel);
+        output = new ByteBufferChannel(ByteBuffer.allocate((int) channel.getWritten()));
+        header.write(output);
+        bytes = output.getBuffer().flip().asReadOnlyBuffer();
+    }
+
+    @Benchmark
+    public long write() throws Exception {
+        header.write(output.rewind());
+        return output.getWritten();
+    }
+
+    @Benchmark
+    public int read() throws Exception {
+        return new Header().read(bytes.duplicate());
+    }
+
+    @Benchmark
+    public int readAll() throws Exception {
+        Header header = new Header();
+        header.read(bytes.duplicate());
+        return header.getEntries().size();
+    }
+
+    @Benchmark
+    public int readChannel() throws Exception {
+        return new Header().read(new ByteBufferChannel(bytes.duplicate()));
+    }
+}
@@ -0,0 +1,84 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.RpmReader;
+import org.xbib.rpm.RpmReaderResult;
+import org.xbib.rpm.format.Format;
+import org.xbib.rpm.payload.CompressionType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the headers and the payload of a package of many small files, with each payload compression.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadBenchmark {
+
+    @Param({"NONE", "GZIP", "BZIP2", "XZ", "ZSTD"})
+    public CompressionType compressionType;
+
+    private Path directory;
+
+    private Path target;
+
+    private Path path;
+
+    private RpmReader rpmReader;
+
+    private RpmReader mappedRpmReader;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("rpm-benchmark-files");
+        target = Files.createTempDirectory("rpm-benchmark-read");
+        path = Fixtures.buildPackage(target, "read-benchmark", compressionType, directory,
+                Fixtures.createFiles(directory, Fixtures.Layout.SMALL));
+        rpmReader = new RpmReader();
+        mappedRpmReader = new RpmReader();
+        mappedRpmReader.setMemoryMapped(true);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+        Fixtures.delete(target);
+    }
+
+    @Benchmark
+    public Format readHeader() throws Exception {
+        return rpmReader.readHeader(path);
+    }
+
+    @Benchmark
+    public Format readHeaderMapped() throws Exception {
+        return mappedRpmReader.readHeader(path);
+    }
+
+    @Benchmark
+    public RpmReaderResult read() throws Exception {
+        return rpmReader.read(path);
+    }
+
+    @Benchmark
+    public Format readFormat() throws Exception {
+        return rpmReader.readFormat(path);
+    }
+}
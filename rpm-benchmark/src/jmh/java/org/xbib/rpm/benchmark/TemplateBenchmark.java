@@ -0,0 +1,89 @@
+package org.xbib.rpm.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.RpmTemplate;
+import org.xbib.rpm.payload.CompressionType;
+import org.xbib.rpm.payload.Directive;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds packages which share many small files and differ in one configuration file and the release,
+ * each from a new builder, and forked from a template with the shared files.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class TemplateBenchmark {
+
+    @Param({"NONE", "GZIP"})
+    public CompressionType compressionType;
+
+    private Path directory;
+
+    private Path target;
+
+    private Path config;
+
+    private List<Path> files;
+
+    private RpmTemplate template;
+
+    private int release;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        directory = Files.createTempDirectory("rpm-benchmark-files");
+        target = Files.createTempDirectory("rpm-benchmark-build");
+        files = Fixtures.createFiles(directory, Fixtures.Layout.SMALL);
+        config = Files.write(target.resolve("tenant.conf"), "tenant=1\n".getBytes(StandardCharsets.UTF_8));
+        template = new RpmTemplate(Fixtures.newBuilder("template-benchmark", compressionType, directory, files));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        Fixtures.delete(directory);
+        Fixtures.delete(target);
+    }
+
+    @Benchmark
+    public long builder() throws Exception {
+        return build(Fixtures.newBuilder("template-benchmark", compressionType, directory, files));
+    }
+
+    @Benchmark
+    public long template() throws Exception {
+        return build(template.newBuilder());
+    }
+
+    private long build(RpmBuilder rpmBuilder) throws Exception {
+        rpmBuilder.setPackage("template-benchmark", "1.0", String.valueOf(++release));
+        rpmBuilder.addFile("/etc/benchmark/tenant.conf", config, 0600, 0755,
+                EnumSet.of(Directive.CONFIG), "root", "root", true);
+        rpmBuilder.build(target);
+        Path path = target.resolve(rpmBuilder.getPackageName());
+        long size = Files.size(path);
+        Files.delete(path);
+        return size;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ * JMH benchmarks for the hot paths of building and reading RPM packages.
+ */
+package org.xbib.rpm.benchmark;
@@ -1,6 +1,7 @@
 package org.xbib.rpm;
 
 import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -21,27 +22,44 @@ import org.xbib.rpm.header.LongList;
 import org.xbib.rpm.header.ShortList;
 import org.xbib.rpm.header.StringList;
 import org.xbib.rpm.header.entry.SpecEntry;
+import org.xbib.rpm.io.BuildCache;
+import org.xbib.rpm.io.ChannelOutputStream;
 import org.xbib.rpm.io.ChannelWrapper;
+import org.xbib.rpm.io.IoOptions;
+import org.xbib.rpm.io.ParallelCompressorOutputStream;
+import org.xbib.rpm.io.ParallelGzipOutputStream;
+import org.xbib.rpm.io.ParallelXZOutputStream;
+import org.xbib.rpm.io.ReadableChannelWrapper;
 import org.xbib.rpm.io.WritableChannelWrapper;
+import org.xbib.rpm.io.ZstdStreams;
 import org.xbib.rpm.lead.Architecture;
 import org.xbib.rpm.lead.Os;
 import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.metrics.BuildMetrics;
+import org.xbib.rpm.metrics.BuildPhase;
+import org.xbib.rpm.metrics.RpmBuildListener;
+import org.xbib.rpm.payload.ArchiveEntry;
 import org.xbib.rpm.payload.CompressionType;
 import org.xbib.rpm.payload.Contents;
 import org.xbib.rpm.payload.CpioHeader;
 import org.xbib.rpm.payload.Directive;
 import org.xbib.rpm.security.HashAlgo;
 import org.xbib.rpm.security.SignatureGenerator;
+import org.xbib.rpm.security.SigningKey;
 import org.xbib.rpm.signature.SignatureTag;
 import org.xbib.rpm.trigger.Trigger;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.charset.StandardCharsets;
@@ -100,12 +118,36 @@ public class RpmBuilder {
 
     private HashAlgo privateKeyHashAlgo;
 
+    private SigningKey signingKey;
+
     private int triggerCounter = 0;
 
     private final CompressionType compressionType;
 
     private String packageName;
 
+    private boolean streaming;
+
+    private int digestParallelism = 1;
+
+    private int compressionThreads = 1;
+
+    private int compressionBlockSize = 4 * 1024 * 1024;
+
+    private IoOptions ioOptions = IoOptions.DEFAULT;
+
+    private BuildCache buildCache;
+
+    private RpmBuildListener buildListener;
+
+    private int zstdLevel = 3;
+
+    private int zstdWindowLog;
+
+    private boolean largeFiles;
+
+    private long maxBufferedPayloadSize = Integer.MAX_VALUE;
+
     public RpmBuilder() {
         this(HashAlgo.SHA1, CompressionType.GZIP);
     }
@@ -130,6 +172,67 @@ public class RpmBuilder {
         addDependencyLess("rpmlib(PayloadIsBzip2)", "3.0.5-1");
         addDependencyLess("rpmlib(PayloadIsLzma)", "4.4.2-1");
         addDependencyLess("rpmlib(PayloadIsXz)", "5.2-1");
+        if (compressionType == CompressionType.ZSTD) {
+            addDependencyLess("rpmlib(PayloadIsZstd)", "5.4.18-1");
+        }
+    }
+
+    /**
+     * Creates a builder from the state of another builder, for {@link RpmTemplate}. The header entries,
+     * the dependencies, the triggers and the contents are copied, so the builders can be changed and built
+     * independently. The other builder is only read. The build time is taken anew.
+     *
+     * @param builder the builder to copy
+     */
+    RpmBuilder(RpmBuilder builder) {
+        this.privateKeyHashAlgo = builder.privateKeyHashAlgo;
+        this.compressionType = builder.compressionType;
+        format.getLead().setName(builder.format.getLead().getName().toString());
+        format.getLead().setArch(builder.format.getLead().getArch());
+        format.getLead().setOs(builder.format.getLead().getOs());
+        format.getLead().setType(builder.format.getLead().getType());
+        format.getHeader().copyEntries(builder.format.getHeader());
+        format.getHeader().createEntry(HeaderTag.BUILDTIME, (int) (System.currentTimeMillis() / 1000));
+        requires.addAll(builder.requires);
+        obsoletes.addAll(builder.obsoletes);
+        conflicts.addAll(builder.conflicts);
+        provides.putAll(builder.provides);
+        triggerscripts.addAll(builder.triggerscripts);
+        triggerscriptprogs.addAll(builder.triggerscriptprogs);
+        triggernames.addAll(builder.triggernames);
+        triggerversions.addAll(builder.triggerversions);
+        triggerflags.addAll(builder.triggerflags);
+        triggerindexes.addAll(builder.triggerindexes);
+        this.triggerCounter = builder.triggerCounter;
+        this.contents = new Contents(builder.contents);
+        this.signingKey = builder.signingKey;
+        this.packageName = builder.packageName;
+        this.streaming = builder.streaming;
+        this.digestParallelism = builder.digestParallelism;
+        this.compressionThreads = builder.compressionThreads;
+        this.compressionBlockSize = builder.compressionBlockSize;
+        this.ioOptions = builder.ioOptions;
+        this.buildCache = builder.buildCache;
+        this.buildListener = builder.buildListener;
+        this.zstdLevel = builder.zstdLevel;
+        this.zstdWindowLog = builder.zstdWindowLog;
+        this.largeFiles = builder.largeFiles;
+        this.maxBufferedPayloadSize = builder.maxBufferedPayloadSize;
+    }
+
+    /**
+     * Prepares this builder as the prototype of a template. The signing key is extracted from the private
+     * key ring once, and the digests of all files are computed once.
+     *
+     * @param builder the builder this prototype has been copied from
+     */
+    void prepareTemplate(RpmBuilder builder) throws IOException, NoSuchAlgorithmException {
+        if (signingKey == null && builder.privateKeyRing != null) {
+            // the key ring stream can only be read once, the key is shared by all builders instead
+            signingKey = new SigningKey(builder.privateKeyRing, builder.privateKeyId, builder.privateKeyPassphrase);
+            builder.setSigningKey(signingKey);
+        }
+        contents.precomputeDigests(HashAlgo.SHA256, digestParallelism);
     }
 
     public void addBuiltinDirectory(String builtinDirectory) {
@@ -946,6 +1049,24 @@ public class RpmBuilder {
         contents.addURL(path, source, permissions, directives, uname, gname, -1, -1, dirmode);
     }
 
+    /**
+     * Adds an entry of a ZIP or JAR archive to the repository. All entries of an archive are read from
+     * the same open archive, which must not be closed before the package has been built.
+     *
+     * @param path the absolute path
+     * @param source the archive entry
+     * @param permissions the file mode
+     * @param dirmode the directory mode
+     * @param directives directives indicating special handling for this file
+     * @param uname user owner of the entry
+     * @param gname group owner of the entry
+     */
+    public void addArchiveEntry(String path, ArchiveEntry source, int permissions, int dirmode,
+                                EnumSet<Directive> directives,
+                                String uname, String gname) {
+        contents.addArchiveEntry(path, source, permissions, directives, uname, gname, -1, -1, dirmode);
+    }
+
     /**
      * Adds a symbolic link to the repository.
      *
@@ -1080,6 +1201,22 @@ public class RpmBuilder {
         }
     }
 
+    /**
+     * Sets the key for the header and header + payload signature. A signing key is extracted from its
+     * key ring only once, so it can be shared by many builders, see
+     * {@link org.xbib.rpm.security.KeyRingCache}. It takes precedence over the
+     * {@link #setPrivateKeyRing(java.io.InputStream) private key ring}.
+     *
+     * @param signingKey the signing key
+     */
+    public void setSigningKey(SigningKey signingKey) {
+        this.signingKey = signingKey;
+    }
+
+    public SigningKey getSigningKey() {
+        return signingKey;
+    }
+
     /**
      * Hash algo for the private key.
      *
@@ -1108,6 +1245,170 @@ public class RpmBuilder {
         return packageName;
     }
 
+    /**
+     * Enables the streaming build mode. In streaming mode, the compressed payload is written
+     * straight to the channel, and the header entries depending on the payload are patched in
+     * afterwards, so the payload is never held in memory. The channel given to
+     * {@link #build(SeekableByteChannel)} must then be open for reading, too.
+     * Packages without payload compression are built this way whenever the channel is a {@link FileChannel}
+     * which is known to be readable, i.e. in streaming mode and when building into a directory, and the file
+     * contents are then transferred to it by the operating system.
+     *
+     * @param streaming true for streaming the payload to the channel
+     */
+    public void setStreaming(boolean streaming) {
+        this.streaming = streaming;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets the number of files whose digests are computed concurrently. The default is one,
+     * which computes the digests while writing the payload, so that each file is read only once.
+     * With more than one, the digests are computed in a separate concurrent pass over the files
+     * before the payload is written.
+     *
+     * @param digestParallelism the number of files to hash concurrently
+     */
+    public void setDigestParallelism(int digestParallelism) {
+        this.digestParallelism = digestParallelism;
+    }
+
+    public int getDigestParallelism() {
+        return digestParallelism;
+    }
+
+    /**
+     * Sets the number of threads compressing the payload. The default is one, which compresses the payload
+     * as a single stream. With more than one, the payload is cut into blocks which are compressed in parallel:
+     * GZIP payloads become concatenated gzip members, XZ payloads a single XZ stream of independent blocks.
+     * Both are decoded by rpm as usual. ZSTD payloads are compressed by the worker threads of zstd itself.
+     * BZIP2 payloads are always compressed on a single thread.
+     *
+     * @param compressionThreads the number of threads compressing the payload
+     */
+    public void setCompressionThreads(int compressionThreads) {
+        this.compressionThreads = compressionThreads;
+    }
+
+    public int getCompressionThreads() {
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the uncompressed size of the blocks which are compressed in parallel. Larger blocks compress
+     * better, but take more memory. The default is 4 MiB.
+     *
+     * @param compressionBlockSize the block size in bytes
+     */
+    public void setCompressionBlockSize(int compressionBlockSize) {
+        this.compressionBlockSize = compressionBlockSize;
+    }
+
+    public int getCompressionBlockSize() {
+        return compressionBlockSize;
+    }
+
+    /**
+     * Sets the options for the buffers which file contents and the payload are copied and digested with.
+     * The default are pooled heap buffers of 64 KiB. The options are also used by the contents of this builder.
+     *
+     * @param ioOptions the I/O options
+     */
+    public void setIoOptions(IoOptions ioOptions) {
+        this.ioOptions = ioOptions;
+        contents.setIoOptions(ioOptions);
+    }
+
+    public IoOptions getIoOptions() {
+        return ioOptions;
+    }
+
+    /**
+     * Sets a persistent cache for repeated builds. The digests of unchanged files are taken from the cache,
+     * and, when the payload is compressed in parallel GZIP or XZ blocks, so are the compressed blocks
+     * which have not changed. The blocks are then cut at file boundaries, so that a changed file does not
+     * change the blocks of the files after it. The cache is also used by the contents of this builder.
+     *
+     * @param buildCache the build cache, or null for building without a cache
+     */
+    public void setBuildCache(BuildCache buildCache) {
+        this.buildCache = buildCache;
+        contents.setBuildCache(buildCache);
+    }
+
+    public BuildCache getBuildCache() {
+        return buildCache;
+    }
+
+    /**
+     * Sets a listener which receives the metrics of each build: the durations of the digest, payload,
+     * compression, header and signature phases, the payload sizes and the slowest files.
+     *
+     * @param buildListener the build listener, or null for building without metrics
+     */
+    public void setBuildListener(RpmBuildListener buildListener) {
+        this.buildListener = buildListener;
+    }
+
+    public RpmBuildListener getBuildListener() {
+        return buildListener;
+    }
+
+    /**
+     * Sets the compression level for ZSTD payloads, from 1 to 22. The default is 3.
+     *
+     * @param zstdLevel the zstd compression level
+     */
+    public void setZstdLevel(int zstdLevel) {
+        this.zstdLevel = zstdLevel;
+    }
+
+    public int getZstdLevel() {
+        return zstdLevel;
+    }
+
+    /**
+     * Enables long distance matching for ZSTD payloads, with a window of 2^windowLog bytes, like
+     * {@code zstd --long=windowLog}. The default is 0, which disables long distance matching.
+     * Decoders need as much memory as the window, and rpm accepts windows up to 2^31 bytes.
+     *
+     * @param zstdWindowLog the window log, from 10 to 31, or 0
+     */
+    public void setZstdWindowLog(int zstdWindowLog) {
+        this.zstdWindowLog = zstdWindowLog;
+    }
+
+    public int getZstdWindowLog() {
+        return zstdWindowLog;
+    }
+
+    /**
+     * Enables the large file format, which rpm uses for packages with files of 4 GiB and more. The file sizes
+     * are then stored as 64 bit values, and the payload is written in the stripped CPIO format, whose entries
+     * refer to the files in the header instead of describing them. The large file format is enabled
+     * automatically if a file is too large for the CPIO format, and always builds in streaming mode.
+     *
+     * @param largeFiles true for the large file format
+     */
+    public void setLargeFiles(boolean largeFiles) {
+        this.largeFiles = largeFiles;
+    }
+
+    public boolean isLargeFiles() {
+        return largeFiles;
+    }
+
+    /**
+     * Sets the total size of the files from which on the payload is always streamed. Only lowered by tests, to
+     * exercise the streaming of large payloads without files of this size.
+     */
+    void setMaxBufferedPayloadSize(long maxBufferedPayloadSize) {
+        this.maxBufferedPayloadSize = maxBufferedPayloadSize;
+    }
+
     /**
      * Generates an RPM with a standard name consisting of the RPM package name, version, release,
      * and type in the given directory.
@@ -1121,22 +1422,71 @@ public class RpmBuilder {
             setPackageName(format.getLead().getName() + "." + format.getLead().getArch().toString().toLowerCase() + ".rpm");
         }
         Path path = directory.resolve(packageName);
-        try (SeekableByteChannel channel = Files.newByteChannel(path,
-                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
                 StandardOpenOption.TRUNCATE_EXISTING)) {
-            build(channel);
+            build(channel, true);
         }
     }
 
     /**
      * Generates the RPM archive to the provided file channel.
+     * In streaming mode and for the large file format, the written payload is read back from the channel
+     * for its digests, so the channel must then be open for reading, too. Otherwise the channel is only
+     * written to. Packages whose files add up to 2 GiB or more can only be built in streaming mode.
      *
      * @param channel the {@link SeekableByteChannel} to which the resulting RPM archive will be written.
      * @throws IOException              there was an IO error
-     * @throws RpmException if RPM generation fails
+     * @throws RpmException if RPM generation fails, or if the payload is too large for building without
+     * streaming mode
      */
-    @SuppressWarnings("unchecked")
     public void build(SeekableByteChannel channel) throws RpmException, IOException, NoSuchAlgorithmException {
+        build(channel, streaming);
+    }
+
+    /**
+     * Generates the RPM archive to the channel. The payload is only read back from the channel if it is
+     * readable, or if the build requires it anyway.
+     */
+    private void build(SeekableByteChannel channel, boolean readable)
+            throws RpmException, IOException, NoSuchAlgorithmException {
+        if (buildListener == null) {
+            build(channel, readable, null);
+            return;
+        }
+        BuildMetrics metrics = new BuildMetrics(format.getLead().getName().toString());
+        buildListener.buildStarted(metrics);
+        try {
+            build(channel, readable, metrics);
+        } catch (IOException | RpmException | NoSuchAlgorithmException | RuntimeException e) {
+            metrics.finish();
+            buildListener.buildFailed(metrics, e);
+            throw e;
+        }
+        metrics.finish();
+        buildListener.buildFinished(metrics);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void build(SeekableByteChannel channel, boolean readable, BuildMetrics metrics)
+            throws RpmException, IOException, NoSuchAlgorithmException {
+        boolean largeFiles = this.largeFiles || contents.hasLargeFiles();
+        // an uncompressed payload is written with zero copy transfers of the files, which are then read back
+        // from the channel for the payload digest
+        boolean transfer = compressionType == CompressionType.NONE && channel instanceof FileChannel
+                && (readable || largeFiles);
+        if (largeFiles) {
+            addDependencyLess("rpmlib(LargeFiles)", "4.12.0-1");
+        }
+        long totalSize = contents.getLongTotalSize();
+        // the signature sizes are reserved before the payload is written, leave room for the CPIO overhead
+        boolean longSizes = largeFiles || totalSize >= Integer.MAX_VALUE;
+        // a payload of 2 GiB and more can not be collected in a byte array, it has to be streamed
+        boolean largePayload = totalSize >= maxBufferedPayloadSize;
+        if (largePayload && !readable && !largeFiles) {
+            throw new RpmException("the payload of " + totalSize + " bytes is too large to be built in memory, " +
+                    "enable streaming and build to a channel which is open for reading, too");
+        }
         format.getHeader().createEntry(HeaderTag.REQUIRENAME, getStringList(requires));
         format.getHeader().createEntry(HeaderTag.REQUIREVERSION, getVersions(requires));
         format.getHeader().createEntry(HeaderTag.REQUIREFLAGS, getFlags(requires));
@@ -1155,12 +1505,13 @@ public class RpmBuilder {
             format.getHeader().createEntry(HeaderTag.PROVIDEVERSION, getVersions(provides));
             format.getHeader().createEntry(HeaderTag.PROVIDEFLAGS, getFlags(provides));
         }
-        format.getHeader().createEntry(HeaderTag.SIZE, contents.getTotalSize());
-        if (contents.size() > 0) {
-            format.getHeader().createEntry(HeaderTag.DIRNAMES, contents.getDirNames());
-            format.getHeader().createEntry(HeaderTag.DIRINDEXES, contents.getDirIndexes());
-            format.getHeader().createEntry(HeaderTag.BASENAMES, contents.getBaseNames());
+        if (totalSize >= 0xffffffffL) {
+            format.getHeader().createEntry(HeaderTag.LONGSIZE, LongList.of(totalSize));
+        } else {
+            format.getHeader().createEntry(HeaderTag.SIZE, (int) totalSize);
         }
+        SpecEntry<StringList> fileDigestsEntry = null;
+        StringList fileDigests = null;
         if (triggerCounter > 0) {
             format.getHeader().createEntry(HeaderTag.TRIGGERSCRIPTS, triggerscripts.toArray(new String[0]));
             format.getHeader().createEntry(HeaderTag.TRIGGERNAME, triggernames.toArray(new String[0]));
@@ -1170,21 +1521,17 @@ public class RpmBuilder {
             format.getHeader().createEntry(HeaderTag.TRIGGERSCRIPTPROG, triggerscriptprogs.toArray(new String[0]));
         }
         if (contents.size() > 0) {
+            // all file tags except the digests are taken from the columns of the file table
+            contents.getFileTable().createEntries(format.getHeader(), largeFiles);
             format.getHeader().createEntry(HeaderTag.FILEDIGESTALGOS, HashAlgo.SHA256.num());
-            format.getHeader().createEntry(HeaderTag.FILEDIGESTS, contents.getDigests(HashAlgo.SHA256));
-            format.getHeader().createEntry(HeaderTag.FILESIZES, contents.getSizes());
-            format.getHeader().createEntry(HeaderTag.FILEMODES, contents.getModes());
-            format.getHeader().createEntry(HeaderTag.FILERDEVS, contents.getRdevs());
-            format.getHeader().createEntry(HeaderTag.FILEMTIMES, contents.getMtimes());
-            format.getHeader().createEntry(HeaderTag.FILELINKTOS, contents.getLinkTos());
-            format.getHeader().createEntry(HeaderTag.FILEFLAGS, contents.getFlags());
-            format.getHeader().createEntry(HeaderTag.FILEUSERNAME, contents.getUsers());
-            format.getHeader().createEntry(HeaderTag.FILEGROUPNAME, contents.getGroups());
-            format.getHeader().createEntry(HeaderTag.FILEVERIFYFLAGS, contents.getVerifyFlags());
-            format.getHeader().createEntry(HeaderTag.FILEDEVICES, contents.getDevices());
-            format.getHeader().createEntry(HeaderTag.FILEINODES, contents.getInodes());
-            format.getHeader().createEntry(HeaderTag.FILELANGS, contents.getLangs());
-            format.getHeader().createEntry(HeaderTag.FILECONTEXTS, contents.getContexts());
+            if (digestParallelism > 1 || transfer) {
+                format.getHeader().createEntry(HeaderTag.FILEDIGESTS, contents.getDigests(HashAlgo.SHA256, digestParallelism, metrics));
+            } else {
+                // computed while writing the payload, the entry size is known in advance
+                fileDigestsEntry = (SpecEntry<StringList>) format.getHeader().addEntry(HeaderTag.FILEDIGESTS, contents.size());
+                fileDigestsEntry.setSize(contents.getDigestsSize(HashAlgo.SHA256));
+                fileDigests = new StringList();
+            }
         }
         format.getHeader().createEntry(HeaderTag.PAYLOADFLAGS, "9");
         format.getHeader().createEntry(HeaderTag.PAYLOADDIGESTALGO, HashAlgo.SHA256.num());
@@ -1192,49 +1539,190 @@ public class RpmBuilder {
         payloadDigest.setSize(65);
         SpecEntry<StringList> payloadDigestAlt = (SpecEntry<StringList>) format.getHeader().addEntry(HeaderTag.PAYLOADDIGESTALT, 1);
         payloadDigestAlt.setSize(65);
-        SpecEntry<IntegerList> sigsize = (SpecEntry<IntegerList>) format.getSignatureHeader().addEntry(SignatureTag.LEGACY_SIGSIZE, 1);
-        SpecEntry<IntegerList> signaturHeaderPayloadEntry = (SpecEntry<IntegerList>) format.getSignatureHeader().addEntry(SignatureTag.PAYLOADSIZE, 1);
+        SpecEntry<?> sigsize = format.getSignatureHeader()
+                .addEntry(longSizes ? SignatureTag.LONGSIGSIZE : SignatureTag.LEGACY_SIGSIZE, 1);
+        SpecEntry<?> signaturHeaderPayloadEntry = format.getSignatureHeader()
+                .addEntry(longSizes ? SignatureTag.LONGARCHIVESIZE : SignatureTag.PAYLOADSIZE, 1);
         SpecEntry<byte[]> md5Entry = (SpecEntry<byte[]>) format.getSignatureHeader().addEntry(SignatureTag.LEGACY_MD5, 16);
         SpecEntry<StringList> shaEntry = (SpecEntry<StringList>) format.getSignatureHeader().addEntry(SignatureTag.SHA1HEADER, 1);
         shaEntry.setSize(41);
         SpecEntry<StringList> sha256Entry = (SpecEntry<StringList>) format.getSignatureHeader().addEntry(SignatureTag.SHA256HEADER, 1);
         sha256Entry.setSize(65);
-        SignatureGenerator signatureGenerator = new SignatureGenerator(privateKeyRing, privateKeyId, privateKeyPassphrase);
+        SignatureGenerator signatureGenerator = signingKey != null ? new SignatureGenerator(signingKey) :
+                new SignatureGenerator(privateKeyRing, privateKeyId, privateKeyPassphrase);
+        signatureGenerator.setBuildMetrics(metrics);
         signatureGenerator.prepare(format.getSignatureHeader(), privateKeyHashAlgo);
+        if (metrics != null) {
+            metrics.setFileCount(contents.size());
+        }
         format.getLead().write(channel);
         SpecEntry<byte[]> signatureEntry = (SpecEntry<byte[]>) format.getSignatureHeader().addEntry(SignatureTag.SIGNATURES, 16);
         signatureEntry.setValues(createHeaderIndex(HeaderTag.SIGNATURES.getCode(), format.getSignatureHeader().count()));
-        WritableChannelWrapper output = new WritableChannelWrapper(channel);
-        ChannelWrapper.empty(output, ByteBuffer.allocate(format.getSignatureHeader().write(channel)));
-        ChannelWrapper.Key<Integer> sigsizekey = output.startCount();
-        ChannelWrapper.Key<byte[]> md5key = signatureGenerator.startDigest(output, "MD5");
-        ChannelWrapper.Key<byte[]> shakey = signatureGenerator.startDigest(output, "SHA");
-        ChannelWrapper.Key<byte[]> sha256key = signatureGenerator.startDigest(output, "SHA-256");
-        signatureGenerator.startBeforeHeader(output, privateKeyHashAlgo);
-        // Region concept. This tag contains an index record which specifies the portion of the Header Record
-        // which was used for the calculation of a signature. This data shall be preserved or any header-only signature
-        // will be invalidated.
-        SpecEntry<byte[]> immutable = (SpecEntry<byte[]>) format.getHeader().addEntry(HeaderTag.HEADERIMMUTABLE, 16);
-        immutable.setValues(createHeaderIndex(HeaderTag.IMMUTABLE.getCode(), format.getHeader().count()));
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
-        DigestOutputStream digestOutputStream = new DigestOutputStream(byteArrayOutputStream, messageDigest);
-        int length = processPayload(digestOutputStream);
-        signaturHeaderPayloadEntry.setValues(IntegerList.of(length));
-        byte[] payload = byteArrayOutputStream.toByteArray();
-        byte[] payloadDigestBytes = messageDigest.digest();
-        String hex = hex(payloadDigestBytes);
-        payloadDigest.setValues(StringList.of(hex));
-        payloadDigestAlt.setValues(StringList.of(hex));
-        format.getHeader().write(output);
-        shaEntry.setValues(StringList.of(hex(output.finish(shakey))));
-        sha256Entry.setValues(StringList.of(hex(output.finish(sha256key))));
-        signatureGenerator.finishAfterHeader(output);
-        output.write(ByteBuffer.wrap(payload));
-        md5Entry.setValues(output.finish(md5key));
-        sigsize.setValues(IntegerList.of(output.finish(sigsizekey)));
-        signatureGenerator.finishAfterPayload(output);
-        format.getSignatureHeader().writePending(channel);
+        // a payload of 2 GiB and more can not be held in memory
+        if (streaming || largeFiles || largePayload || transfer) {
+            long time = System.nanoTime();
+            ChannelWrapper.empty(channel, ByteBuffer.allocate(format.getSignatureHeader().write(channel)));
+            // Region concept. This tag contains an index record which specifies the portion of the Header Record
+            // which was used for the calculation of a signature. This data shall be preserved or any header-only signature
+            // will be invalidated.
+            SpecEntry<byte[]> immutable = (SpecEntry<byte[]>) format.getHeader().addEntry(HeaderTag.HEADERIMMUTABLE, 16);
+            immutable.setValues(createHeaderIndex(HeaderTag.IMMUTABLE.getCode(), format.getHeader().count()));
+            // the payload digests are not known yet, the header is written with reserved space for them
+            long headerStart = channel.position();
+            format.getHeader().write(channel);
+            time = phase(metrics, BuildPhase.HEADER, time);
+            long payloadStart = channel.position();
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            long length;
+            if (transfer) {
+                // the file contents never pass through the heap, the payload digest is taken from the mapped payload
+                length = transferPayload((FileChannel) channel, largeFiles, metrics);
+                digest(messageDigest, (FileChannel) channel, payloadStart, channel.position());
+            } else {
+                DigestOutputStream digestOutputStream = new DigestOutputStream(new BufferedOutputStream(
+                        new ChannelOutputStream(channel), ioOptions.getBufferSize()), messageDigest);
+                length = processPayload(digestOutputStream, fileDigests, largeFiles, metrics);
+            }
+            time = phase(metrics, BuildPhase.PAYLOAD, time);
+            if (fileDigestsEntry != null) {
+                fileDigestsEntry.setValues(fileDigests);
+            }
+            long payloadEnd = channel.position();
+            if (metrics != null) {
+                metrics.setPayloadSize(length, payloadEnd - payloadStart);
+            }
+            setSize(signaturHeaderPayloadEntry, length);
+            String hex = hex(messageDigest.digest());
+            payloadDigest.setValues(StringList.of(hex));
+            payloadDigestAlt.setValues(StringList.of(hex));
+            format.getHeader().writePending(channel, headerStart);
+            time = phase(metrics, BuildPhase.HEADER, time);
+            // read back the completed header and payload for the signature header digests
+            channel.position(headerStart);
+            ReadableChannelWrapper input = new ReadableChannelWrapper(channel);
+            ChannelWrapper.Key<Long> sigsizekey = input.startLongCount();
+            ChannelWrapper.Key<byte[]> md5key = signatureGenerator.startDigest(input, "MD5");
+            ChannelWrapper.Key<byte[]> shakey = signatureGenerator.startDigest(input, "SHA");
+            ChannelWrapper.Key<byte[]> sha256key = signatureGenerator.startDigest(input, "SHA-256");
+            signatureGenerator.startBeforeHeader(input, privateKeyHashAlgo);
+            consume(input, payloadStart - headerStart);
+            shaEntry.setValues(StringList.of(hex(input.finish(shakey))));
+            sha256Entry.setValues(StringList.of(hex(input.finish(sha256key))));
+            signatureGenerator.finishAfterHeader(input);
+            consume(input, payloadEnd - payloadStart);
+            md5Entry.setValues(input.finish(md5key));
+            setSize(sigsize, input.finish(sigsizekey));
+            signatureGenerator.finishAfterPayload(input);
+            format.getSignatureHeader().writePending(channel);
+            channel.position(payloadEnd);
+            phase(metrics, BuildPhase.SIGNATURE, time);
+            if (metrics != null) {
+                metrics.setPackageSize(payloadEnd);
+            }
+        } else {
+            long time = System.nanoTime();
+            WritableChannelWrapper output = new WritableChannelWrapper(channel);
+            ChannelWrapper.empty(output, ByteBuffer.allocate(format.getSignatureHeader().write(channel)));
+            ChannelWrapper.Key<Long> sigsizekey = output.startLongCount();
+            ChannelWrapper.Key<byte[]> md5key = signatureGenerator.startDigest(output, "MD5");
+            ChannelWrapper.Key<byte[]> shakey = signatureGenerator.startDigest(output, "SHA");
+            ChannelWrapper.Key<byte[]> sha256key = signatureGenerator.startDigest(output, "SHA-256");
+            signatureGenerator.startBeforeHeader(output, privateKeyHashAlgo);
+            // Region concept. This tag contains an index record which specifies the portion of the Header Record
+            // which was used for the calculation of a signature. This data shall be preserved or any header-only signature
+            // will be invalidated.
+            SpecEntry<byte[]> immutable = (SpecEntry<byte[]>) format.getHeader().addEntry(HeaderTag.HEADERIMMUTABLE, 16);
+            immutable.setValues(createHeaderIndex(HeaderTag.IMMUTABLE.getCode(), format.getHeader().count()));
+            ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            DigestOutputStream digestOutputStream = new DigestOutputStream(byteArrayOutputStream, messageDigest);
+            time = phase(metrics, BuildPhase.HEADER, time);
+            long length = processPayload(digestOutputStream, fileDigests, largeFiles, metrics);
+            time = phase(metrics, BuildPhase.PAYLOAD, time);
+            if (fileDigestsEntry != null) {
+                fileDigestsEntry.setValues(fileDigests);
+            }
+            setSize(signaturHeaderPayloadEntry, length);
+            byte[] payload = byteArrayOutputStream.toByteArray();
+            if (metrics != null) {
+                metrics.setPayloadSize(length, payload.length);
+            }
+            byte[] payloadDigestBytes = messageDigest.digest();
+            String hex = hex(payloadDigestBytes);
+            payloadDigest.setValues(StringList.of(hex));
+            payloadDigestAlt.setValues(StringList.of(hex));
+            format.getHeader().write(output);
+            shaEntry.setValues(StringList.of(hex(output.finish(shakey))));
+            sha256Entry.setValues(StringList.of(hex(output.finish(sha256key))));
+            signatureGenerator.finishAfterHeader(output);
+            output.write(ByteBuffer.wrap(payload));
+            md5Entry.setValues(output.finish(md5key));
+            setSize(sigsize, output.finish(sigsizekey));
+            long end = channel.position();
+            signatureGenerator.finishAfterPayload(output);
+            format.getSignatureHeader().writePending(channel);
+            phase(metrics, BuildPhase.SIGNATURE, time);
+            if (metrics != null) {
+                metrics.setPackageSize(end);
+            }
+        }
+    }
+
+    /**
+     * Adds the time since the given start to a phase of the build metrics.
+     *
+     * @param metrics the build metrics, or null
+     * @param phase the phase
+     * @param start the start of the phase from {@link System#nanoTime()}
+     * @return the end of the phase, which is the start of the next phase
+     */
+    private static long phase(BuildMetrics metrics, BuildPhase phase, long start) {
+        long end = System.nanoTime();
+        if (metrics != null) {
+            metrics.addPhase(phase, end - start);
+        }
+        return end;
+    }
+
+    /**
+     * Sets a size in a signature entry, which holds either a 32 bit or a 64 bit value.
+     *
+     * @param entry the signature entry
+     * @param size the size
+     */
+    @SuppressWarnings("unchecked")
+    private static void setSize(SpecEntry<?> entry, long size) {
+        if (entry.getType() == EntryType.INT64_ENTRY) {
+            ((SpecEntry<LongList>) entry).setValues(LongList.of(size));
+        } else {
+            ((SpecEntry<IntegerList>) entry).setValues(IntegerList.of((int) size));
+        }
+    }
+
+    /**
+     * Reads the given number of bytes from the channel wrapper so that they are passed to its consumers.
+     *
+     * @param input the channel wrapper to read from
+     * @param length the number of bytes to read
+     * @throws IOException if the channel ends before the given number of bytes was read
+     */
+    private void consume(ReadableChannelWrapper input, long length) throws IOException {
+        ByteBuffer buffer = ioOptions.acquire();
+        try {
+            while (length > 0) {
+                buffer.clear();
+                if (length < buffer.capacity()) {
+                    buffer.limit((int) length);
+                }
+                int read = input.read(buffer);
+                if (read == -1) {
+                    throw new EOFException("unexpected end of channel, " + length + " bytes missing");
+                }
+                length -= read;
+            }
+        } finally {
+            ioOptions.release(buffer);
+        }
     }
 
     /**
@@ -1244,7 +1732,7 @@ public class RpmBuilder {
      * @param count the number to get
      * @return the header bytes
      */
-    private byte[] createHeaderIndex(int tag, int count) {
+    static byte[] createHeaderIndex(int tag, int count) {
         ByteBuffer buffer = ByteBuffer.allocate(16);
         buffer.putInt(tag);
         buffer.putInt(0x00000007); // data type (7 = bin entry)
@@ -1258,6 +1746,14 @@ public class RpmBuilder {
             case NONE:
                 return outputStream;
             case GZIP:
+                if (compressionThreads > 1) {
+                    ParallelGzipOutputStream parallelGzipOutputStream =
+                            new ParallelGzipOutputStream(outputStream, compressionThreads, compressionBlockSize);
+                    if (buildCache != null) {
+                        parallelGzipOutputStream.setBuildCache(buildCache, "gzip");
+                    }
+                    return parallelGzipOutputStream;
+                }
                 return new GZIPOutputStream(outputStream, true);
             case BZIP2:
                 return new Bzip2OutputStream(outputStream);
@@ -1265,72 +1761,294 @@ public class RpmBuilder {
                 X86Options x86 = new X86Options();
                 LZMA2Options lzma2 = new LZMA2Options();
                 FilterOptions[] options = { x86, lzma2 };
+                if (compressionThreads > 1) {
+                    ParallelXZOutputStream parallelXZOutputStream =
+                            new ParallelXZOutputStream(outputStream, options, compressionThreads, compressionBlockSize);
+                    if (buildCache != null) {
+                        parallelXZOutputStream.setBuildCache(buildCache, "xz-x86-lzma2");
+                    }
+                    return parallelXZOutputStream;
+                }
                 return new XZOutputStream(outputStream, options);
+            case ZSTD:
+                return ZstdStreams.createOutputStream(outputStream, zstdLevel, zstdWindowLog,
+                        compressionThreads > 1 ? compressionThreads : 0);
         }
         // not reached
         return outputStream;
     }
 
-    private int processPayload(OutputStream outputStream) throws IOException {
+    /**
+     * Writes the CPIO payload to the given output stream. If a list for the file digests is given,
+     * the digest of each file is computed from the same bytes that are written to the payload, so
+     * every file is read only once.
+     *
+     * @param outputStream the output stream for the compressed payload
+     * @param digests the list to add the file digests to in header order, or null
+     * @param stripped true for writing the entries in the stripped CPIO format
+     * @param metrics the build metrics, or null
+     * @return the uncompressed payload length
+     * @throws IOException if an IO error occurs
+     */
+    private long processPayload(OutputStream outputStream, StringList digests, boolean stripped,
+                                BuildMetrics metrics) throws IOException, NoSuchAlgorithmException {
         OutputStream compressedOutputStream = createCompressedStream(outputStream);
+        ParallelCompressorOutputStream parallel = compressedOutputStream instanceof ParallelCompressorOutputStream ?
+                (ParallelCompressorOutputStream) compressedOutputStream : null;
+        ParallelCompressorOutputStream blocks = buildCache != null ? parallel : null;
+        if (metrics != null && compressionType != CompressionType.NONE) {
+            compressedOutputStream = new CompressionTimingOutputStream(compressedOutputStream, metrics);
+        }
         WritableChannelWrapper compressedOutput = new WritableChannelWrapper(Channels.newChannel(compressedOutputStream));
-        ChannelWrapper.Key<Integer> payloadkey = compressedOutput.startCount();
+        ChannelWrapper.Key<Long> payloadkey = compressedOutput.startLongCount();
+        // only used for the alignment, so it may overflow
         int total = 0;
-        ByteBuffer buffer = ByteBuffer.allocate(4096);
-        for (CpioHeader header : contents.headers()) {
-            if ((header.getFlags() & Directive.GHOST.flag()) == Directive.GHOST.flag()) {
-                continue;
-            }
-            String path = header.getName();
-            if (path.startsWith("/")) {
-                header.setName("." + path);
-            }
-            total = header.write(compressedOutput, total);
-            Object object = contents.getSource(header);
-            if (object instanceof Path) {
-                try (ReadableByteChannel readableByteChannel = Files.newByteChannel((Path) object)) {
-                    while (readableByteChannel.read(buffer.rewind()) > 0) {
-                        ByteBuffer byteBuffer = buffer.flip();
-                        total += compressedOutput.write(byteBuffer);
-                        buffer.compact();
+        int fileIndex = -1;
+        ByteBuffer buffer = ioOptions.acquire();
+        boolean finished = false;
+        try {
+            for (CpioHeader header : contents.headers()) {
+                fileIndex++;
+                if ((header.getFlags() & Directive.GHOST.flag()) == Directive.GHOST.flag()) {
+                    if (digests != null) {
+                        digests.add(contents.getDigest(header, HashAlgo.SHA256));
                     }
-                    total += header.skip(compressedOutput, total);
+                    continue;
                 }
-            } else if (object instanceof InputStream) {
-                try (ReadableByteChannel in = Channels.newChannel(((InputStream) object))) {
-                    while (in.read(buffer.rewind()) > 0) {
-                        ByteBuffer byteBuffer = buffer.flip();
-                        total += compressedOutput.write(byteBuffer);
-                        buffer.compact();
-                    }
-                    total += header.skip(compressedOutput, total);
+                String path = header.getName();
+                if (path.startsWith("/")) {
+                    header.setName("." + path);
                 }
-            } else if (object instanceof URL) {
-                try (ReadableByteChannel in = Channels.newChannel(((URL) object).openConnection().getInputStream())) {
-                    while (in.read(buffer.rewind()) > 0) {
-                        ByteBuffer byteBuffer = buffer.flip();
-                        total += compressedOutput.write(byteBuffer);
-                        buffer.compact();
+                if (blocks != null) {
+                    // cached blocks are only reused if they start at the same file, so cut them at file
+                    // boundaries, but avoid tiny blocks for runs of small files
+                    int half = blocks.getBlockSize() / 2;
+                    if (blocks.getBlockLength() >= half || header.getLongFileSize() >= half) {
+                        blocks.endBlock();
                     }
-                    total += header.skip(compressedOutput, total);
                 }
-            } else if (object != null) {
-                String string = object.toString();
-                ByteBuffer byteBuffer = ByteBuffer.wrap(string.getBytes(StandardCharsets.UTF_8));
-                total += compressedOutput.write(byteBuffer);
-                total += header.skip(compressedOutput, string.length());
+                total = stripped ? header.writeStripped(compressedOutput, total, fileIndex) :
+                        header.write(compressedOutput, total);
+                Object object = contents.getSource(header);
+                long time = System.nanoTime();
+                String digest = digests != null ? contents.getPrecomputedDigest(header, HashAlgo.SHA256) : null;
+                long length;
+                if (digest != null) {
+                    digests.add(digest);
+                    length = writeSource(object, compressedOutput, buffer, null);
+                } else {
+                    length = writeSource(object, compressedOutput, buffer, digests);
+                }
+                if (metrics != null && (object instanceof Path || object instanceof URL ||
+                        object instanceof ArchiveEntry)) {
+                    metrics.addFile(BuildPhase.PAYLOAD, path, length, System.nanoTime() - time);
+                }
+                total += (int) length;
+                total += header.skip(compressedOutput, total);
+            }
+            CpioHeader trailer = new CpioHeader();
+            trailer.setLast();
+            total = trailer.write(compressedOutput, total);
+            trailer.skip(compressedOutput, total);
+            long length = compressedOutput.finish(payloadkey);
+            int pad = difference((int) length, 3);
+            ChannelWrapper.empty(compressedOutput, ByteBuffer.allocate(pad));
+            length += pad;
+            compressedOutputStream.close();
+            finished = true;
+            return length;
+        } finally {
+            ioOptions.release(buffer);
+            if (!finished && parallel != null) {
+                // stop the compressor threads, the payload is incomplete anyway
+                parallel.abort();
             }
         }
+    }
+
+    /**
+     * Writes the CPIO payload without compression to the given file channel. The CPIO headers are written
+     * to the channel, and the contents of files are transferred from file channel to file channel, which
+     * lets the operating system copy them without passing them through the heap. The file digests must have
+     * been computed before, the payload digest is computed afterwards from the written payload.
+     *
+     * @param channel the file channel, positioned at the start of the payload
+     * @param stripped true for writing the entries in the stripped CPIO format
+     * @param metrics the build metrics, or null
+     * @return the payload length
+     * @throws IOException if an IO error occurs
+     */
+    private long transferPayload(FileChannel channel, boolean stripped, BuildMetrics metrics)
+            throws IOException, NoSuchAlgorithmException {
+        WritableChannelWrapper output = new WritableChannelWrapper(channel);
+        long start = channel.position();
+        // only used for the alignment, so it may overflow
+        int total = 0;
+        int fileIndex = -1;
+        ByteBuffer buffer = ioOptions.acquire();
+        try {
+            for (CpioHeader header : contents.headers()) {
+                fileIndex++;
+                if ((header.getFlags() & Directive.GHOST.flag()) == Directive.GHOST.flag()) {
+                    continue;
+                }
+                String path = header.getName();
+                if (path.startsWith("/")) {
+                    header.setName("." + path);
+                }
+                total = stripped ? header.writeStripped(output, total, fileIndex) : header.write(output, total);
+                Object object = contents.getSource(header);
+                long time = System.nanoTime();
+                long length = object instanceof Path ? transfer((Path) object, header.getLongFileSize(), channel) :
+                        writeSource(object, output, buffer, null);
+                if (metrics != null && (object instanceof Path || object instanceof URL ||
+                        object instanceof ArchiveEntry)) {
+                    metrics.addFile(BuildPhase.PAYLOAD, path, length, System.nanoTime() - time);
+                }
+                total += (int) length;
+                total += header.skip(output, total);
+            }
+        } finally {
+            ioOptions.release(buffer);
+        }
         CpioHeader trailer = new CpioHeader();
         trailer.setLast();
-        total = trailer.write(compressedOutput, total);
-        trailer.skip(compressedOutput, total);
-        int length = compressedOutput.finish(payloadkey);
-        int pad = difference(length, 3);
-        ChannelWrapper.empty(compressedOutput, ByteBuffer.allocate(pad));
-        length += pad;
-        compressedOutputStream.flush();
-        return length;
+        total = trailer.write(output, total);
+        trailer.skip(output, total);
+        long length = channel.position() - start;
+        int pad = difference((int) length, 3);
+        ChannelWrapper.empty(output, ByteBuffer.allocate(pad));
+        return length + pad;
+    }
+
+    /**
+     * Transfers the contents of a file to the position of a file channel.
+     *
+     * @param path the file
+     * @param size the size of the file when it was added
+     * @param channel the target channel
+     * @return the number of bytes transferred
+     * @throws IOException if the file could not be transferred, or if it has become shorter
+     */
+    private static long transfer(Path path, long size, FileChannel channel) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, channel);
+                if (transferred <= 0) {
+                    throw new EOFException("unexpected end of file " + path + ", " + (size - position) + " bytes missing");
+                }
+                position += transferred;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * Updates a digest with a region of a file channel, which is mapped into memory in chunks of at most 1 GiB.
+     *
+     * @param messageDigest the digest
+     * @param channel the file channel, open for reading
+     * @param start the start of the region
+     * @param end the end of the region
+     * @throws IOException if the region could not be mapped
+     */
+    private static void digest(MessageDigest messageDigest, FileChannel channel, long start, long end) throws IOException {
+        long position = start;
+        while (position < end) {
+            long size = Math.min(end - position, 1L << 30);
+            MappedByteBuffer mappedByteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            messageDigest.update(mappedByteBuffer);
+            position += size;
+        }
+    }
+
+    /**
+     * Writes the contents of a source to the payload. Only files, URLs and archive entries have a digest,
+     * for all other sources an empty digest is added to the given list.
+     *
+     * @param object the source, a file, a URL, an archive entry, an input stream or any object written as string
+     * @param output the payload channel
+     * @param buffer the buffer to copy with
+     * @param digests the list to add the digest to, or null
+     * @return the number of bytes written
+     * @throws IOException if an IO error occurs
+     */
+    private long writeSource(Object object, WritableChannelWrapper output, ByteBuffer buffer,
+                             StringList digests) throws IOException, NoSuchAlgorithmException {
+        if (object instanceof Path) {
+            Path path = (Path) object;
+            // the key is taken before the file is read, so a file which changes meanwhile is not cached
+            String cacheKey = buildCache != null && digests != null ?
+                    BuildCache.digestKey(path, HashAlgo.SHA256.algo()) : null;
+            String digest = cacheKey != null ? buildCache.getDigest(cacheKey) : null;
+            try (ReadableChannelWrapper in = new ReadableChannelWrapper(Files.newByteChannel(path))) {
+                if (digest != null) {
+                    digests.add(digest);
+                    return copy(in, output, buffer, null);
+                }
+                long length = copy(in, output, buffer, digests);
+                if (cacheKey != null) {
+                    buildCache.putDigest(cacheKey, digests.get(digests.size() - 1));
+                }
+                return length;
+            }
+        }
+        if (object instanceof URL) {
+            try (ReadableChannelWrapper in = new ReadableChannelWrapper(Channels.newChannel(((URL) object)
+                    .openConnection().getInputStream()))) {
+                return copy(in, output, buffer, digests);
+            }
+        }
+        if (object instanceof ArchiveEntry) {
+            try (ReadableChannelWrapper in = new ReadableChannelWrapper(Channels.newChannel(((ArchiveEntry) object)
+                    .newInputStream()))) {
+                return copy(in, output, buffer, digests);
+            }
+        }
+        long total = 0;
+        if (object instanceof InputStream) {
+            try (ReadableByteChannel in = Channels.newChannel(((InputStream) object))) {
+                while (in.read(buffer.rewind()) > 0) {
+                    ByteBuffer byteBuffer = buffer.flip();
+                    total += output.write(byteBuffer);
+                    buffer.compact();
+                }
+            }
+        } else if (object != null) {
+            total += output.write(ByteBuffer.wrap(object.toString().getBytes(StandardCharsets.UTF_8)));
+        }
+        if (digests != null) {
+            digests.add("");
+        }
+        return total;
+    }
+
+    /**
+     * Copies the contents of a source into the payload, and adds the digest of the contents
+     * to the given list.
+     *
+     * @param in the source channel
+     * @param out the payload channel
+     * @param buffer the buffer to copy with
+     * @param digests the list to add the digest to, or null
+     * @return the number of bytes copied
+     * @throws IOException if an IO error occurs
+     */
+    private static long copy(ReadableChannelWrapper in, WritableChannelWrapper out, ByteBuffer buffer,
+                             StringList digests) throws IOException, NoSuchAlgorithmException {
+        ChannelWrapper.Key<byte[]> digestKey = digests != null ?
+                in.startDigest(MessageDigest.getInstance(HashAlgo.SHA256.algo())) : null;
+        long total = 0;
+        while (in.read(buffer.rewind()) > 0) {
+            ByteBuffer byteBuffer = buffer.flip();
+            total += out.write(byteBuffer);
+            buffer.compact();
+        }
+        if (digestKey != null) {
+            digests.add(hex(in.finish(digestKey)));
+        }
+        return total;
     }
 
     /**
@@ -1459,7 +2177,7 @@ public class RpmBuilder {
         return ((boundary + 1) - (start & boundary)) & boundary;
     }
 
-    private static String hex(byte[] bytes) {
+    static String hex(byte[] bytes) {
         StringBuilder sb = new StringBuilder();
         for (byte aByte : bytes) {
             sb.append(hex.charAt(((int) aByte & 0xf0) >> 4)).append(hex.charAt((int) aByte & 0x0f));
@@ -1468,4 +2186,38 @@ public class RpmBuilder {
     }
 
 
+
+    /**
+     * Adds the time spent in writing to a compressor output stream to the compression phase of the build metrics.
+     */
+    private static class CompressionTimingOutputStream extends FilterOutputStream {
+
+        private final BuildMetrics metrics;
+
+        CompressionTimingOutputStream(OutputStream outputStream, BuildMetrics metrics) {
+            super(outputStream);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            long time = System.nanoTime();
+            out.write(b);
+            metrics.addPhase(BuildPhase.COMPRESSION, System.nanoTime() - time);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            long time = System.nanoTime();
+            out.write(b, off, len);
+            metrics.addPhase(BuildPhase.COMPRESSION, System.nanoTime() - time);
+        }
+
+        @Override
+        public void close() throws IOException {
+            long time = System.nanoTime();
+            out.close();
+            metrics.addPhase(BuildPhase.COMPRESSION, System.nanoTime() - time);
+        }
+    }
 }
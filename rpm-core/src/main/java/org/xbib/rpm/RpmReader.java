@@ -5,20 +5,33 @@ import org.xbib.io.compress.xz.XZInputStream;
 import org.xbib.rpm.format.Format;
 import org.xbib.rpm.header.Header;
 import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.IntegerList;
+import org.xbib.rpm.header.LongList;
+import org.xbib.rpm.header.ShortList;
 import org.xbib.rpm.header.StringList;
 import org.xbib.rpm.header.entry.SpecEntry;
+import org.xbib.rpm.io.BoundedReadableChannel;
 import org.xbib.rpm.io.ChannelWrapper;
+import org.xbib.rpm.io.IoOptions;
 import org.xbib.rpm.io.ReadableChannelWrapper;
+import org.xbib.rpm.io.ZstdStreams;
+import org.xbib.rpm.lead.Lead;
 import org.xbib.rpm.payload.CompressionType;
 import org.xbib.rpm.payload.CpioHeader;
 import org.xbib.rpm.signature.SignatureTag;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.zip.GZIPInputStream;
@@ -32,9 +45,44 @@ import java.util.zip.GZIPInputStream;
  */
 public class RpmReader {
 
+    private boolean memoryMapped;
+
+    private IoOptions ioOptions = IoOptions.DEFAULT;
+
     public RpmReader() {
     }
 
+    /**
+     * Sets the options for the buffers which the payload is decompressed and skipped with.
+     * The default are pooled heap buffers of 64 KiB.
+     *
+     * @param ioOptions the I/O options
+     */
+    public void setIoOptions(IoOptions ioOptions) {
+        this.ioOptions = ioOptions;
+    }
+
+    public IoOptions getIoOptions() {
+        return ioOptions;
+    }
+
+    /**
+     * Enables the memory mapped mode for reading headers from a path. In this mode, {@link #readHeader(Path)}
+     * maps the lead, the signature and the header of the file, and decodes the header entries straight from
+     * the mapped buffer, without copying the index and data sections to the heap first. The mapping is not
+     * referenced by the headers afterwards. Only the pages holding the headers are read, the payload is
+     * not touched.
+     *
+     * @param memoryMapped true for reading headers from memory mapped files
+     */
+    public void setMemoryMapped(boolean memoryMapped) {
+        this.memoryMapped = memoryMapped;
+    }
+
+    public boolean isMemoryMapped() {
+        return memoryMapped;
+    }
+
     public Format readFormat(Path path) throws IOException {
         return readFormat(Files.newInputStream((path)));
     }
@@ -47,21 +95,8 @@ public class RpmReader {
 
     public Format readFormat(ReadableChannelWrapper readableChannelWrapper, InputStream inputStream) throws IOException {
         Format format = readHeader(readableChannelWrapper);
-        Header rpmHeader = format.getHeader();
-        try (InputStream uncompressed = createUncompressedStream(rpmHeader, inputStream)) {
-            readableChannelWrapper = new ReadableChannelWrapper(Channels.newChannel(uncompressed));
-            CpioHeader header;
-            int total = 0;
-            do {
-                header = new CpioHeader();
-                total = header.read(readableChannelWrapper, total);
-                final int skip = header.getFileSize();
-                if (uncompressed.skip(skip) != skip) {
-                    throw new RuntimeException();
-                }
-                total += header.getFileSize();
-            } while (!header.isLast());
-        }
+        readPayload(format.getHeader(), inputStream, (header, content) -> {
+        });
         return format;
     }
 
@@ -78,29 +113,15 @@ public class RpmReader {
     public RpmReaderResult read(ReadableChannelWrapper wrapper, InputStream inputStream) throws IOException {
         final Format format = readHeader(wrapper);
         final List<RpmReaderFile> list = new ArrayList<>();
-        try (InputStream uncompressed = createUncompressedStream(format.getHeader(), inputStream)) {
-            wrapper = new ReadableChannelWrapper(Channels.newChannel(uncompressed));
-            CpioHeader header;
-            int total = 0;
-            do {
-                header = new CpioHeader();
-                total = header.read(wrapper, total);
-                int fileSize = header.getFileSize();
-                boolean includingContents = header.getType() == CpioHeader.FILE;
-                if (!header.isLast()) {
-                    ByteBuffer byteBuffer = includingContents ? ChannelWrapper.fill(wrapper, fileSize) : null;
-                    list.add(new RpmReaderFile(header, byteBuffer));
-                }
-                if (!includingContents) {
-                    if (uncompressed.skip(fileSize) != fileSize) {
-                        throw new RuntimeException();
-                    }
-                }
-                total += fileSize;
-            } while (!header.isLast());
-        }
-
-
+        readPayload(format.getHeader(), inputStream, (header, content) -> {
+            if (header.getType() == CpioHeader.FILE && header.getLongFileSize() > Integer.MAX_VALUE) {
+                throw new IOException("file " + header.getName() + " is too large to be held in memory, " +
+                        "use read(Path, RpmReaderVisitor) instead");
+            }
+            ByteBuffer byteBuffer = header.getType() == CpioHeader.FILE ?
+                    ChannelWrapper.fill(content, (int) header.getLongFileSize()) : null;
+            list.add(new RpmReaderFile(header, byteBuffer));
+        });
         return new RpmReaderResult() {
             @Override
             public Format getFormat() {
@@ -114,10 +135,114 @@ public class RpmReader {
         };
     }
 
+    /**
+     * Reads an RPM and passes each entry of the payload to the visitor, together with a channel for its content.
+     * Unlike {@link #read(Path)}, the contents are never held in memory, so memory use does not depend on the
+     * size of the RPM.
+     *
+     * @param path the RPM file
+     * @param visitor the visitor for the payload entries
+     * @return information describing the RPM file
+     * @throws IOException if an error occurs reading the file, or thrown by the visitor
+     */
+    public Format read(Path path, RpmReaderVisitor visitor) throws IOException {
+        return read(Files.newInputStream(path), visitor);
+    }
+
+    /**
+     * Reads an RPM and passes each entry of the payload to the visitor, together with a channel for its content.
+     *
+     * @param inputStream the RPM input stream, which is closed afterwards
+     * @param visitor the visitor for the payload entries
+     * @return information describing the RPM file
+     * @throws IOException if an error occurs reading the stream, or thrown by the visitor
+     */
+    public Format read(InputStream inputStream, RpmReaderVisitor visitor) throws IOException {
+        try (InputStream thisInputStream = inputStream) {
+            Format format = readHeader(new ReadableChannelWrapper(Channels.newChannel(thisInputStream)));
+            readPayload(format.getHeader(), thisInputStream, visitor);
+            return format;
+        }
+    }
+
     public Format readHeader(Path path) throws IOException {
+        if (memoryMapped) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                return readHeader(channel);
+            }
+        }
         return readHeader(Files.newInputStream((path)));
     }
 
+    /**
+     * Reads the headers of an RPM by memory mapping the file channel from its current position. Only the lead,
+     * the signature header and the header are mapped, not the payload. Afterwards, the channel is positioned
+     * at the start of the payload.
+     *
+     * @param channel the file channel to read from
+     * @return information describing the RPM file
+     * @throws IOException if an error occurs reading the file
+     */
+    public Format readHeader(FileChannel channel) throws IOException {
+        long position = channel.position();
+        long signatureStart = position + Lead.LEAD_SIZE;
+        long headerStart = signatureStart + getSectionSize(channel, signatureStart, true);
+        long headerEnd = headerStart + getSectionSize(channel, headerStart, false);
+        long size = Math.min(Math.min(headerEnd, channel.size()) - position, Integer.MAX_VALUE);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        Format format = readHeader(buffer);
+        channel.position(position + buffer.position());
+        return format;
+    }
+
+    /**
+     * Returns the size of the header section at the given position of the file, from the sizes in its intro.
+     */
+    private static long getSectionSize(FileChannel channel, long position, boolean pad) throws IOException {
+        ByteBuffer intro = ByteBuffer.allocate(20);
+        while (intro.hasRemaining()) {
+            if (channel.read(intro, position + intro.position()) == -1) {
+                break;
+            }
+        }
+        intro.flip();
+        // a header may be preceded by four zero bytes, like in AbstractHeader.read
+        int skip = intro.remaining() >= 4 && intro.getInt(0) == 0 ? 4 : 0;
+        if (intro.remaining() < skip + 16) {
+            throw new EOFException("truncated RPM header");
+        }
+        int count = intro.getInt(skip + 8);
+        int total = intro.getInt(skip + 12);
+        if (count < 0 || total < 0) {
+            throw new IOException("invalid header with " + count + " entries and " + total + " bytes of data");
+        }
+        long size = skip + 16 + count * 16L + total;
+        return pad ? size + (((total + 7) & ~7) - total) : size;
+    }
+
+    /**
+     * Reads the headers of an RPM from the current position of the buffer. The headers are parsed in place,
+     * and the position of the buffer is advanced to the start of the payload.
+     *
+     * @param buffer the buffer to read from
+     * @return information describing the RPM file
+     * @throws IOException if an error occurs reading the buffer
+     */
+    public Format readHeader(ByteBuffer buffer) throws IOException {
+        Format format = new Format();
+        int start = buffer.position();
+        try {
+            format.getLead().read(buffer);
+            format.getSignatureHeader().read(buffer);
+            format.getHeader().setStartPos(buffer.position() - start);
+            format.getHeader().read(buffer);
+        } catch (BufferUnderflowException e) {
+            throw new EOFException("truncated RPM header");
+        }
+        format.getHeader().setEndPos(buffer.position() - start);
+        return format;
+    }
+
     public Format readHeader(InputStream inputStream) throws IOException {
         try (InputStream thisInputStream = inputStream) {
             return readHeader(new ReadableChannelWrapper(Channels.newChannel(thisInputStream)));
@@ -153,16 +278,94 @@ public class RpmReader {
         return format;
     }
 
+    /**
+     * Walks through the CPIO payload, and passes each entry except the trailer to the visitor.
+     *
+     * @param header the header
+     * @param inputStream raw input stream of the rpm, positioned at the payload
+     * @param visitor the visitor for the payload entries
+     * @throws IOException an IO error occurred
+     */
+    private void readPayload(Header header, InputStream inputStream, RpmReaderVisitor visitor)
+            throws IOException {
+        ByteBuffer buffer = ioOptions.acquire();
+        try (InputStream uncompressed = createUncompressedStream(header, inputStream, ioOptions.getBufferSize())) {
+            ReadableByteChannel channel = Channels.newChannel(uncompressed);
+            CpioHeader cpioHeader;
+            int total = 0;
+            do {
+                cpioHeader = new CpioHeader();
+                total = cpioHeader.read(channel, total);
+                if (cpioHeader.isStripped()) {
+                    resolve(cpioHeader, header);
+                }
+                BoundedReadableChannel content = new BoundedReadableChannel(channel, cpioHeader.getLongFileSize());
+                if (!cpioHeader.isLast()) {
+                    visitor.visit(cpioHeader, content);
+                    content.close();
+                }
+                content.skip(buffer);
+                // only used for the alignment, so it may overflow
+                total += (int) cpioHeader.getLongFileSize();
+            } while (!cpioHeader.isLast());
+        } finally {
+            ioOptions.release(buffer);
+        }
+    }
+
+    /**
+     * Completes a CPIO header in the stripped format from the file entries of the RPM header. Only regular
+     * files and symbolic links have content in the payload.
+     *
+     * @param cpioHeader the stripped CPIO header
+     * @param header the RPM header
+     * @throws IOException if the file index is not in the RPM header
+     */
+    private static void resolve(CpioHeader cpioHeader, Header header) throws IOException {
+        int fileIndex = cpioHeader.getFileIndex();
+        SpecEntry<?> baseNamesEntry = header.getEntry(HeaderTag.BASENAMES);
+        StringList baseNames = baseNamesEntry != null ? (StringList) baseNamesEntry.getValues() : new StringList();
+        if (fileIndex >= baseNames.size()) {
+            throw new IOException("stripped CPIO header refers to missing file " + fileIndex);
+        }
+        StringList dirNames = (StringList) header.getEntry(HeaderTag.DIRNAMES).getValues();
+        IntegerList dirIndexes = (IntegerList) header.getEntry(HeaderTag.DIRINDEXES).getValues();
+        cpioHeader.setName("." + dirNames.get(dirIndexes.getInt(fileIndex)) + baseNames.get(fileIndex));
+        int mode = ((ShortList) header.getEntry(HeaderTag.FILEMODES).getValues()).getShort(fileIndex) & 0xffff;
+        cpioHeader.setType(mode >>> 12);
+        cpioHeader.setPermissions(mode & 07777);
+        SpecEntry<?> mtimes = header.getEntry(HeaderTag.FILEMTIMES);
+        if (mtimes != null) {
+            cpioHeader.setMtime(1000L * (((IntegerList) mtimes.getValues()).getInt(fileIndex) & 0xffffffffL));
+        }
+        SpecEntry<?> inodes = header.getEntry(HeaderTag.FILEINODES);
+        if (inodes != null) {
+            cpioHeader.setInode(((IntegerList) inodes.getValues()).getInt(fileIndex));
+        }
+        SpecEntry<?> flags = header.getEntry(HeaderTag.FILEFLAGS);
+        if (flags != null) {
+            cpioHeader.setFlags(((IntegerList) flags.getValues()).getInt(fileIndex));
+        }
+        if (cpioHeader.getType() == CpioHeader.FILE || cpioHeader.getType() == CpioHeader.SYMLINK) {
+            SpecEntry<?> longSizes = header.getEntry(HeaderTag.LONGFILESIZES);
+            cpioHeader.setFileSize(longSizes != null ?
+                    ((LongList) longSizes.getValues()).getLong(fileIndex) :
+                    ((IntegerList) header.getEntry(HeaderTag.FILESIZES).getValues()).getInt(fileIndex) & 0xffffffffL);
+        }
+    }
+
     /**
      * Create the proper stream wrapper to handling the payload section based on the
      * payload compression header tag.
      *
      * @param header the header
      * @param inputStream  raw input stream of the rpm
+     * @param bufferSize the size of the input buffer for decompressing
      * @return the "proper" input stream
      * @throws IOException an IO error occurred
      */
-    private static InputStream createUncompressedStream(Header header, InputStream inputStream) throws IOException {
+    private static InputStream createUncompressedStream(Header header, InputStream inputStream, int bufferSize)
+            throws IOException {
         InputStream compressedInput = inputStream;
         SpecEntry<?> pcEntry = header.getEntry(HeaderTag.PAYLOADCOMPRESSOR);
         StringList pc = (StringList) pcEntry.getValues();
@@ -171,7 +374,7 @@ public class RpmReader {
             case NONE:
                 break;
             case GZIP:
-                compressedInput = new GZIPInputStream(inputStream);
+                compressedInput = new GZIPInputStream(inputStream, bufferSize);
                 break;
             case BZIP2:
                 compressedInput = new Bzip2InputStream(inputStream);
@@ -179,6 +382,9 @@ public class RpmReader {
             case XZ:
                 compressedInput = new XZInputStream(inputStream);
                 break;
+            case ZSTD:
+                compressedInput = ZstdStreams.createInputStream(inputStream);
+                break;
         }
         return compressedInput;
     }
@@ -0,0 +1,22 @@
+package org.xbib.rpm;
+
+import org.xbib.rpm.payload.CpioHeader;
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Receives the entries of an RPM payload one by one, see {@link RpmReader#read(java.nio.file.Path, RpmReaderVisitor)}.
+ */
+@FunctionalInterface
+public interface RpmReaderVisitor {
+
+    /**
+     * Visits a payload entry. The content channel is only valid during the call, and is bounded to the size
+     * of the entry. Content which is not read is skipped.
+     *
+     * @param header the CPIO header of the entry
+     * @param content the content of the entry
+     * @throws IOException if an IO error occurs
+     */
+    void visit(CpioHeader header, ReadableByteChannel content) throws IOException;
+}
@@ -0,0 +1,166 @@
+package org.xbib.rpm;
+
+import org.xbib.rpm.exception.RpmException;
+import org.xbib.rpm.format.Format;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.entry.SpecEntry;
+import org.xbib.rpm.io.ChannelWrapper;
+import org.xbib.rpm.lead.Lead;
+import org.xbib.rpm.security.HashAlgo;
+import org.xbib.rpm.security.SignatureGenerator;
+import org.xbib.rpm.security.SigningKey;
+import org.xbib.rpm.signature.SignatureHeader;
+import org.xbib.rpm.signature.SignatureTag;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.util.Map;
+
+/**
+ * Signs existing RPMs with another key without rebuilding them. Only the signature header is rewritten,
+ * with a new RSAHEADER signature over the unchanged header section. The header and the payload are copied
+ * with {@link FileChannel#transferTo}, so they are not read into the heap.
+ * All previous signatures are removed. If the header has a PAYLOADDIGEST, the payload is covered by it,
+ * and the signatures over header and payload (LEGACY_PGP, LEGACY_GPG) are not renewed, so the payload
+ * is not read at all. Otherwise, a new LEGACY_PGP signature over header and payload is created.
+ * The key ring is decoded once, so one resigner can sign many packages, but not concurrently.
+ */
+public class RpmResigner {
+
+    private static final SignatureTag[] SIGNATURES = {
+            SignatureTag.RSAHEADER, SignatureTag.DSAHEADER, SignatureTag.LEGACY_RSAHEADER,
+            SignatureTag.LEGACY_DSAHEADER, SignatureTag.PGP, SignatureTag.GPG, SignatureTag.LEGACY_PGP,
+            SignatureTag.LEGACY_GPG
+    };
+
+    private final SignatureGenerator signatureGenerator;
+
+    private HashAlgo privateKeyHashAlgo = HashAlgo.SHA256;
+
+    /**
+     * Creates a resigner for the given private key. Without a key ring, the signatures are removed.
+     *
+     * @param privateKeyRing the private key ring, or null
+     * @param privateKeyId the id of the signing key, or null for the first signing key
+     * @param privateKeyPassphrase the passphrase of the signing key
+     */
+    public RpmResigner(InputStream privateKeyRing, Long privateKeyId, String privateKeyPassphrase) {
+        this.signatureGenerator = new SignatureGenerator(privateKeyRing, privateKeyId, privateKeyPassphrase);
+    }
+
+    /**
+     * Creates a resigner for the given signing key. Without a signing key, the signatures are removed.
+     *
+     * @param signingKey the signing key, or null
+     */
+    public RpmResigner(SigningKey signingKey) {
+        this.signatureGenerator = new SignatureGenerator(signingKey);
+    }
+
+    public void setPrivateKeyHashAlgo(HashAlgo privateKeyHashAlgo) {
+        this.privateKeyHashAlgo = privateKeyHashAlgo;
+    }
+
+    public HashAlgo getPrivateKeyHashAlgo() {
+        return privateKeyHashAlgo;
+    }
+
+    /**
+     * Signs an RPM in place. The signed RPM is written to a temporary file next to it, which then replaces it.
+     * The file permissions of the RPM are kept where the file system supports POSIX permissions.
+     *
+     * @param path the RPM
+     * @throws IOException if an IO error occurs
+     * @throws RpmException if the signature could not be generated
+     */
+    public void resign(Path path) throws IOException, RpmException {
+        Path target = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+        try {
+            resign(path, target);
+            if (Files.getFileStore(target).supportsFileAttributeView(PosixFileAttributeView.class)) {
+                Files.setPosixFilePermissions(target, Files.getPosixFilePermissions(path));
+            }
+            Files.move(target, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(target);
+        }
+    }
+
+    /**
+     * Signs an RPM, and writes the signed RPM to the target path.
+     *
+     * @param source the RPM
+     * @param target the signed RPM
+     * @throws IOException if an IO error occurs
+     * @throws RpmException if the signature could not be generated
+     */
+    public void resign(Path source, Path target) throws IOException, RpmException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            resign(in, out);
+        }
+    }
+
+    /**
+     * Signs the RPM at the current position of the input channel, and writes the signed RPM to the output channel.
+     *
+     * @param in the channel of the RPM
+     * @param out the channel for the signed RPM
+     * @throws IOException if an IO error occurs
+     * @throws RpmException if the signature could not be generated
+     */
+    public void resign(FileChannel in, FileChannel out) throws IOException, RpmException {
+        long start = in.position();
+        Format format = new RpmReader().readHeader(in);
+        long headerStart = start + format.getHeader().getStartPos();
+        long headerEnd = start + format.getHeader().getEndPos();
+        SignatureHeader signatureHeader = format.getSignatureHeader();
+        Map<Integer, SpecEntry<?>> entries = signatureHeader.getEntries();
+        for (SignatureTag tag : SIGNATURES) {
+            entries.remove(tag.getCode());
+        }
+        entries.remove(SignatureTag.SIGNATURES.getCode());
+        byte[] signature = signatureGenerator.sign(in.map(FileChannel.MapMode.READ_ONLY, headerStart,
+                headerEnd - headerStart), privateKeyHashAlgo);
+        if (signature != null) {
+            signatureHeader.createEntry(SignatureTag.RSAHEADER, signature);
+        }
+        // without a payload digest in the header, only the signature over header and payload covers the payload
+        if (format.getHeader().getEntry(HeaderTag.PAYLOADDIGEST) == null) {
+            byte[] headerAndPayloadSignature = signatureGenerator.sign(in, headerStart, in.size() - headerStart,
+                    privateKeyHashAlgo);
+            if (headerAndPayloadSignature != null) {
+                signatureHeader.createEntry(SignatureTag.LEGACY_PGP, headerAndPayloadSignature);
+            }
+        }
+        SpecEntry<?> signatureEntry = signatureHeader.addEntry(SignatureTag.SIGNATURES, 16);
+        @SuppressWarnings("unchecked")
+        SpecEntry<byte[]> regionEntry = (SpecEntry<byte[]>) signatureEntry;
+        regionEntry.setValues(RpmBuilder.createHeaderIndex(HeaderTag.SIGNATURES.getCode(), signatureHeader.count()));
+        transfer(in, start, Lead.LEAD_SIZE, out);
+        ChannelWrapper.empty(out, ByteBuffer.allocate(signatureHeader.write(out)));
+        transfer(in, headerStart, in.size() - headerStart, out);
+    }
+
+    /**
+     * Copies a region of a file to a channel, without copying it into the heap where the OS allows.
+     */
+    private static void transfer(FileChannel in, long position, long count, FileChannel out) throws IOException {
+        while (count > 0) {
+            long transferred = in.transferTo(position, count, out);
+            if (transferred <= 0) {
+                throw new IOException("could not transfer " + count + " bytes at position " + position);
+            }
+            position += transferred;
+            count -= transferred;
+        }
+    }
+}
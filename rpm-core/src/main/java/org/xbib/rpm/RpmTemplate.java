@@ -0,0 +1,43 @@
+package org.xbib.rpm;
+
+import java.io.IOException;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * A template for building many similar packages, which differ only in a few files, the release or other
+ * header entries. The template is a snapshot of a builder: its header entries, e.g. the descriptions,
+ * the scripts and the changelog, its dependencies, triggers, contents and settings. The private key ring
+ * is decoded and the digests of the files are computed only once, when the template is created.
+ * Each package is built by a builder of its own, which is forked from the template by
+ * {@link #newBuilder()} and only gets the differences added.
+ * A template is immutable and thread safe, builders can be forked from it concurrently. The files of
+ * the template must not change while the template is used.
+ */
+public final class RpmTemplate {
+
+    private final RpmBuilder prototype;
+
+    /**
+     * Creates a template from the current state of a builder. The builder may be changed and built afterwards
+     * without affecting the template. A private key ring of the builder is read here, the builder signs with
+     * the signing key extracted from it afterwards.
+     *
+     * @param builder the builder
+     * @throws IOException if a file could not be read for its digest
+     * @throws NoSuchAlgorithmException if the digest algorithm isn't supported
+     */
+    public RpmTemplate(RpmBuilder builder) throws IOException, NoSuchAlgorithmException {
+        RpmBuilder rpmBuilder = new RpmBuilder(builder);
+        rpmBuilder.prepareTemplate(builder);
+        this.prototype = rpmBuilder;
+    }
+
+    /**
+     * Creates a new builder with the state of this template.
+     *
+     * @return the builder
+     */
+    public RpmBuilder newBuilder() {
+        return new RpmBuilder(prototype);
+    }
+}
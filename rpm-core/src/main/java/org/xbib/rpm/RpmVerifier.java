@@ -0,0 +1,338 @@
+package org.xbib.rpm;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPublicKey;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.xbib.rpm.RpmVerifierResult.Check;
+import org.xbib.rpm.RpmVerifierResult.Status;
+import org.xbib.rpm.header.Header;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.IntegerList;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.header.entry.SpecEntry;
+import org.xbib.rpm.io.ChannelWrapper;
+import org.xbib.rpm.lead.Lead;
+import org.xbib.rpm.security.HashAlgo;
+import org.xbib.rpm.signature.SignatureHeader;
+import org.xbib.rpm.signature.SignatureTag;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies the digests and signatures of RPMs, like {@code rpm -K}. The header digests SHA1HEADER and
+ * SHA256HEADER, the PAYLOADDIGEST, the MD5 digest of header and payload, and the RSA or DSA signatures are
+ * checked in a single pass over the file. Signatures are verified against the public keys of a key ring.
+ * A verifier is thread safe, and can verify all RPMs of a directory in parallel.
+ */
+public class RpmVerifier {
+
+    /**
+     * The maximum number of header entries accepted, like rpm.
+     */
+    private static final int MAX_ENTRIES = 0xffff;
+
+    /**
+     * The maximum size of the header data accepted, like rpm.
+     */
+    private static final int MAX_DATA = 0x0fffffff;
+
+    private static final int BUFFER_SIZE = 65536;
+
+    private final PGPPublicKeyRingCollection publicKeyRings;
+
+    /**
+     * Creates a verifier without public keys, which checks the digests only.
+     */
+    public RpmVerifier() {
+        this.publicKeyRings = null;
+    }
+
+    /**
+     * Creates a verifier for the keys of the given public key ring, in binary or ASCII armored format.
+     *
+     * @param publicKeyRing the public key ring
+     * @throws IOException if the key ring could not be read
+     */
+    public RpmVerifier(InputStream publicKeyRing) throws IOException {
+        try (InputStream decoderStream = PGPUtil.getDecoderStream(new BufferedInputStream(publicKeyRing))) {
+            this.publicKeyRings = new PGPPublicKeyRingCollection(decoderStream, new JcaKeyFingerprintCalculator());
+        } catch (PGPException e) {
+            throw new IOException("could not read public key ring", e);
+        }
+    }
+
+    /**
+     * Verifies all RPMs of a directory, using all available processors.
+     *
+     * @param directory the directory
+     * @return the results, in the order of the file names
+     * @throws IOException if the directory could not be listed
+     */
+    public List<RpmVerifierResult> verifyAll(Path directory) throws IOException {
+        return verifyAll(directory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Verifies all RPMs of a directory concurrently. RPMs which can not be read are reported in their results.
+     *
+     * @param directory the directory
+     * @param parallelism the number of RPMs to verify concurrently
+     * @return the results, in the order of the file names
+     * @throws IOException if the directory could not be listed
+     */
+    public List<RpmVerifierResult> verifyAll(Path directory, int parallelism) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.rpm")) {
+            for (Path path : stream) {
+                if (Files.isRegularFile(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        paths.sort(null);
+        List<RpmVerifierResult> results = new ArrayList<>();
+        if (parallelism <= 1) {
+            for (Path path : paths) {
+                results.add(verifyOrReport(path));
+            }
+            return results;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<RpmVerifierResult>> futures = new ArrayList<>();
+            for (Path path : paths) {
+                futures.add(executorService.submit(() -> verifyOrReport(path)));
+            }
+            for (Future<RpmVerifierResult> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while verifying");
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executorService.shutdownNow();
+        }
+        return results;
+    }
+
+    /**
+     * Verifies an RPM file.
+     *
+     * @param path the RPM
+     * @return the result
+     * @throws IOException if the RPM could not be read
+     */
+    public RpmVerifierResult verify(Path path) throws IOException {
+        try (ReadableByteChannel channel = Files.newByteChannel(path)) {
+            return verify(path, channel);
+        }
+    }
+
+    /**
+     * Verifies an RPM read from a channel. The channel is read to its end.
+     *
+     * @param path the path of the RPM for the result, or null
+     * @param channel the channel to read the RPM from
+     * @return the result
+     * @throws IOException if the RPM could not be read
+     */
+    public RpmVerifierResult verify(Path path, ReadableByteChannel channel) throws IOException {
+        new Lead().read(channel);
+        SignatureHeader signatureHeader = new SignatureHeader();
+        signatureHeader.read(channel);
+        ByteBuffer headerBytes = readHeaderBytes(channel);
+        Header header = new Header();
+        header.read(headerBytes.duplicate());
+        Map<Check, Status> checks = new EnumMap<>(Check.class);
+        MessageDigest md5 = digest(signatureHeader, SignatureTag.LEGACY_MD5, "MD5");
+        MessageDigest sha1 = digest(signatureHeader, SignatureTag.SHA1HEADER, "SHA-1");
+        MessageDigest sha256 = digest(signatureHeader, SignatureTag.SHA256HEADER, "SHA-256");
+        MessageDigest payloadDigest = null;
+        if (header.getEntry(HeaderTag.PAYLOADDIGEST) != null) {
+            payloadDigest = payloadDigest(header);
+        }
+        PGPSignature headerSignature = signature(signatureHeader, Check.HEADER_SIGNATURE, checks,
+                SignatureTag.RSAHEADER, SignatureTag.DSAHEADER);
+        PGPSignature headerAndPayloadSignature = signature(signatureHeader, Check.HEADER_AND_PAYLOAD_SIGNATURE,
+                checks, SignatureTag.LEGACY_PGP, SignatureTag.LEGACY_GPG);
+        byte[] array = headerBytes.array();
+        int length = headerBytes.limit();
+        update(md5, array, length);
+        update(sha1, array, length);
+        update(sha256, array, length);
+        update(headerSignature, array, length);
+        update(headerAndPayloadSignature, array, length);
+        if (md5 != null || payloadDigest != null || headerAndPayloadSignature != null) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            array = buffer.array();
+            while ((length = channel.read(buffer.clear())) != -1) {
+                update(md5, array, length);
+                update(payloadDigest, array, length);
+                update(headerAndPayloadSignature, array, length);
+            }
+        }
+        if (md5 != null) {
+            byte[] expected = (byte[]) signatureHeader.getEntry(SignatureTag.LEGACY_MD5).getValues();
+            checks.put(Check.MD5, status(MessageDigest.isEqual(expected, md5.digest())));
+        }
+        if (sha1 != null) {
+            checks.put(Check.SHA1HEADER, status(hex(signatureHeader, SignatureTag.SHA1HEADER), sha1));
+        }
+        if (sha256 != null) {
+            checks.put(Check.SHA256HEADER, status(hex(signatureHeader, SignatureTag.SHA256HEADER), sha256));
+        }
+        if (payloadDigest != null) {
+            String expected = ((StringList) header.getEntry(HeaderTag.PAYLOADDIGEST).getValues()).get(0);
+            checks.put(Check.PAYLOADDIGEST, status(expected, payloadDigest));
+        }
+        if (headerSignature != null) {
+            checks.put(Check.HEADER_SIGNATURE, verify(headerSignature));
+        }
+        if (headerAndPayloadSignature != null) {
+            checks.put(Check.HEADER_AND_PAYLOAD_SIGNATURE, verify(headerAndPayloadSignature));
+        }
+        return new RpmVerifierResult(path, checks);
+    }
+
+    private RpmVerifierResult verifyOrReport(Path path) {
+        try {
+            return verify(path);
+        } catch (IOException | RuntimeException e) {
+            return new RpmVerifierResult(path, e);
+        }
+    }
+
+    /**
+     * Reads the header section as it is stored in the file, because the header digests and signatures
+     * are computed over these bytes.
+     */
+    private static ByteBuffer readHeaderBytes(ReadableByteChannel channel) throws IOException {
+        ByteBuffer intro = ChannelWrapper.fill(channel, 16);
+        int entries = intro.getInt(8);
+        int data = intro.getInt(12);
+        if (entries < 0 || entries > MAX_ENTRIES || data < 0 || data > MAX_DATA) {
+            throw new IOException("invalid header with " + entries + " entries and " + data + " bytes of data");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(16 + entries * 16 + data);
+        buffer.put(intro);
+        return ChannelWrapper.fill(channel, buffer);
+    }
+
+    private static MessageDigest digest(SignatureHeader signatureHeader, SignatureTag tag, String algorithm)
+            throws IOException {
+        if (signatureHeader.getEntry(tag) == null) {
+            return null;
+        }
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private static MessageDigest payloadDigest(Header header) throws IOException {
+        SpecEntry<?> algoEntry = header.getEntry(HeaderTag.PAYLOADDIGESTALGO);
+        int num = algoEntry != null ? ((IntegerList) algoEntry.getValues()).getInt(0) : HashAlgo.SHA256.num();
+        for (HashAlgo hashAlgo : HashAlgo.values()) {
+            if (hashAlgo.num() == num) {
+                try {
+                    return MessageDigest.getInstance(hashAlgo.algo());
+                } catch (NoSuchAlgorithmException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        throw new IOException("unknown payload digest algorithm " + num);
+    }
+
+    /**
+     * Prepares the verification of the first of the given signatures which is present. The status is
+     * reported at once if the signature can not be verified.
+     */
+    private PGPSignature signature(SignatureHeader signatureHeader, Check check, Map<Check, Status> checks,
+                                   SignatureTag... tags) {
+        for (SignatureTag tag : tags) {
+            SpecEntry<?> entry = signatureHeader.getEntry(tag);
+            if (entry == null) {
+                continue;
+            }
+            try {
+                Object object = new BcPGPObjectFactory((byte[]) entry.getValues()).nextObject();
+                if (!(object instanceof PGPSignatureList) || ((PGPSignatureList) object).size() == 0) {
+                    checks.put(check, Status.BAD);
+                    return null;
+                }
+                PGPSignature signature = ((PGPSignatureList) object).get(0);
+                PGPPublicKey publicKey = publicKeyRings != null ? publicKeyRings.getPublicKey(signature.getKeyID()) : null;
+                if (publicKey == null) {
+                    checks.put(check, Status.NOKEY);
+                    return null;
+                }
+                signature.init(new BcPGPContentVerifierBuilderProvider(), publicKey);
+                return signature;
+            } catch (IOException | PGPException e) {
+                checks.put(check, Status.BAD);
+                return null;
+            }
+        }
+        return null;
+    }
+
+    private static void update(MessageDigest digest, byte[] array, int length) {
+        if (digest != null) {
+            digest.update(array, 0, length);
+        }
+    }
+
+    private static void update(PGPSignature signature, byte[] array, int length) {
+        if (signature != null) {
+            signature.update(array, 0, length);
+        }
+    }
+
+    private static Status verify(PGPSignature signature) {
+        try {
+            return status(signature.verify());
+        } catch (PGPException e) {
+            return Status.BAD;
+        }
+    }
+
+    private static String hex(SignatureHeader signatureHeader, SignatureTag tag) {
+        return ((StringList) signatureHeader.getEntry(tag).getValues()).get(0);
+    }
+
+    private static Status status(String expected, MessageDigest digest) {
+        return status(RpmBuilder.hex(digest.digest()).equalsIgnoreCase(expected));
+    }
+
+    private static Status status(boolean ok) {
+        return ok ? Status.OK : Status.BAD;
+    }
+}
@@ -0,0 +1,135 @@
+package org.xbib.rpm;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The result of verifying the digests and signatures of an RPM, see {@link RpmVerifier}.
+ */
+public class RpmVerifierResult {
+
+    /**
+     * The digests and signatures of an RPM.
+     */
+    public enum Check {
+        /**
+         * The MD5 digest of header and payload.
+         */
+        MD5,
+        /**
+         * The SHA1 digest of the header.
+         */
+        SHA1HEADER,
+        /**
+         * The SHA256 digest of the header.
+         */
+        SHA256HEADER,
+        /**
+         * The digest of the compressed payload.
+         */
+        PAYLOADDIGEST,
+        /**
+         * The RSA or DSA signature of the header.
+         */
+        HEADER_SIGNATURE,
+        /**
+         * The RSA or DSA signature of header and payload.
+         */
+        HEADER_AND_PAYLOAD_SIGNATURE
+    }
+
+    /**
+     * The outcome of a check.
+     */
+    public enum Status {
+        OK,
+        BAD,
+        /**
+         * The public key for a signature is not known.
+         */
+        NOKEY
+    }
+
+    private final Path path;
+
+    private final Map<Check, Status> checks;
+
+    private final Exception exception;
+
+    RpmVerifierResult(Path path, Map<Check, Status> checks) {
+        this.path = path;
+        this.checks = Collections.unmodifiableMap(new EnumMap<>(checks));
+        this.exception = null;
+    }
+
+    RpmVerifierResult(Path path, Exception exception) {
+        this.path = path;
+        this.checks = Collections.emptyMap();
+        this.exception = exception;
+    }
+
+    /**
+     * Returns the path of the RPM.
+     *
+     * @return the path, or null if the RPM was not read from a path
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the outcome of all checks. Digests and signatures which are not present in the RPM are not checked.
+     *
+     * @return the checks
+     */
+    public Map<Check, Status> getChecks() {
+        return checks;
+    }
+
+    public Status getStatus(Check check) {
+        return checks.get(check);
+    }
+
+    /**
+     * Returns the exception if the RPM could not be read or is damaged.
+     *
+     * @return the exception, or null
+     */
+    public Exception getException() {
+        return exception;
+    }
+
+    /**
+     * Checks if the RPM could be read, has at least one digest, and all digests and signatures are OK.
+     *
+     * @return true if valid
+     */
+    public boolean isValid() {
+        if (exception != null || checks.isEmpty()) {
+            return false;
+        }
+        for (Status status : checks.values()) {
+            if (status != Status.OK) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(path).append(": ");
+        if (exception != null) {
+            builder.append("error ").append(exception.getMessage());
+        } else {
+            for (Map.Entry<Check, Status> entry : checks.entrySet()) {
+                builder.append(entry.getKey().name().toLowerCase()).append(' ').append(entry.getValue()).append(' ');
+            }
+            builder.append(isValid() ? "OK" : "NOT OK");
+        }
+        return builder.toString();
+    }
+}
@@ -1,5 +1,6 @@
 package org.xbib.rpm.header;
 
+import org.xbib.rpm.header.entry.AbstractSpecEntry;
 import org.xbib.rpm.header.entry.BinSpecEntry;
 import org.xbib.rpm.header.entry.I18NStringSpecEntry;
 import org.xbib.rpm.header.entry.Int16SpecEntry;
@@ -13,16 +14,16 @@ import org.xbib.rpm.io.ChannelWrapper;
 import org.xbib.rpm.lead.Lead;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.channels.WritableByteChannel;
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
@@ -43,6 +44,10 @@ public abstract class AbstractHeader {
 
     private final Map<SpecEntry<?>, Integer> pending = new LinkedHashMap<>();
 
+    private volatile ByteBuffer rawIndex;
+
+    private ByteBuffer rawData;
+
     private int startPos;
 
     private int endPos;
@@ -51,6 +56,7 @@ public abstract class AbstractHeader {
 
     /**
      * Reads the entire header contents for this channel and returns the number of entries found.
+     * The entries are decoded lazily, see {@link #getEntry(int)}.
      *
      * @param in the ReadableByteChannel to read
      * @return the number read
@@ -73,12 +79,96 @@ public abstract class AbstractHeader {
         int total = header.getInt();
         int pad = pad() ? ((total + 7) & ~7) - total : 0;
         ByteBuffer data = ChannelWrapper.fill(in, total + pad);
-        int count = 0;
-        while (index.remaining() >= ENTRY_SIZE) {
-            readEntry(index.getInt(), index.getInt(), index.getInt(), index.getInt(), data);
-            count++;
+        return readEntries(index, data);
+    }
+
+    /**
+     * Reads the entire header contents from the current position of the buffer, and returns the
+     * number of entries found. The index and data sections are not copied, the entries are read from
+     * views of the buffer. The entries of a heap buffer are decoded lazily, the entries of a memory mapped
+     * buffer are all decoded here, so that the header does not keep the mapping alive. The position of
+     * the buffer is advanced past the header, including the padding.
+     *
+     * @param buffer the buffer to read
+     * @return the number read
+     * @throws IOException there was an IO error
+     */
+    public int read(ByteBuffer buffer) throws IOException {
+        int magic = buffer.getInt();
+        if (magic == 0) {
+            magic = buffer.getInt();
+        }
+        if (MAGIC_WORD != magic) {
+            throw new IOException("check expected " + Integer.toHexString(0xff & MAGIC_WORD) +
+                    ", found " + Integer.toHexString(0xff & magic));
+        }
+        buffer.getInt();
+        int count = buffer.getInt();
+        int total = buffer.getInt();
+        int pad = pad() ? ((total + 7) & ~7) - total : 0;
+        ByteBuffer index = slice(buffer, count * ENTRY_SIZE);
+        ByteBuffer data = slice(buffer, total + pad);
+        int entries = readEntries(index, data);
+        if (buffer instanceof MappedByteBuffer) {
+            decodeEntries();
+        }
+        return entries;
+    }
+
+    private static ByteBuffer slice(ByteBuffer buffer, int length) {
+        if (length < 0 || buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        buffer.position(buffer.position() + length);
+        return slice;
+    }
+
+    /**
+     * Keeps the raw index and data sections, so that entries can be decoded on demand.
+     */
+    private int readEntries(ByteBuffer index, ByteBuffer data) {
+        decodeEntries();
+        rawData = data;
+        rawIndex = index;
+        return index.remaining() / ENTRY_SIZE;
+    }
+
+    /**
+     * Decodes the entry with the given tag from the raw sections, if it is there.
+     */
+    private SpecEntry<?> decodeEntry(int tag) {
+        for (int i = rawIndex.position(); i + ENTRY_SIZE <= rawIndex.limit(); i += ENTRY_SIZE) {
+            if (rawIndex.getInt(i) == tag) {
+                readEntry(tag, rawIndex.getInt(i + 4), rawIndex.getInt(i + 8), rawIndex.getInt(i + 12), rawData);
+                return entries.get(tag);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes all entries which have not been decoded yet, and drops the raw sections. The raw index
+     * is cleared last, so a thread which sees it cleared also sees all decoded entries.
+     */
+    private void decodeEntries() {
+        if (rawIndex == null) {
+            return;
+        }
+        synchronized (entries) {
+            if (rawIndex == null) {
+                return;
+            }
+            for (int i = rawIndex.position(); i + ENTRY_SIZE <= rawIndex.limit(); i += ENTRY_SIZE) {
+                int tag = rawIndex.getInt(i);
+                if (!entries.containsKey(tag)) {
+                    readEntry(tag, rawIndex.getInt(i + 4), rawIndex.getInt(i + 8), rawIndex.getInt(i + 12), rawData);
+                }
+            }
+            rawData = null;
+            rawIndex = null;
         }
-        return count;
     }
 
     /**
@@ -91,32 +181,109 @@ public abstract class AbstractHeader {
      * @throws IOException there was an IO error
      */
     public int write(WritableByteChannel out) throws IOException {
-        ByteBuffer header = getHeader();
-        ByteBuffer index = getIndex();
-        ByteBuffer data = getData(index);
-        data.flip();
-        int pad = pad() ? ((data.remaining() + 7) & ~7) - data.remaining() : 0;
-        header.putInt(data.remaining());
-        ChannelWrapper.empty(out, header.flip());
-        ChannelWrapper.empty(out, index.flip());
-        ChannelWrapper.empty(out, data);
+        decodeEntries();
+        SpecEntry<?>[] order = getDataOrder();
+        int[] offsets = new int[order.length];
+        int total = getOffsets(order, offsets);
+        int pad = pad() ? ((total + 7) & ~7) - total : 0;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + order.length * ENTRY_SIZE + total);
+        buffer.putInt(MAGIC_WORD);
+        buffer.putInt(0);
+        buffer.putInt(order.length);
+        buffer.putInt(total);
+        writeEntries(buffer, order, offsets);
+        ChannelWrapper.empty(out, buffer.flip());
         return pad;
     }
 
+    /**
+     * Returns all entries of this header. All entries which have not been decoded yet are decoded.
+     *
+     * @return the entries by tag
+     */
     public Map<Integer, SpecEntry<?>> getEntries() {
+        decodeEntries();
         return entries;
     }
 
     public int count() {
+        decodeEntries();
         return entries.size();
     }
 
+    /**
+     * Adds copies of all entries of another header to this header. The values are copied, so values can be
+     * appended to the entries of either header without affecting the other. A header which has been built,
+     * not read, is only read here, so copies can be made concurrently, as long as nobody changes it.
+     * All entries are made by this class, so they are {@link AbstractSpecEntry}s and carry their count.
+     *
+     * @param header the header to copy the entries from
+     */
+    @SuppressWarnings("unchecked")
+    public void copyEntries(AbstractHeader header) {
+        header.decodeEntries();
+        for (Map.Entry<Integer, SpecEntry<?>> entry : header.entries.entrySet()) {
+            AbstractSpecEntry<?> spec = (AbstractSpecEntry<?>) entry.getValue();
+            SpecEntry<Object> copy = (SpecEntry<Object>) makeEntry(spec.getType());
+            copy.setEntryType(spec.getEntryType());
+            copy.setCount(spec.getCount());
+            copy.setValues(copyValues(spec.getValues()));
+            entries.put(entry.getKey(), copy);
+        }
+    }
+
+    private static Object copyValues(Object values) {
+        if (values instanceof StringList) {
+            return new StringList((StringList) values);
+        }
+        if (values instanceof IntegerList) {
+            IntegerList list = new IntegerList(((IntegerList) values).size());
+            list.addAll((IntegerList) values);
+            return list;
+        }
+        if (values instanceof ShortList) {
+            ShortList list = new ShortList(((ShortList) values).size());
+            list.addAll((ShortList) values);
+            return list;
+        }
+        if (values instanceof LongList) {
+            LongList list = new LongList(((LongList) values).size());
+            list.addAll((LongList) values);
+            return list;
+        }
+        if (values instanceof byte[]) {
+            return ((byte[]) values).clone();
+        }
+        if (values instanceof Object[]) {
+            return ((Object[]) values).clone();
+        }
+        return values;
+    }
+
     public SpecEntry<?> getEntry(EntryType entryType) {
         return getEntry(entryType.getCode());
     }
 
+    /**
+     * Returns the entry for a tag. Entries of a header which has been read are decoded on the first
+     * request, and kept for later requests, so tags which are never requested are never decoded.
+     * Decoding is synchronized, so a header which has been read may be shared by threads which
+     * only read it.
+     *
+     * @param code the tag
+     * @return the entry, or null if there is no entry for the tag
+     */
     public SpecEntry<?> getEntry(int code) {
-        return entries.get(code);
+        if (rawIndex == null) {
+            return entries.get(code);
+        }
+        synchronized (entries) {
+            SpecEntry<?> entry = entries.get(code);
+            if (entry == null && rawIndex != null) {
+                entry = decodeEntry(code);
+            }
+            return entry;
+        }
     }
 
     @SuppressWarnings("unchecked")
@@ -139,12 +306,29 @@ public abstract class AbstractHeader {
         entry.setValues(IntegerList.of(value));
     }
 
+    /**
+     * Writes the pending entries of a header that starts immediately after the lead.
+     *
+     * @param channel the channel to write to
+     */
     public void writePending(SeekableByteChannel channel) {
+        writePending(channel, Lead.LEAD_SIZE);
+    }
+
+    /**
+     * Writes the pending entries of this header into their reserved space. The header structure
+     * must have been written before at the given position of the channel.
+     *
+     * @param channel the channel to write to
+     * @param position the position of the header structure in the channel
+     */
+    public void writePending(SeekableByteChannel channel, long position) {
         for (Map.Entry<SpecEntry<?>, Integer> entry : pending.entrySet()) {
             try {
                 ByteBuffer data = ByteBuffer.allocate(entry.getKey().size());
                 entry.getKey().write(data);
-                channel.position(Lead.LEAD_SIZE + HEADER_SIZE + count() * ENTRY_SIZE + entry.getValue());
+                checkSize(entry.getKey(), data.position());
+                channel.position(position + HEADER_SIZE + count() * ENTRY_SIZE + entry.getValue());
                 ChannelWrapper.empty(channel, data.flip());
             } catch (Exception e) {
                 throw new RuntimeException("Error writing pending entry '" + entry.getKey().getEntryType() + "'.", e);
@@ -268,71 +452,81 @@ public abstract class AbstractHeader {
     }
 
     /**
-     * Memory maps the portion of the destination file that will contain the index structure
-     * header and advances the file channels position.  The resulting buffer will be ready for
-     * writing of the entry indexes.
-     * This method must be invoked before mapping the data section, but after mapping the header.
-     *
-     * @return a buffer containing the header
-     * @throws IOException there was an IO error
+     * Returns the entries in the order of the data section. The first entry, which is the region tag,
+     * is written last, after all other entries in the order of their tags.
      */
-    private ByteBuffer getIndex() throws IOException {
-        return ByteBuffer.allocate(count() * ENTRY_SIZE);
+    private SpecEntry<?>[] getDataOrder() {
+        SpecEntry<?>[] order = new SpecEntry<?>[entries.size()];
+        Iterator<SpecEntry<?>> i = entries.values().iterator();
+        if (i.hasNext()) {
+            order[order.length - 1] = i.next();
+        }
+        for (int n = 0; i.hasNext(); n++) {
+            order[n] = i.next();
+        }
+        return order;
     }
 
     /**
-     * Writes the data section of the file, starting at the current position which must be immediately
-     * after the header section.  Each entry writes its corresponding index into the provided index buffer
-     * and then writes its data to the file channel.
+     * Computes the offsets of the entries in the data section, including the alignment of each entry,
+     * without writing anything.
      *
-     * @param index ByteBuffer of the index
-     * @return the total number of bytes written to the data section of the file.
+     * @param order the entries in the order of the data section
+     * @param offsets the array receiving the offsets of the entries
+     * @return the size of the data section
      */
-    private ByteBuffer getData(final ByteBuffer index) {
+    private static int getOffsets(SpecEntry<?>[] order, int[] offsets) {
         int offset = 0;
-        List<ByteBuffer> buffers = new ArrayList<>();
-        Iterator<Integer> i = entries.keySet().iterator();
-        index.position(16);
-        SpecEntry<?> first = entries.get(i.next());
+        for (int n = 0; n < order.length; n++) {
+            SpecEntry<?> entry = order[n];
+            offset = entry.getOffset(offset);
+            int size = entry.size();
+            if (size == 0) {
+                throw new IllegalStateException("entry size is 0");
+            }
+            offsets[n] = offset;
+            offset += size;
+        }
+        return offset;
+    }
+
+    /**
+     * Writes the index and the data section into a buffer which has been sized for both, starting at the
+     * current position of the buffer. The alignment gaps are left as they are, so the buffer must be zeroed.
+     * The index of the first entry, which is the last in the data section, is written first.
+     */
+    private void writeEntries(ByteBuffer buffer, SpecEntry<?>[] order, int[] offsets) {
+        int indexStart = buffer.position();
+        int dataStart = indexStart + order.length * ENTRY_SIZE;
         SpecEntry<?> entry = null;
         try {
-            while (i.hasNext()) {
-                entry = entries.get(i.next());
-                offset = writeData(buffers, index, entry, offset);
+            for (int n = 0; n < order.length; n++) {
+                entry = order[n];
+                int last = order.length - 1;
+                buffer.position(indexStart + (n == last ? 0 : n + 1) * ENTRY_SIZE);
+                entry.index(buffer, offsets[n]);
+                if (entry.ready()) {
+                    buffer.position(dataStart + offsets[n]);
+                    entry.write(buffer);
+                    checkSize(entry, buffer.position() - (dataStart + offsets[n]));
+                } else {
+                    pending.put(entry, offsets[n]);
+                }
             }
-            index.position(0);
-            offset = writeData(buffers, index, first, offset);
-            index.position(index.limit());
         } catch (IllegalArgumentException e) {
             throw new RuntimeException("Error while writing '" + entry + "'.", e);
         }
-        ByteBuffer data = ByteBuffer.allocate(offset);
-        for (ByteBuffer buffer : buffers) {
-            data.put(buffer);
-        }
-        return data;
+        buffer.position(buffer.limit());
     }
 
-    private int writeData(Collection<ByteBuffer> buffers, ByteBuffer index, SpecEntry<?> entry, int offset) {
-        int shift = entry.getOffset(offset) - offset;
-        if (shift > 0) {
-            buffers.add(ByteBuffer.allocate(shift));
-        }
-        offset += shift;
-        int size = entry.size();
-        if (size == 0) {
-            throw new IllegalStateException("entry size is 0");
-        }
-        ByteBuffer buffer = ByteBuffer.allocate(size);
-        entry.index(index, offset);
-        if (entry.ready()) {
-            entry.write(buffer);
-            buffer.flip();
-        } else {
-            pending.put(entry, offset);
+    /**
+     * Checks that an entry has written exactly its size, so it has not overwritten the data of the next entry.
+     */
+    private static void checkSize(SpecEntry<?> entry, int written) {
+        if (written != entry.size()) {
+            throw new IllegalStateException("entry " + entry.getEntryType() + " wrote " + written +
+                    " bytes instead of its size of " + entry.size() + " bytes");
         }
-        buffers.add(buffer);
-        return offset + size;
     }
 
     private void readEntry(int tag, int type, int offset, int count, ByteBuffer data) {
@@ -355,7 +549,7 @@ public abstract class AbstractHeader {
     }
 
     private SpecEntry<?> addOrAppendEntry(EntryType entryType, int count) {
-        SpecEntry<?> entry = entries.get(entryType.getCode());
+        SpecEntry<?> entry = getEntry(entryType.getCode());
         if (entry == null) {
             entry = makeEntry(entryType.getType());
             entry.setEntryType(entryType);
@@ -395,7 +589,7 @@ public abstract class AbstractHeader {
         StringBuilder builder = new StringBuilder();
         builder.append("Header(").append(getClass()).append(")").append("\n");
         int count = 0;
-        for (Map.Entry<Integer, SpecEntry<?>> entry : entries.entrySet()) {
+        for (Map.Entry<Integer, SpecEntry<?>> entry : getEntries().entrySet()) {
             builder.append(count++).append(": ").append(entry.getValue()).append("\n");
         }
         return builder.toString();
@@ -99,6 +99,8 @@ public enum HeaderTag implements EntryType {
     IMMUTABLE(0x0000003f, INT32_ENTRY, IntegerList.class, "_immutable"),
     DISTURL( 1123, STRING_ENTRY, String.class,"disturl"),
     DISTTAG( 1155, STRING_ENTRY,  String.class,"disttag"),
+    LONGFILESIZES(5008, INT64_ENTRY, LongList.class, "longfilesizes"),
+    LONGSIZE(5009, INT64_ENTRY, LongList.class, "longsize"),
     BUGURL( 5012, STRING_ENTRY, String.class,"bugurl"),
     ENCODING( 5062, STRING_ENTRY, String.class,"encoding"),
     PAYLOADDIGEST( 5092, STRING_LIST_ENTRY, StringList.class,"payloaddigest"),
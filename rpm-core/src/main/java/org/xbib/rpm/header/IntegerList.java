@@ -1,14 +1,177 @@
 package org.xbib.rpm.header;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.RandomAccess;
 
-@SuppressWarnings("serial")
-public class IntegerList extends ArrayList<Integer> {
+/**
+ * A list of 32 bit integers, backed by a primitive array. The elements are only boxed when they are accessed
+ * through the {@link java.util.List} methods, the primitive accessors and the bulk transfer
+ * methods work on the array directly. Like {@link java.util.ArrayList}, the list can be cloned and serialized,
+ * and its capacity can be managed.
+ */
+public class IntegerList extends AbstractList<Integer> implements RandomAccess, Cloneable, Serializable {
 
-    public static IntegerList of(Integer... integers) {
-        IntegerList list = new IntegerList();
-        list.addAll(Arrays.asList(integers));
+    private static final long serialVersionUID = 1L;
+
+    private int[] elements;
+
+    private int size;
+
+    public IntegerList() {
+        this(10);
+    }
+
+    public IntegerList(int capacity) {
+        this.elements = new int[capacity];
+    }
+
+    public static IntegerList of(Integer... values) {
+        IntegerList list = new IntegerList(values.length);
+        for (Integer value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Reads a list from a buffer in one bulk transfer.
+     *
+     * @param buffer the buffer to read from
+     * @param count the number of elements to read
+     * @return the list
+     */
+    public static IntegerList read(IntBuffer buffer, int count) {
+        IntegerList list = new IntegerList(count);
+        buffer.get(list.elements, 0, count);
+        list.size = count;
         return list;
     }
+
+    /**
+     * Writes the elements of this list to a buffer in one bulk transfer.
+     *
+     * @param buffer the buffer to write to
+     * @param count the number of elements to write
+     */
+    public void write(IntBuffer buffer, int count) {
+        if (count > size) {
+            throw new IndexOutOfBoundsException("count " + count + " exceeds size " + size);
+        }
+        buffer.put(elements, 0, count);
+    }
+
+    public int getInt(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public int setInt(int index, int value) {
+        checkIndex(index);
+        int old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    public boolean add(int value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        modCount++;
+        return true;
+    }
+
+    public int[] toIntArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public Integer set(int index, Integer value) {
+        return setInt(index, value);
+    }
+
+    @Override
+    public void add(int index, Integer value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        int v = value;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = v;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Integer remove(int index) {
+        checkIndex(index);
+        int old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, to hold at least the given number of elements.
+     *
+     * @param capacity the minimum capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length + (elements.length >> 1) + 1));
+            modCount++;
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its size.
+     */
+    public void trimToSize() {
+        if (size < elements.length) {
+            elements = Arrays.copyOf(elements, size);
+            modCount++;
+        }
+    }
+
+    /**
+     * Returns a copy of this list, with an array of its own.
+     *
+     * @return the copy
+     */
+    @Override
+    public IntegerList clone() {
+        try {
+            IntegerList list = (IntegerList) super.clone();
+            list.elements = Arrays.copyOf(elements, size);
+            list.modCount = 0;
+            return list;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
 }
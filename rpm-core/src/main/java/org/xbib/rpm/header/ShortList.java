@@ -1,14 +1,177 @@
 package org.xbib.rpm.header;
 
-import java.util.ArrayList;
+import java.io.Serializable;
+import java.nio.ShortBuffer;
+import java.util.AbstractList;
 import java.util.Arrays;
+import java.util.RandomAccess;
 
-@SuppressWarnings("serial")
-public class ShortList extends ArrayList<Short> {
+/**
+ * A list of 16 bit integers, backed by a primitive array. The elements are only boxed when they are accessed
+ * through the {@link java.util.List} methods, the primitive accessors and the bulk transfer
+ * methods work on the array directly. Like {@link java.util.ArrayList}, the list can be cloned and serialized,
+ * and its capacity can be managed.
+ */
+public class ShortList extends AbstractList<Short> implements RandomAccess, Cloneable, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private short[] elements;
+
+    private int size;
+
+    public ShortList() {
+        this(10);
+    }
+
+    public ShortList(int capacity) {
+        this.elements = new short[capacity];
+    }
 
     public static ShortList of(Short... values) {
-        ShortList list = new ShortList();
-        list.addAll(Arrays.asList(values));
+        ShortList list = new ShortList(values.length);
+        for (Short value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    /**
+     * Reads a list from a buffer in one bulk transfer.
+     *
+     * @param buffer the buffer to read from
+     * @param count the number of elements to read
+     * @return the list
+     */
+    public static ShortList read(ShortBuffer buffer, int count) {
+        ShortList list = new ShortList(count);
+        buffer.get(list.elements, 0, count);
+        list.size = count;
         return list;
     }
+
+    /**
+     * Writes the elements of this list to a buffer in one bulk transfer.
+     *
+     * @param buffer the buffer to write to
+     * @param count the number of elements to write
+     */
+    public void write(ShortBuffer buffer, int count) {
+        if (count > size) {
+            throw new IndexOutOfBoundsException("count " + count + " exceeds size " + size);
+        }
+        buffer.put(elements, 0, count);
+    }
+
+    public short getShort(int index) {
+        checkIndex(index);
+        return elements[index];
+    }
+
+    public short setShort(int index, short value) {
+        checkIndex(index);
+        short old = elements[index];
+        elements[index] = value;
+        return old;
+    }
+
+    public boolean add(short value) {
+        ensureCapacity(size + 1);
+        elements[size++] = value;
+        modCount++;
+        return true;
+    }
+
+    public short[] toShortArray() {
+        return Arrays.copyOf(elements, size);
+    }
+
+    @Override
+    public Short get(int index) {
+        return getShort(index);
+    }
+
+    @Override
+    public Short set(int index, Short value) {
+        return setShort(index, value);
+    }
+
+    @Override
+    public void add(int index, Short value) {
+        if (index < 0 || index > size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+        short v = value;
+        ensureCapacity(size + 1);
+        System.arraycopy(elements, index, elements, index + 1, size - index);
+        elements[index] = v;
+        size++;
+        modCount++;
+    }
+
+    @Override
+    public Short remove(int index) {
+        checkIndex(index);
+        short old = elements[index];
+        System.arraycopy(elements, index + 1, elements, index, size - index - 1);
+        size--;
+        modCount++;
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Increases the capacity of this list, if necessary, to hold at least the given number of elements.
+     *
+     * @param capacity the minimum capacity
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > elements.length) {
+            elements = Arrays.copyOf(elements, Math.max(capacity, elements.length + (elements.length >> 1) + 1));
+            modCount++;
+        }
+    }
+
+    /**
+     * Trims the capacity of this list to its size.
+     */
+    public void trimToSize() {
+        if (size < elements.length) {
+            elements = Arrays.copyOf(elements, size);
+            modCount++;
+        }
+    }
+
+    /**
+     * Returns a copy of this list, with an array of its own.
+     *
+     * @return the copy
+     */
+    @Override
+    public ShortList clone() {
+        try {
+            ShortList list = (ShortList) super.clone();
+            list.elements = Arrays.copyOf(elements, size);
+            list.modCount = 0;
+            return list;
+        } catch (CloneNotSupportedException e) {
+            throw new InternalError(e);
+        }
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+        }
+    }
 }
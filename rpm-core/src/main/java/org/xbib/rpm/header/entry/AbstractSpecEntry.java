@@ -40,6 +40,10 @@ public abstract class AbstractSpecEntry<T> implements SpecEntry<T> {
         this.count += count;
     }
 
+    public int getCount() {
+        return count;
+    }
+
     public void setOffset(int offset) {
         this.offset = offset;
     }
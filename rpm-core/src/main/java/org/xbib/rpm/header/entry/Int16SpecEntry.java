@@ -27,18 +27,14 @@ public class Int16SpecEntry extends AbstractSpecEntry<ShortList> {
 
     @Override
     public void read(ByteBuffer buffer) {
-        ShortList values = new ShortList();
-        for (int i = 0; i < count; i++) {
-            values.add(buffer.getShort());
-        }
-        setValues(values);
+        setValues(ShortList.read(buffer.asShortBuffer(), count));
+        buffer.position(buffer.position() + size());
     }
 
     @Override
     public void write(ByteBuffer data) {
-        for (short s : values) {
-            data.putShort(s);
-        }
+        values.write(data.asShortBuffer(), count);
+        data.position(data.position() + size());
     }
 
     @Override
@@ -27,22 +27,14 @@ public class Int32SpecEntry extends AbstractSpecEntry<IntegerList> {
 
     @Override
     public void read(ByteBuffer buffer) {
-        IntegerList values = new IntegerList();
-        for (int x = 0; x < count; x++) {
-            values.add(buffer.getInt());
-        }
-        setValues(values);
+        setValues(IntegerList.read(buffer.asIntBuffer(), count));
+        buffer.position(buffer.position() + size());
     }
 
     @Override
     public void write(ByteBuffer buffer) {
-        for (int i = 0; i < count; i++) {
-            Integer integer = values.get(i);
-            if (integer == null) {
-                throw new NullPointerException();
-            }
-            buffer.putInt(integer);
-        }
+        values.write(buffer.asIntBuffer(), count);
+        buffer.position(buffer.position() + size());
     }
 
     @Override
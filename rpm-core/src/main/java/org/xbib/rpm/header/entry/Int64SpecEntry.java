@@ -27,18 +27,14 @@ public class Int64SpecEntry extends AbstractSpecEntry<LongList> {
 
     @Override
     public void read(ByteBuffer buffer) {
-        LongList values = new LongList();
-        for (int x = 0; x < count; x++) {
-            values.add(buffer.getLong());
-        }
-        setValues(values);
+        setValues(LongList.read(buffer.asLongBuffer(), count));
+        buffer.position(buffer.position() + size());
     }
 
     @Override
     public void write(ByteBuffer data) {
-        for (Long l : values) {
-            data.putLong(l);
-        }
+        values.write(data.asLongBuffer(), count);
+        data.position(data.position() + size());
     }
 
     @Override
@@ -22,17 +22,13 @@ public class Int8SpecEntry extends AbstractSpecEntry<byte[]> {
     @Override
     public void read(ByteBuffer buffer) {
         byte[] values = new byte[count];
-        for (int x = 0; x < count; x++) {
-            values[x] = buffer.get();
-        }
+        buffer.get(values);
         setValues(values);
     }
 
     @Override
     public void write(ByteBuffer data) {
-        for (byte b : values) {
-            data.put(b);
-        }
+        data.put(values);
     }
 
     @Override
@@ -22,11 +22,35 @@ public class StringSpecEntry extends AbstractSpecEntry<StringList> {
             return size;
         }
         for (String s : values) {
-            size += StandardCharsets.UTF_8.encode(s).remaining() + 1;
+            size += utf8Length(s) + 1;
         }
         return size;
     }
 
+    /**
+     * Returns the length of a string in UTF-8 without encoding it. Unpaired surrogates count as one byte,
+     * because the encoder replaces them.
+     */
+    private static int utf8Length(String s) {
+        int length = s.length();
+        int n = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                n += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                n += 2;
+                i++;
+            } else if (!Character.isSurrogate(c)) {
+                n += 2;
+            }
+        }
+        return n;
+    }
+
     @Override
     public void read(ByteBuffer buffer) {
         StringList values = new StringList();
@@ -46,7 +70,18 @@ public class StringSpecEntry extends AbstractSpecEntry<StringList> {
     @Override
     public void write(ByteBuffer data) {
         for (String s : values) {
-            data.put(StandardCharsets.UTF_8.encode(s)).put((byte) 0);
+            // most strings are ASCII, they are copied without an encoded buffer
+            int start = data.position();
+            int length = s.length();
+            int i = 0;
+            while (i < length && s.charAt(i) < 0x80) {
+                data.put((byte) s.charAt(i++));
+            }
+            if (i < length) {
+                data.position(start);
+                data.put(StandardCharsets.UTF_8.encode(s));
+            }
+            data.put((byte) 0);
         }
     }
 
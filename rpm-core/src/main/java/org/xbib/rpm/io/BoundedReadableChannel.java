@@ -0,0 +1,90 @@
+package org.xbib.rpm.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A channel reading a fixed number of bytes from an underlying channel, like the content of a single
+ * file in a CPIO archive. Closing this channel does not close the underlying channel.
+ */
+public class BoundedReadableChannel implements ReadableByteChannel {
+
+    private final ReadableByteChannel channel;
+
+    private long remaining;
+
+    private boolean open = true;
+
+    public BoundedReadableChannel(ReadableByteChannel channel, long length) {
+        this.channel = channel;
+        this.remaining = length;
+    }
+
+    /**
+     * Reads at most the remaining number of bytes from the underlying channel.
+     *
+     * @param buffer the buffer to read into
+     * @return the number of bytes read, or -1 if all bytes have been read
+     * @throws IOException if an IO error occurs, or the underlying channel ends early
+     */
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        if (remaining == 0) {
+            return -1;
+        }
+        int limit = buffer.limit();
+        if (buffer.remaining() > remaining) {
+            buffer.limit(buffer.position() + (int) remaining);
+        }
+        int read;
+        try {
+            read = channel.read(buffer);
+        } finally {
+            buffer.limit(limit);
+        }
+        if (read == -1) {
+            throw new EOFException(remaining + " bytes missing");
+        }
+        remaining -= read;
+        return read;
+    }
+
+    /**
+     * Reads and discards all remaining bytes, so the underlying channel is positioned after them.
+     *
+     * @param buffer a buffer to read into
+     * @throws IOException if an IO error occurs, or the underlying channel ends early
+     */
+    public void skip(ByteBuffer buffer) throws IOException {
+        while (remaining > 0) {
+            buffer.clear();
+            int limit = (int) Math.min(buffer.capacity(), remaining);
+            buffer.limit(limit);
+            int read = channel.read(buffer);
+            if (read == -1) {
+                throw new EOFException(remaining + " bytes missing");
+            }
+            remaining -= read;
+        }
+    }
+
+    public long remaining() {
+        return remaining;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() {
+        open = false;
+    }
+}
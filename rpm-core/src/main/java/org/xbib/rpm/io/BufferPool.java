@@ -0,0 +1,78 @@
+package org.xbib.rpm.io;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A thread safe pool of byte buffers of the same size, heap or direct. Direct buffers are expensive
+ * to allocate and are only freed by the garbage collector, so they should be reused. Buffers which
+ * are released when the pool is full are left to the garbage collector.
+ */
+public class BufferPool {
+
+    private final int bufferSize;
+
+    private final boolean direct;
+
+    private final int capacity;
+
+    private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a buffer pool.
+     *
+     * @param bufferSize the size of the buffers
+     * @param direct true for direct buffers, false for heap buffers
+     * @param capacity the maximum number of buffers kept for reuse
+     */
+    public BufferPool(int bufferSize, boolean direct, int capacity) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.capacity = capacity;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Takes a buffer from the pool, or allocates a new one if the pool is empty.
+     *
+     * @return a cleared buffer
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        size.decrementAndGet();
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used afterwards.
+     *
+     * @param buffer the buffer, buffers of another size or kind are ignored
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferSize || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        if (size.incrementAndGet() <= capacity) {
+            buffers.offer(buffer);
+        } else {
+            size.decrementAndGet();
+        }
+    }
+}
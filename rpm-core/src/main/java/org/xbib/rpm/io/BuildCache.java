@@ -0,0 +1,171 @@
+package org.xbib.rpm.io;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A persistent cache for repeated builds of the same package, kept in a local directory.
+ *
+ * The cache holds the digests of files, keyed by the path, size, modification time and file key
+ * (device and inode) of each file, so an unchanged file is not read again for its digest. A file
+ * which is changed without changing any of these attributes is not detected.
+ *
+ * The cache also holds the compressed blocks of the block parallel compressors, keyed by the digest
+ * of the uncompressed block and the compression settings, so an unchanged block is not compressed again.
+ *
+ * Entries are written to temporary files which are atomically moved into place, so the directory can
+ * be shared by concurrent builds, also from different processes. Nothing is ever evicted, the directory
+ * may be deleted at any time when no build is running.
+ */
+public class BuildCache {
+
+    private static final String DIGESTS = "digests";
+
+    private static final String BLOCKS = "blocks";
+
+    private final Path directory;
+
+    /**
+     * Creates a build cache.
+     *
+     * @param directory the cache directory, which is created if it does not exist
+     * @throws IOException if the directory could not be created
+     */
+    public BuildCache(Path directory) throws IOException {
+        this.directory = Files.createDirectories(directory);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Returns a cached digest of a file.
+     *
+     * @param key the digest key, see {@link #digestKey(Path, String)}
+     * @return the hex encoded digest, or null if it is not cached
+     * @throws IOException if the entry could not be read
+     */
+    public String getDigest(String key) throws IOException {
+        byte[] bytes = read(entry(DIGESTS, key));
+        return bytes != null ? new String(bytes, StandardCharsets.US_ASCII) : null;
+    }
+
+    /**
+     * Stores the digest of a file.
+     *
+     * @param key the digest key, taken before the file was read for the digest
+     * @param digest the hex encoded digest
+     * @throws IOException if the entry could not be written
+     */
+    public void putDigest(String key, String digest) throws IOException {
+        write(entry(DIGESTS, key), digest.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    /**
+     * Returns a cached compressed block.
+     *
+     * @param key the block key, see {@link #blockKey(String, byte[], int)}
+     * @return the compressed block, or null if it is not cached
+     * @throws IOException if the entry could not be read
+     */
+    public byte[] getBlock(String key) throws IOException {
+        return read(entry(BLOCKS, key));
+    }
+
+    /**
+     * Stores a compressed block.
+     *
+     * @param key the block key, see {@link #blockKey(String, byte[], int)}
+     * @param compressed the compressed block
+     * @throws IOException if the entry could not be written
+     */
+    public void putBlock(String key, byte[] compressed) throws IOException {
+        write(entry(BLOCKS, key), compressed);
+    }
+
+    /**
+     * Returns the key of an uncompressed block.
+     *
+     * @param variant the name of the compression settings the block is compressed with
+     * @param data the block data
+     * @param length the number of valid bytes in the block data
+     * @return the block key
+     */
+    public static String blockKey(String variant, byte[] data, int length) {
+        MessageDigest messageDigest = sha256();
+        messageDigest.update(variant.getBytes(StandardCharsets.UTF_8));
+        messageDigest.update((byte) 0);
+        messageDigest.update(data, 0, length);
+        return hex(messageDigest.digest());
+    }
+
+    /**
+     * Returns the key of the digest of a file, from its path and its current attributes. The key has to be
+     * taken before the file is read for its digest, so that a change of the file while it is read
+     * gives another key than the one the digest is stored with.
+     *
+     * @param path the file
+     * @param algorithm the name of the digest algorithm
+     * @return the digest key
+     * @throws IOException if the file attributes could not be read
+     */
+    public static String digestKey(Path path, String algorithm) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        String key = path.toAbsolutePath().normalize() + "\0" + attributes.size() + "\0" +
+                attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + "\0" + attributes.fileKey() + "\0" + algorithm;
+        return hex(sha256().digest(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private Path entry(String kind, String key) {
+        return directory.resolve(kind).resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static byte[] read(Path path) throws IOException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static void write(Path path, byte[] bytes) throws IOException {
+        Path parent = Files.createDirectories(path.getParent());
+        Path temp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temp, bytes);
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
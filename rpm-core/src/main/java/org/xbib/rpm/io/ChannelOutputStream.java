@@ -0,0 +1,41 @@
+package org.xbib.rpm.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Output stream writing to a channel at its current position. Unlike the streams created by
+ * {@link java.nio.channels.Channels#newOutputStream}, closing this stream leaves the channel open,
+ * so compressors can be finished on top of a channel which is still needed afterwards.
+ */
+public class ChannelOutputStream extends OutputStream {
+
+    private final WritableByteChannel channel;
+
+    private final ByteBuffer single = ByteBuffer.allocate(1);
+
+    public ChannelOutputStream(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single.clear();
+        single.put((byte) b).flip();
+        ChannelWrapper.empty(channel, single);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ChannelWrapper.empty(channel, ByteBuffer.wrap(b, off, len));
+    }
+
+    /**
+     * Does not close the underlying channel.
+     */
+    @Override
+    public void close() {
+    }
+}
@@ -6,8 +6,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.security.MessageDigest;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Wraps an IO channel so that bytes may be observed during transmission. Wrappers around IO channels are
@@ -16,7 +15,20 @@ import java.util.Map;
  */
 public abstract class ChannelWrapper {
 
-    final Map<Key<?>, Consumer<?>> consumers = new HashMap<>();
+    /**
+     * The size of the chunks copied from direct buffers for the consumers.
+     */
+    private static final int CHUNK_SIZE = 8192;
+
+    private Key<?>[] keys = new Key<?>[4];
+
+    private Consumer<?>[] consumers = new Consumer<?>[4];
+
+    private int count;
+
+    private byte[] chunk;
+
+    private ByteBuffer chunkBuffer;
 
     /**
      * Initializes a byte counter on this channel.
@@ -25,7 +37,7 @@ public abstract class ChannelWrapper {
      */
     public Key<Integer> startCount() {
         Key<Integer> object = new Key<>();
-        consumers.put(object, new Consumer<Integer>() {
+        add(object, new Consumer<Integer>() {
             int count;
 
             @Override
@@ -42,6 +54,29 @@ public abstract class ChannelWrapper {
         return object;
     }
 
+    /**
+     * Initializes a byte counter on this channel which does not overflow at 2 GiB.
+     *
+     * @return reference to the new key added to the consumers
+     */
+    public Key<Long> startLongCount() {
+        Key<Long> object = new Key<>();
+        add(object, new Consumer<Long>() {
+            long count;
+
+            @Override
+            public void consume(ByteBuffer buffer) {
+                count += buffer.remaining();
+            }
+
+            @Override
+            public Long finish() {
+                return count;
+            }
+        });
+        return object;
+    }
+
     /**
      * Add a new consumer to this channel.
      *
@@ -50,18 +85,101 @@ public abstract class ChannelWrapper {
      */
     public Key<byte[]> startCount(Consumer<byte[]> consumer) {
         Key<byte[]> object = new Key<>();
-        consumers.put(object, consumer);
+        add(object, consumer);
         return object;
     }
 
+    /**
+     * Initializes a message digest on this channel.
+     *
+     * @param digest the message digest to update with the observed bytes
+     * @return reference to the new key added to the consumers
+     */
+    public Key<byte[]> startDigest(MessageDigest digest) {
+        return startCount(new Consumer<>() {
+            @Override
+            public void consume(ByteBuffer buffer) {
+                digest.update(buffer);
+            }
+
+            @Override
+            public byte[] finish() {
+                return digest.digest();
+            }
+        });
+    }
+
     @SuppressWarnings("unchecked")
     public <T> T finish(Key<T> object) {
-        return (T) consumers.remove(object).finish();
+        for (int i = 0; i < count; i++) {
+            if (keys[i] == object) {
+                Consumer<?> consumer = consumers[i];
+                System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+                System.arraycopy(consumers, i + 1, consumers, i, count - i - 1);
+                count--;
+                keys[count] = null;
+                consumers[count] = null;
+                return (T) consumer.finish();
+            }
+        }
+        throw new IllegalArgumentException("unknown key");
     }
 
     public void close() throws IOException {
-        if (!consumers.isEmpty()) {
-            throw new IOException("there are '" + consumers.size() + "' unfinished consumers");
+        if (count > 0) {
+            throw new IOException("there are '" + count + "' unfinished consumers");
+        }
+    }
+
+    private void add(Key<?> key, Consumer<?> consumer) {
+        if (count == keys.length) {
+            keys = Arrays.copyOf(keys, 2 * count);
+            consumers = Arrays.copyOf(consumers, 2 * count);
+        }
+        keys[count] = key;
+        consumers[count] = consumer;
+        count++;
+    }
+
+    /**
+     * Passes the bytes between two positions of a buffer to the consumers, in the order they were started.
+     * The consumers see the bytes through the buffer itself, or, for direct buffers, through a chunk
+     * which is copied once for all consumers, so no buffers are allocated. The position and the limit of
+     * the buffer are restored afterwards.
+     *
+     * @param buffer the buffer
+     * @param start the position of the first byte
+     * @param end the position after the last byte
+     */
+    protected void observe(ByteBuffer buffer, int start, int end) {
+        if (count == 0 || start >= end) {
+            return;
+        }
+        int position = buffer.position();
+        int limit = buffer.limit();
+        try {
+            if (buffer.hasArray() || count == 1) {
+                for (int i = 0; i < count; i++) {
+                    buffer.limit(end).position(start);
+                    consumers[i].consume(buffer);
+                }
+            } else {
+                if (chunk == null) {
+                    chunk = new byte[CHUNK_SIZE];
+                    chunkBuffer = ByteBuffer.wrap(chunk);
+                }
+                for (int offset = start; offset < end; offset += CHUNK_SIZE) {
+                    int length = Math.min(CHUNK_SIZE, end - offset);
+                    buffer.limit(offset + length).position(offset);
+                    buffer.get(chunk, 0, length);
+                    for (int i = 0; i < count; i++) {
+                        chunkBuffer.limit(length).position(0);
+                        consumers[i].consume(chunkBuffer);
+                    }
+                }
+            }
+        } finally {
+            buffer.limit(limit).position(position);
         }
     }
 
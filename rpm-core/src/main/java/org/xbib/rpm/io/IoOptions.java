@@ -0,0 +1,77 @@
+package org.xbib.rpm.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Options for the buffers used to copy and digest file contents and payloads. Large direct buffers
+ * reduce the number of system calls and copies for file channels, small heap buffers save memory.
+ * The options are immutable, and the buffers are pooled in a thread safe way, so the same options
+ * can be shared by concurrent builds and reads.
+ */
+public final class IoOptions {
+
+    /**
+     * The default options, with pooled heap buffers of 64 KiB.
+     */
+    public static final IoOptions DEFAULT = new IoOptions(65536, false, true);
+
+    private static final int POOL_CAPACITY = 64;
+
+    private final int bufferSize;
+
+    private final boolean direct;
+
+    private final BufferPool bufferPool;
+
+    /**
+     * Creates I/O options.
+     *
+     * @param bufferSize the size of the buffers in bytes
+     * @param direct true for direct buffers, false for heap buffers
+     * @param pooled true for reusing buffers, false for allocating a new buffer each time
+     */
+    public IoOptions(int bufferSize, boolean direct, boolean pooled) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("buffer size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.direct = direct;
+        this.bufferPool = pooled ? new BufferPool(bufferSize, direct, POOL_CAPACITY) : null;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    public boolean isPooled() {
+        return bufferPool != null;
+    }
+
+    /**
+     * Returns a cleared buffer, which should be given back by {@link #release(ByteBuffer)} when it is not
+     * used anymore.
+     *
+     * @return the buffer
+     */
+    public ByteBuffer acquire() {
+        if (bufferPool != null) {
+            return bufferPool.acquire();
+        }
+        return direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+    }
+
+    /**
+     * Gives back a buffer for reuse.
+     *
+     * @param buffer the buffer from {@link #acquire()}
+     */
+    public void release(ByteBuffer buffer) {
+        if (bufferPool != null) {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package org.xbib.rpm.io;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream compressing its input in independent blocks on a pool of threads. The input is cut into
+ * blocks of a fixed size, each block is compressed on its own, and the compressed blocks are written to the
+ * underlying stream in input order. At most two blocks per thread are held in memory at any time.
+ *
+ * The worker threads are daemon threads, and the pool is shut down when the stream is closed or aborted.
+ *
+ * With a {@link BuildCache}, a block which has been compressed before with the same settings is taken
+ * from the cache instead of being compressed again.
+ */
+public abstract class ParallelCompressorOutputStream extends OutputStream {
+
+    private final OutputStream out;
+
+    private final ExecutorService executorService;
+
+    private final int blockSize;
+
+    private final int maxPending;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int length;
+
+    private boolean submitted;
+
+    private boolean closed;
+
+    private BuildCache buildCache;
+
+    private String variant;
+
+    /**
+     * @param out the output stream for the compressed blocks
+     * @param threads the number of threads compressing blocks
+     * @param blockSize the uncompressed size of each block
+     */
+    protected ParallelCompressorOutputStream(OutputStream out, int threads, int blockSize) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive: " + threads);
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("block size must be positive: " + blockSize);
+        }
+        this.out = out;
+        this.executorService = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "rpm-compressor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.blockSize = blockSize;
+        this.maxPending = 2 * threads;
+        this.block = new byte[blockSize];
+    }
+
+    /**
+     * Sets a cache for the compressed blocks.
+     *
+     * @param buildCache the build cache
+     * @param variant the name of the compression settings, which is part of the block keys
+     */
+    public void setBuildCache(BuildCache buildCache, String variant) {
+        this.buildCache = buildCache;
+        this.variant = variant;
+    }
+
+    /**
+     * Returns the number of bytes in the current block which have not been submitted for compression yet.
+     *
+     * @return the number of bytes in the current block
+     */
+    public int getBlockLength() {
+        return length;
+    }
+
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+    /**
+     * Ends the current block, so the following input starts a new block. Cutting blocks at the same
+     * points of the input, for example at file boundaries, keeps blocks unchanged if other parts of
+     * the input change. Does nothing if the current block is empty.
+     *
+     * @throws IOException if an IO error occurs
+     */
+    public void endBlock() throws IOException {
+        if (length > 0) {
+            submit();
+        }
+    }
+
+    /**
+     * Compresses a single block. Called concurrently from the worker threads.
+     *
+     * @param data the block data
+     * @param length the number of valid bytes in the block data
+     * @return the compressed block
+     * @throws IOException if the block could not be compressed
+     */
+    protected abstract byte[] compress(byte[] data, int length) throws IOException;
+
+    /**
+     * Writes a compressed block to the underlying stream. Called in input order.
+     *
+     * @param out the underlying stream
+     * @param compressed the compressed block
+     * @throws IOException if an IO error occurs
+     */
+    protected void writeBlock(OutputStream out, byte[] compressed) throws IOException {
+        out.write(compressed);
+    }
+
+    /**
+     * Writes anything that has to follow the last block to the underlying stream.
+     *
+     * @param out the underlying stream
+     * @throws IOException if an IO error occurs
+     */
+    protected void finish(OutputStream out) throws IOException {
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        block[length++] = (byte) b;
+        if (length == blockSize) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = Math.min(len, blockSize - length);
+            System.arraycopy(b, off, block, length, n);
+            length += n;
+            off += n;
+            len -= n;
+            if (length == blockSize) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Compresses the last block, writes all pending blocks, and closes the underlying stream.
+     *
+     * @throws IOException if an IO error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (length > 0 || !submitted) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeNext();
+            }
+            finish(out);
+        } finally {
+            executorService.shutdownNow();
+        }
+        out.close();
+    }
+
+    /**
+     * Discards the current block and all pending blocks, and shuts the pool down. Called instead of
+     * {@link #close()} if writing has failed. The underlying stream is neither written to nor closed.
+     */
+    public void abort() {
+        closed = true;
+        for (Future<byte[]> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+        length = 0;
+        executorService.shutdownNow();
+    }
+
+    private void submit() throws IOException {
+        byte[] data = block;
+        int len = length;
+        pending.add(executorService.submit(() -> compressCached(data, len)));
+        submitted = true;
+        block = new byte[blockSize];
+        length = 0;
+        while (pending.size() > maxPending) {
+            writeNext();
+        }
+    }
+
+    private byte[] compressCached(byte[] data, int length) throws IOException {
+        if (buildCache == null) {
+            return compress(data, length);
+        }
+        String key = BuildCache.blockKey(variant, data, length);
+        byte[] compressed = buildCache.getBlock(key);
+        if (compressed == null) {
+            compressed = compress(data, length);
+            buildCache.putBlock(key, compressed);
+        }
+        return compressed;
+    }
+
+    private void writeNext() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        writeBlock(out, compressed);
+    }
+}
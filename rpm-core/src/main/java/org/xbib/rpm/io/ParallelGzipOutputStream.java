@@ -0,0 +1,27 @@
+package org.xbib.rpm.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip output stream compressing blocks in parallel, like pigz. Every block becomes a complete gzip member,
+ * and the members are concatenated. Concatenated members form a valid gzip file, which is decoded by zlib,
+ * and so by rpm, as well as by {@link java.util.zip.GZIPInputStream}.
+ */
+public class ParallelGzipOutputStream extends ParallelCompressorOutputStream {
+
+    public ParallelGzipOutputStream(OutputStream out, int threads, int blockSize) {
+        super(out, threads, blockSize);
+    }
+
+    @Override
+    protected byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(length / 2 + 64);
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(data, 0, length);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+}
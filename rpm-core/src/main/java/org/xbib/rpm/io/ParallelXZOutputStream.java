@@ -0,0 +1,131 @@
+package org.xbib.rpm.io;
+
+import org.xbib.io.compress.xz.FilterOptions;
+import org.xbib.io.compress.xz.XZOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * XZ output stream compressing blocks in parallel. Every block is compressed as an XZ stream of its own,
+ * and the blocks are then taken out of these streams and joined into a single XZ stream with one index
+ * listing all blocks, like the multi-threaded mode of xz does. Unlike concatenated XZ streams, the result
+ * is decoded by decoders which stop after the first stream, as the one in rpm.
+ */
+public class ParallelXZOutputStream extends ParallelCompressorOutputStream {
+
+    private static final int STREAM_HEADER_SIZE = 12;
+
+    private static final int STREAM_FOOTER_SIZE = 12;
+
+    private static final byte[] FOOTER_MAGIC = {'Y', 'Z'};
+
+    private final FilterOptions[] options;
+
+    private final List<long[]> records = new ArrayList<>();
+
+    private byte[] streamFlags;
+
+    public ParallelXZOutputStream(OutputStream out, FilterOptions[] options, int threads, int blockSize) {
+        super(out, threads, blockSize);
+        this.options = options;
+    }
+
+    @Override
+    protected byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(length / 4 + 64);
+        try (XZOutputStream xzOutputStream = new XZOutputStream(byteArrayOutputStream, options)) {
+            xzOutputStream.write(data, 0, length);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    /**
+     * Writes the blocks of a single XZ stream, and remembers the index records of the blocks. The stream header
+     * of the first stream becomes the stream header of the output.
+     */
+    @Override
+    protected void writeBlock(OutputStream out, byte[] compressed) throws IOException {
+        if (compressed.length < STREAM_HEADER_SIZE + STREAM_FOOTER_SIZE) {
+            throw new IOException("truncated xz stream");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(compressed).order(ByteOrder.LITTLE_ENDIAN);
+        byte[] flags = Arrays.copyOfRange(compressed, 6, 8);
+        if (streamFlags == null) {
+            streamFlags = flags;
+            out.write(compressed, 0, STREAM_HEADER_SIZE);
+        } else if (!Arrays.equals(streamFlags, flags)) {
+            throw new IOException("xz stream flags differ between blocks");
+        }
+        int footer = compressed.length - STREAM_FOOTER_SIZE;
+        int indexSize = (buffer.getInt(footer + 4) + 1) * 4;
+        int index = footer - indexSize;
+        if (index < STREAM_HEADER_SIZE || compressed[index] != 0) {
+            throw new IOException("invalid xz index");
+        }
+        buffer.position(index + 1);
+        long count = readMultibyte(buffer);
+        for (long i = 0; i < count; i++) {
+            records.add(new long[]{readMultibyte(buffer), readMultibyte(buffer)});
+        }
+        out.write(compressed, STREAM_HEADER_SIZE, index - STREAM_HEADER_SIZE);
+    }
+
+    /**
+     * Writes the index of all blocks and the stream footer.
+     */
+    @Override
+    protected void finish(OutputStream out) throws IOException {
+        ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(0);
+        writeMultibyte(index, records.size());
+        for (long[] record : records) {
+            writeMultibyte(index, record[0]);
+            writeMultibyte(index, record[1]);
+        }
+        while (index.size() % 4 != 0) {
+            index.write(0);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(index.toByteArray());
+        ByteBuffer indexCrc = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        indexCrc.putInt((int) crc.getValue());
+        index.write(indexCrc.array());
+        index.writeTo(out);
+        ByteBuffer footer = ByteBuffer.allocate(STREAM_FOOTER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        footer.position(4);
+        footer.putInt(index.size() / 4 - 1);
+        footer.put(streamFlags);
+        crc.reset();
+        crc.update(footer.array(), 4, 6);
+        footer.putInt(0, (int) crc.getValue());
+        footer.put(FOOTER_MAGIC);
+        out.write(footer.array());
+    }
+
+    private static long readMultibyte(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int i = 0; i < 9; i++) {
+            int b = buffer.get() & 0xff;
+            value |= (long) (b & 0x7f) << (7 * i);
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("invalid xz multibyte integer");
+    }
+
+    private static void writeMultibyte(OutputStream out, long value) throws IOException {
+        while (value >= 0x80) {
+            out.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
@@ -17,18 +17,19 @@ public class ReadableChannelWrapper extends ChannelWrapper implements ReadableBy
     }
 
     /**
-     * Reads data from the channel and passes it to the consumer.  This method
-     * does not mutate the acutal data in the provided buffer, but makes it's
-     * own copy to pass to the consumer.
+     * Reads data from the channel and passes the bytes read to the consumers. This method
+     * does not mutate the actual data in the provided buffer, and restores its position
+     * and limit after the consumers have seen the bytes.
      *
      * @param buffer the buffer to read into
      * @return the number of bytes read from the underlying channel
      * @throws IOException if an IO error occurrs
      */
     public int read(final ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
         final int read = channel.read(buffer);
-        for (Consumer<?> consumer : consumers.values()) {
-            consumer.consume(buffer.duplicate().flip());
+        if (read > 0) {
+            observe(buffer, start, start + read);
         }
         return read;
     }
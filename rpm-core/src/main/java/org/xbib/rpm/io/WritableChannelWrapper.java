@@ -17,18 +17,20 @@ public class WritableChannelWrapper extends ChannelWrapper implements WritableBy
     }
 
     /**
-     * Writes data to the wrapped channel, while passing an
-     * exact copy to the registered consumers.
+     * Writes data to the wrapped channel, and passes the bytes written
+     * to the registered consumers.
      *
      * @param buffer the buffer to write to the wrapped channel
      * @return the number of bytes written
      * @throws IOException if an IO error occurs
      */
     public int write(final ByteBuffer buffer) throws IOException {
-        for (Consumer<?> consumer : consumers.values()) {
-            consumer.consume(buffer.duplicate());
+        int start = buffer.position();
+        int written = channel.write(buffer);
+        if (written > 0) {
+            observe(buffer, start, start + written);
         }
-        return channel.write(buffer);
+        return written;
     }
 
     /**
@@ -0,0 +1,95 @@
+package org.xbib.rpm.io;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.ZstdOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Creates zstd compressing and decompressing streams. Zstd support is optional, it needs
+ * the zstd-jni library at runtime. Without it, creating a stream fails with an IO exception.
+ */
+public final class ZstdStreams {
+
+    /**
+     * The largest window log accepted by the decoder, so payloads written with long windows can be read.
+     */
+    private static final int WINDOW_LOG_MAX = 31;
+
+    private ZstdStreams() {
+    }
+
+    /**
+     * Checks if the zstd-jni library is available.
+     *
+     * @return true if zstd streams can be created
+     */
+    public static boolean isAvailable() {
+        try {
+            Class.forName("com.github.luben.zstd.ZstdOutputStream", false, ZstdStreams.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a zstd compressing stream.
+     *
+     * @param outputStream the stream for the compressed data
+     * @param level the compression level
+     * @param windowLog the window log for long distance matching, or 0 for none
+     * @param workers the number of threads compressing, or 0 for compressing on the calling thread
+     * @return the compressing stream
+     * @throws IOException if zstd is not available or the stream could not be created
+     */
+    public static OutputStream createOutputStream(OutputStream outputStream, int level, int windowLog, int workers)
+            throws IOException {
+        requireAvailable();
+        return Codec.createOutputStream(outputStream, level, windowLog, workers);
+    }
+
+    /**
+     * Creates a zstd decompressing stream.
+     *
+     * @param inputStream the stream with the compressed data
+     * @return the decompressing stream
+     * @throws IOException if zstd is not available or the stream could not be created
+     */
+    public static InputStream createInputStream(InputStream inputStream) throws IOException {
+        requireAvailable();
+        return Codec.createInputStream(inputStream);
+    }
+
+    private static void requireAvailable() throws IOException {
+        if (!isAvailable()) {
+            throw new IOException("zstd compression requires the zstd-jni library");
+        }
+    }
+
+    /**
+     * Holds the references to zstd-jni, so they are only linked when the library is present.
+     */
+    private static final class Codec {
+
+        private static OutputStream createOutputStream(OutputStream outputStream, int level, int windowLog,
+                                                       int workers) throws IOException {
+            ZstdOutputStream zstdOutputStream = new ZstdOutputStream(outputStream, level);
+            zstdOutputStream.setChecksum(true);
+            if (windowLog > 0) {
+                zstdOutputStream.setLong(windowLog);
+            }
+            if (workers > 0) {
+                zstdOutputStream.setWorkers(workers);
+            }
+            return zstdOutputStream;
+        }
+
+        private static InputStream createInputStream(InputStream inputStream) throws IOException {
+            ZstdInputStream zstdInputStream = new ZstdInputStream(inputStream);
+            zstdInputStream.setLongMax(WINDOW_LOG_MAX);
+            return zstdInputStream;
+        }
+    }
+}
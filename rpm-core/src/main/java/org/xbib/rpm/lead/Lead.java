@@ -65,10 +65,18 @@ public class Lead {
         this.minor = minor;
     }
 
+    public PackageType getType() {
+        return type;
+    }
+
     public void setType(PackageType type) {
         this.type = type;
     }
 
+    public Os getOs() {
+        return os;
+    }
+
     public void setOs(Os os) {
         this.os = os;
     }
@@ -78,7 +86,20 @@ public class Lead {
     }
 
     public void read(ReadableByteChannel channel) throws IOException {
-        ByteBuffer lead = ChannelWrapper.fill(channel, LEAD_SIZE);
+        read(ChannelWrapper.fill(channel, LEAD_SIZE));
+    }
+
+    /**
+     * Reads the lead from the current position of the buffer, and advances the position past the lead.
+     *
+     * @param lead the buffer to read from
+     * @throws IOException if the buffer does not contain a lead
+     */
+    public void read(ByteBuffer lead) throws IOException {
+        if (lead.remaining() < LEAD_SIZE) {
+            throw new IOException("Expected " + LEAD_SIZE + " bytes for lead, found '" + lead.remaining() + "'.");
+        }
+        int start = lead.position();
         int magic = lead.getInt();
         if (MAGIC_WORD != magic) {
             throw new IOException("check expected " +
@@ -91,14 +112,14 @@ public class Lead {
         if (tmp < Architecture.values().length) {
             arch = Architecture.values()[tmp];
         }
-        ByteBuffer data = ByteBuffer.allocate(66);
-        lead.get(data.array());
+        int nameStart = lead.position();
         StringBuilder builder = new StringBuilder();
         byte b;
-        while ((data.hasRemaining() && (b = data.get()) != 0)) {
+        for (int i = 0; i < 66 && (b = lead.get(nameStart + i)) != 0; i++) {
             builder.append((char) b);
         }
         name = builder.toString();
+        lead.position(nameStart + 66);
         short o = lead.getShort();
         if (o != 0xFF) {
             os = Os.values()[o];
@@ -106,9 +127,7 @@ public class Lead {
             os = Os.UNKNOWN;
         }
         sigtype = lead.getShort();
-        if (lead.remaining() != 16) {
-            throw new IllegalStateException("Expected 16 remaining, found '" + lead.remaining() + "'.");
-        }
+        lead.position(start + LEAD_SIZE);
     }
 
     public void write(WritableByteChannel channel) throws IOException {
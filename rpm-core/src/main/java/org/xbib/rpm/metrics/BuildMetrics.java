@@ -0,0 +1,249 @@
+package org.xbib.rpm.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of a single build: the durations and bytes of each {@link BuildPhase}, the number of files,
+ * the payload sizes, and the files which took longest. The builder, the contents and the signature generator
+ * report into the metrics while building, also from several threads, and the {@link RpmBuildListener}
+ * receives them when the build is done.
+ */
+public class BuildMetrics {
+
+    private static final int DEFAULT_SLOW_FILES = 10;
+
+    private final String packageName;
+
+    private final int slowFiles;
+
+    private final LongAdder[] nanos = new LongAdder[BuildPhase.values().length];
+
+    private final LongAdder[] bytes = new LongAdder[BuildPhase.values().length];
+
+    private final PriorityQueue<FileTiming> slowest = new PriorityQueue<>(Comparator.comparingLong(FileTiming::getNanos));
+
+    private final long start;
+
+    private volatile long totalNanos;
+
+    private volatile int fileCount;
+
+    private volatile long payloadSize;
+
+    private volatile long compressedPayloadSize;
+
+    private volatile long packageSize;
+
+    public BuildMetrics(String packageName) {
+        this(packageName, DEFAULT_SLOW_FILES);
+    }
+
+    /**
+     * Creates the metrics of a build.
+     *
+     * @param packageName the name of the package
+     * @param slowFiles the number of slowest files to keep
+     */
+    public BuildMetrics(String packageName, int slowFiles) {
+        this.packageName = packageName;
+        this.slowFiles = slowFiles;
+        for (int i = 0; i < nanos.length; i++) {
+            nanos[i] = new LongAdder();
+            bytes[i] = new LongAdder();
+        }
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Adds to the duration of a phase.
+     *
+     * @param phase the phase
+     * @param nanos the duration in nanoseconds
+     */
+    public void addPhase(BuildPhase phase, long nanos) {
+        this.nanos[phase.ordinal()].add(nanos);
+    }
+
+    /**
+     * Adds a file which has been processed in a phase. The bytes are added to the phase, the duration is
+     * only used for finding the slowest files, because files may be processed concurrently.
+     *
+     * @param phase the phase
+     * @param path the path of the file in the package
+     * @param bytes the number of bytes of the file
+     * @param nanos the duration in nanoseconds
+     */
+    public void addFile(BuildPhase phase, String path, long bytes, long nanos) {
+        this.bytes[phase.ordinal()].add(bytes);
+        if (slowFiles <= 0) {
+            return;
+        }
+        synchronized (slowest) {
+            if (slowest.size() < slowFiles) {
+                slowest.add(new FileTiming(phase, path, bytes, nanos));
+            } else if (slowest.peek().getNanos() < nanos) {
+                slowest.poll();
+                slowest.add(new FileTiming(phase, path, bytes, nanos));
+            }
+        }
+    }
+
+    public void setFileCount(int fileCount) {
+        this.fileCount = fileCount;
+    }
+
+    /**
+     * Sets the sizes of the payload.
+     *
+     * @param payloadSize the size of the uncompressed CPIO archive
+     * @param compressedPayloadSize the size of the payload in the package
+     */
+    public void setPayloadSize(long payloadSize, long compressedPayloadSize) {
+        this.payloadSize = payloadSize;
+        this.compressedPayloadSize = compressedPayloadSize;
+    }
+
+    public void setPackageSize(long packageSize) {
+        this.packageSize = packageSize;
+    }
+
+    /**
+     * Ends the build, and takes its total duration.
+     */
+    public void finish() {
+        totalNanos = System.nanoTime() - start;
+    }
+
+    public String getPackageName() {
+        return packageName;
+    }
+
+    public long getNanos(BuildPhase phase) {
+        return nanos[phase.ordinal()].sum();
+    }
+
+    public long getBytes(BuildPhase phase) {
+        return bytes[phase.ordinal()].sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos;
+    }
+
+    public int getFileCount() {
+        return fileCount;
+    }
+
+    public long getPayloadSize() {
+        return payloadSize;
+    }
+
+    public long getCompressedPayloadSize() {
+        return compressedPayloadSize;
+    }
+
+    public long getPackageSize() {
+        return packageSize;
+    }
+
+    /**
+     * Returns the ratio of the compressed to the uncompressed payload size.
+     *
+     * @return the compression ratio, 1 if there is no payload
+     */
+    public double getCompressionRatio() {
+        return payloadSize > 0 ? (double) compressedPayloadSize / payloadSize : 1d;
+    }
+
+    /**
+     * Returns the slowest files, the slowest first.
+     *
+     * @return the slowest files
+     */
+    public List<FileTiming> getSlowFiles() {
+        List<FileTiming> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        list.sort(Comparator.comparingLong(FileTiming::getNanos).reversed());
+        return list;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(packageName).append(": ").append(millis(totalNanos)).append(" ms, ")
+                .append(fileCount).append(" files, payload ").append(payloadSize).append(" -> ")
+                .append(compressedPayloadSize).append(" bytes (")
+                .append(String.format(Locale.ROOT, "%.3f", getCompressionRatio())).append("), package ")
+                .append(packageSize).append(" bytes");
+        for (BuildPhase phase : BuildPhase.values()) {
+            long phaseNanos = getNanos(phase);
+            if (phaseNanos > 0) {
+                sb.append(", ").append(phase.name().toLowerCase(Locale.ROOT)).append(' ')
+                        .append(millis(phaseNanos)).append(" ms");
+            }
+        }
+        List<FileTiming> list = getSlowFiles();
+        if (!list.isEmpty()) {
+            sb.append(", slowest files:");
+            for (FileTiming fileTiming : list) {
+                sb.append(' ').append(fileTiming);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static long millis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * The duration of processing a single file.
+     */
+    public static final class FileTiming {
+
+        private final BuildPhase phase;
+
+        private final String path;
+
+        private final long bytes;
+
+        private final long nanos;
+
+        public FileTiming(BuildPhase phase, String path, long bytes, long nanos) {
+            this.phase = phase;
+            this.path = path;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        public BuildPhase getPhase() {
+            return phase;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return path + " (" + phase.name().toLowerCase(Locale.ROOT) + ", " + bytes + " bytes, " +
+                    millis(nanos) + " ms)";
+        }
+    }
+}
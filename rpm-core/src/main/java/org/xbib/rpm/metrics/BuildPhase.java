@@ -0,0 +1,33 @@
+package org.xbib.rpm.metrics;
+
+/**
+ * The phases of building an RPM, see {@link BuildMetrics}. Some phases are part of others, or overlap,
+ * so their durations do not add up to the duration of the build.
+ */
+public enum BuildPhase {
+    /**
+     * Computing the file digests in a separate pass before the payload is written. If the digests
+     * are computed while writing the payload, they are part of {@link #PAYLOAD}.
+     */
+    DIGESTS,
+    /**
+     * Writing the payload, including reading, hashing and compressing the file contents.
+     */
+    PAYLOAD,
+    /**
+     * Compressing and writing the file contents, which is part of {@link #PAYLOAD}.
+     */
+    COMPRESSION,
+    /**
+     * Serializing the header and the signature header.
+     */
+    HEADER,
+    /**
+     * Computing the digests and signatures of the signature header over the written header and payload.
+     */
+    SIGNATURE,
+    /**
+     * Hashing and signing for the OpenPGP signatures, which is part of {@link #SIGNATURE}.
+     */
+    SIGNING
+}
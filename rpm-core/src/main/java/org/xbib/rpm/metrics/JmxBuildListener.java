@@ -0,0 +1,209 @@
+package org.xbib.rpm.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * A build listener which adds up the metrics of all builds to counters, and publishes them as an MXBean.
+ * It can be shared by any number of builders, also concurrently.
+ */
+public class JmxBuildListener implements RpmBuildListener, RpmBuildMXBean {
+
+    /**
+     * The default object name.
+     */
+    public static final String OBJECT_NAME = "org.xbib.rpm:type=RpmBuild";
+
+    private final LongAdder builds = new LongAdder();
+
+    private final LongAdder failedBuilds = new LongAdder();
+
+    private final LongAdder files = new LongAdder();
+
+    private final LongAdder payloadBytes = new LongAdder();
+
+    private final LongAdder compressedPayloadBytes = new LongAdder();
+
+    private final LongAdder packageBytes = new LongAdder();
+
+    private final LongAdder buildNanos = new LongAdder();
+
+    private final LongAdder[] phaseNanos = new LongAdder[BuildPhase.values().length];
+
+    private final LongAdder[] phaseBytes = new LongAdder[BuildPhase.values().length];
+
+    private volatile long lastBuildNanos;
+
+    private volatile List<BuildMetrics.FileTiming> lastSlowFiles = List.of();
+
+    private ObjectName objectName;
+
+    public JmxBuildListener() {
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i] = new LongAdder();
+            phaseBytes[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Registers this listener with the platform MBean server under the default object name.
+     *
+     * @return this listener
+     * @throws JMException if the listener could not be registered
+     */
+    public JmxBuildListener register() throws JMException {
+        return register(new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Registers this listener with the platform MBean server.
+     *
+     * @param objectName the object name
+     * @return this listener
+     * @throws InstanceAlreadyExistsException if the object name is already registered
+     * @throws JMException if the listener could not be registered
+     */
+    public synchronized JmxBuildListener register(ObjectName objectName) throws JMException {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        mBeanServer.registerMBean(this, objectName);
+        this.objectName = objectName;
+        return this;
+    }
+
+    /**
+     * Unregisters this listener from the platform MBean server, if it is registered.
+     *
+     * @throws JMException if the listener could not be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (InstanceNotFoundException e) {
+                // already gone
+            }
+            objectName = null;
+        }
+    }
+
+    @Override
+    public void buildFinished(BuildMetrics metrics) {
+        builds.increment();
+        add(metrics);
+    }
+
+    @Override
+    public void buildFailed(BuildMetrics metrics, Throwable throwable) {
+        failedBuilds.increment();
+        add(metrics);
+    }
+
+    private void add(BuildMetrics metrics) {
+        files.add(metrics.getFileCount());
+        payloadBytes.add(metrics.getPayloadSize());
+        compressedPayloadBytes.add(metrics.getCompressedPayloadSize());
+        packageBytes.add(metrics.getPackageSize());
+        buildNanos.add(metrics.getTotalNanos());
+        for (BuildPhase phase : BuildPhase.values()) {
+            phaseNanos[phase.ordinal()].add(metrics.getNanos(phase));
+            phaseBytes[phase.ordinal()].add(metrics.getBytes(phase));
+        }
+        lastBuildNanos = metrics.getTotalNanos();
+        lastSlowFiles = metrics.getSlowFiles();
+    }
+
+    @Override
+    public long getBuilds() {
+        return builds.sum();
+    }
+
+    @Override
+    public long getFailedBuilds() {
+        return failedBuilds.sum();
+    }
+
+    @Override
+    public long getFiles() {
+        return files.sum();
+    }
+
+    @Override
+    public long getPayloadBytes() {
+        return payloadBytes.sum();
+    }
+
+    @Override
+    public long getCompressedPayloadBytes() {
+        return compressedPayloadBytes.sum();
+    }
+
+    @Override
+    public long getPackageBytes() {
+        return packageBytes.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long payload = payloadBytes.sum();
+        return payload > 0 ? (double) compressedPayloadBytes.sum() / payload : 1d;
+    }
+
+    @Override
+    public long getBuildMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(buildNanos.sum());
+    }
+
+    @Override
+    public long getLastBuildMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastBuildNanos);
+    }
+
+    @Override
+    public Map<String, Long> getPhaseMillis() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (BuildPhase phase : BuildPhase.values()) {
+            map.put(phase.name(), TimeUnit.NANOSECONDS.toMillis(phaseNanos[phase.ordinal()].sum()));
+        }
+        return map;
+    }
+
+    @Override
+    public Map<String, Long> getPhaseBytes() {
+        Map<String, Long> map = new LinkedHashMap<>();
+        for (BuildPhase phase : BuildPhase.values()) {
+            map.put(phase.name(), phaseBytes[phase.ordinal()].sum());
+        }
+        return map;
+    }
+
+    @Override
+    public String[] getLastSlowFiles() {
+        return lastSlowFiles.stream().map(BuildMetrics.FileTiming::toString).toArray(String[]::new);
+    }
+
+    @Override
+    public void reset() {
+        builds.reset();
+        failedBuilds.reset();
+        files.reset();
+        payloadBytes.reset();
+        compressedPayloadBytes.reset();
+        packageBytes.reset();
+        buildNanos.reset();
+        for (int i = 0; i < phaseNanos.length; i++) {
+            phaseNanos[i].reset();
+            phaseBytes[i].reset();
+        }
+        lastBuildNanos = 0;
+        lastSlowFiles = List.of();
+    }
+}
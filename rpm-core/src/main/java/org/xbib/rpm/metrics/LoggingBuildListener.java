@@ -0,0 +1,41 @@
+package org.xbib.rpm.metrics;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A build listener which logs a summary of each build with {@link java.util.logging}.
+ */
+public class LoggingBuildListener implements RpmBuildListener {
+
+    private final Logger logger;
+
+    private final Level level;
+
+    public LoggingBuildListener() {
+        this(Logger.getLogger(LoggingBuildListener.class.getName()), Level.INFO);
+    }
+
+    /**
+     * Creates a logging build listener.
+     *
+     * @param logger the logger
+     * @param level the level of the build summaries, failures are logged as warnings
+     */
+    public LoggingBuildListener(Logger logger, Level level) {
+        this.logger = logger;
+        this.level = level;
+    }
+
+    @Override
+    public void buildFinished(BuildMetrics metrics) {
+        if (logger.isLoggable(level)) {
+            logger.log(level, "built " + metrics);
+        }
+    }
+
+    @Override
+    public void buildFailed(BuildMetrics metrics, Throwable throwable) {
+        logger.log(Level.WARNING, "failed to build " + metrics, throwable);
+    }
+}
@@ -0,0 +1,34 @@
+package org.xbib.rpm.metrics;
+
+/**
+ * A listener for the builds of RPMs. The listener of a builder is called on the thread calling
+ * {@link org.xbib.rpm.RpmBuilder#build(java.nio.channels.SeekableByteChannel)}, but a listener which is
+ * shared by several builders may be called concurrently.
+ */
+public interface RpmBuildListener {
+
+    /**
+     * Called before a build starts.
+     *
+     * @param metrics the metrics of the build, which are empty yet
+     */
+    default void buildStarted(BuildMetrics metrics) {
+    }
+
+    /**
+     * Called after a build has finished.
+     *
+     * @param metrics the metrics of the build
+     */
+    default void buildFinished(BuildMetrics metrics) {
+    }
+
+    /**
+     * Called after a build has failed.
+     *
+     * @param metrics the metrics of the build, up to the failure
+     * @param throwable the cause of the failure
+     */
+    default void buildFailed(BuildMetrics metrics, Throwable throwable) {
+    }
+}
@@ -0,0 +1,50 @@
+package org.xbib.rpm.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of the build counters of {@link JmxBuildListener}.
+ */
+public interface RpmBuildMXBean {
+
+    long getBuilds();
+
+    long getFailedBuilds();
+
+    long getFiles();
+
+    long getPayloadBytes();
+
+    long getCompressedPayloadBytes();
+
+    long getPackageBytes();
+
+    double getCompressionRatio();
+
+    long getBuildMillis();
+
+    long getLastBuildMillis();
+
+    /**
+     * Returns the total durations of the build phases.
+     *
+     * @return the durations in milliseconds by phase name
+     */
+    Map<String, Long> getPhaseMillis();
+
+    /**
+     * Returns the total bytes of the build phases.
+     *
+     * @return the bytes by phase name
+     */
+    Map<String, Long> getPhaseBytes();
+
+    /**
+     * Returns the slowest files of the last build.
+     *
+     * @return the slowest files
+     */
+    String[] getLastSlowFiles();
+
+    void reset();
+}
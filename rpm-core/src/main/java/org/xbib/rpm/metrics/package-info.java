@@ -0,0 +1,4 @@
+/**
+ * Classes for build metrics of RPM archives.
+ */
+package org.xbib.rpm.metrics;
@@ -0,0 +1,64 @@
+package org.xbib.rpm.payload;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * A file entry of a {@link ZipArchive}, as a source of the contents of an RPM archive. The size and the
+ * modification time are taken from the central directory of the archive.
+ */
+public class ArchiveEntry {
+
+    private final ZipArchive archive;
+
+    private final ZipEntry zipEntry;
+
+    private final int ordinal;
+
+    ArchiveEntry(ZipArchive archive, ZipEntry zipEntry, int ordinal) {
+        this.archive = archive;
+        this.zipEntry = zipEntry;
+        this.ordinal = ordinal;
+    }
+
+    public ZipArchive getArchive() {
+        return archive;
+    }
+
+    public String getName() {
+        return zipEntry.getName();
+    }
+
+    public long getSize() {
+        return zipEntry.getSize();
+    }
+
+    public long getLastModified() {
+        return zipEntry.getTime();
+    }
+
+    /**
+     * Returns the position of this entry among the file entries of the archive.
+     *
+     * @return the position, starting at 0
+     */
+    public int getOrdinal() {
+        return ordinal;
+    }
+
+    /**
+     * Opens the uncompressed contents of this entry, read from the open archive.
+     *
+     * @return the input stream
+     * @throws IOException if the entry could not be read
+     */
+    public InputStream newInputStream() throws IOException {
+        return archive.getInputStream(zipEntry);
+    }
+
+    @Override
+    public String toString() {
+        return archive + "!/" + getName();
+    }
+}
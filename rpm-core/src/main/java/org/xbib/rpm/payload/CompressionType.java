@@ -5,5 +5,5 @@ package org.xbib.rpm.payload;
  */
 public enum CompressionType {
 
-    NONE, GZIP, BZIP2, XZ
+    NONE, GZIP, BZIP2, XZ, ZSTD
 }
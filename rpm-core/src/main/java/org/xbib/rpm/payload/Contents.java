@@ -1,35 +1,43 @@
 package org.xbib.rpm.payload;
 
 import org.xbib.rpm.header.IntegerList;
+import org.xbib.rpm.header.LongList;
 import org.xbib.rpm.header.ShortList;
 import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.io.BuildCache;
 import org.xbib.rpm.io.ChannelWrapper;
 import org.xbib.rpm.io.ChannelWrapper.Key;
+import org.xbib.rpm.io.IoOptions;
 import org.xbib.rpm.io.ReadableChannelWrapper;
+import org.xbib.rpm.metrics.BuildMetrics;
+import org.xbib.rpm.metrics.BuildPhase;
 import org.xbib.rpm.security.HashAlgo;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.ByteBuffer;
 import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * The contents of an RPM archive. These entries define the files and links that
@@ -94,21 +102,85 @@ public class Contents {
         BUILTIN.add("/var/spool");
     }
 
-    private final Set<CpioHeader> headers =
-            new TreeSet<>(Comparator.comparing(CpioHeader::getName));
-
-    private final Set<String> files = new LinkedHashSet<>();
+    private final PathIndex index;
 
     private final Map<CpioHeader, Object> sources = new LinkedHashMap<>();
 
     private final Map<CpioHeader, UserGroup> usergroups = new LinkedHashMap<>();
 
-    private final Set<String> builtins = new LinkedHashSet<>();
-
     private int inode = 1;
 
+    private IoOptions ioOptions = IoOptions.DEFAULT;
+
+    private BuildCache buildCache;
+
+    private FileTable fileTable;
+
+    private HashAlgo precomputedAlgo;
+
+    private Map<CpioHeader, String> precomputed;
+
     public Contents() {
-        builtins.addAll(BUILTIN);
+        this.index = new PathIndex();
+        for (String builtin : BUILTIN) {
+            index.addBuiltin(builtin);
+        }
+    }
+
+    /**
+     * Creates a copy of contents. The copy has its own headers, so entries can be added to it, and it can be
+     * written to a payload, independently of the original. The sources, the I/O options, the build cache and
+     * the precomputed digests are shared. The original is only read, so copies can be created concurrently,
+     * as long as nobody changes the original.
+     *
+     * @param contents the contents to copy
+     */
+    public Contents(Contents contents) {
+        Map<CpioHeader, CpioHeader> copies = new HashMap<>();
+        this.index = contents.index.copy(copies);
+        for (Map.Entry<CpioHeader, Object> entry : contents.sources.entrySet()) {
+            sources.put(copies.get(entry.getKey()), entry.getValue());
+        }
+        for (Map.Entry<CpioHeader, UserGroup> entry : contents.usergroups.entrySet()) {
+            usergroups.put(copies.get(entry.getKey()), entry.getValue());
+        }
+        this.inode = contents.inode;
+        this.ioOptions = contents.ioOptions;
+        this.buildCache = contents.buildCache;
+        if (contents.precomputed != null) {
+            this.precomputedAlgo = contents.precomputedAlgo;
+            this.precomputed = new HashMap<>();
+            for (Map.Entry<CpioHeader, String> entry : contents.precomputed.entrySet()) {
+                precomputed.put(copies.get(entry.getKey()), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Sets the options for the buffers which the file contents are read with when computing digests.
+     *
+     * @param ioOptions the I/O options
+     */
+    public void setIoOptions(IoOptions ioOptions) {
+        this.ioOptions = ioOptions;
+    }
+
+    public IoOptions getIoOptions() {
+        return ioOptions;
+    }
+
+    /**
+     * Sets a cache for the file digests. The digest of a file which has not changed since it was cached
+     * is taken from the cache, without reading the file.
+     *
+     * @param buildCache the build cache, or null for computing all digests
+     */
+    public void setBuildCache(BuildCache buildCache) {
+        this.buildCache = buildCache;
+    }
+
+    public BuildCache getBuildCache() {
+        return buildCache;
     }
 
     /**
@@ -125,13 +197,14 @@ public class Contents {
      */
     public void addLink(String path, String target, int permissions,
                         String uname, String gname, int uid, int gid, boolean addParents) {
-        if (files.contains(path)) {
+        PathIndex.Node node = index.node(path);
+        if (node.hasEntry()) {
             return;
         }
         if (addParents) {
-            addParents(Paths.get(path), permissions, uname, gname, uid, gid);
+            addParents(node, permissions, uname, gname, uid, gid);
         }
-        files.add(path);
+        fileTable = null;
         CpioHeader header = new CpioHeader(path);
         header.setType(CpioHeader.SYMLINK);
         header.setFileSize(target.length());
@@ -139,7 +212,7 @@ public class Contents {
         header.setUid(uid == -1 ? DEFAULT_UID : uid);
         header.setGid(gid == -1 ? DEFAULT_GID : gid);
         header.setPermissions(permissions == -1 ? DEFAULT_LINK_PERMISSION : permissions);
-        headers.add(header);
+        index.add(node, header);
         UserGroup userGroup = new UserGroup();
         userGroup.user = getDefaultIfMissing(uname, DEFAULT_USERNAME);
         userGroup.group = getDefaultIfMissing(gname, DEFAULT_GROUP);
@@ -161,13 +234,14 @@ public class Contents {
      */
     public void addDirectory(String path, int permissions, EnumSet<Directive> directive,
                              String uname, String gname, int uid, int gid, boolean addParents) {
-        if (files.contains(path)) {
+        PathIndex.Node node = index.node(path);
+        if (node.hasEntry()) {
             return;
         }
         if (addParents) {
-            addParents(Paths.get(path), permissions, uname, gname, uid, gid);
+            addParents(node, permissions, uname, gname, uid, gid);
         }
-        files.add(path);
+        fileTable = null;
         CpioHeader header = new CpioHeader(path);
         header.setType(CpioHeader.DIR);
         header.setInode(inode++);
@@ -175,7 +249,7 @@ public class Contents {
         header.setGid(gid == -1 ? DEFAULT_GID : gid);
         header.setMtime(System.currentTimeMillis());
         header.setPermissions(permissions == -1 ? DEFAULT_DIRECTORY_PERMISSION : permissions);
-        headers.add(header);
+        index.add(node, header);
         UserGroup userGroup = new UserGroup();
         userGroup.user = getDefaultIfMissing(uname, DEFAULT_USERNAME);
         userGroup.group = getDefaultIfMissing(gname, DEFAULT_GROUP);
@@ -210,13 +284,14 @@ public class Contents {
                         EnumSet<Directive> directives,
                         String uname, String gname, int uid, int gid,
                         boolean addParents, int verifyFlags) throws IOException {
-        if (files.contains(path)) {
+        PathIndex.Node node = index.node(path);
+        if (node.hasEntry()) {
             return;
         }
         if (addParents) {
-            addParents(Paths.get(path), dirmode, uname, gname, uid, gid);
+            addParents(node, dirmode, uname, gname, uid, gid);
         }
-        files.add(path);
+        fileTable = null;
         CpioHeader header;
         if (directives != null && directives.contains(Directive.GHOST)) {
             header = new CpioHeader(path);
@@ -229,7 +304,7 @@ public class Contents {
         header.setGid(gid == -1 ? (int) Files.getAttribute(source, "unix:gid") : gid);
         header.setPermissions(permissions == -1 ? DEFAULT_FILE_PERMISSION : permissions);
         header.setVerifyFlags(verifyFlags);
-        headers.add(header);
+        index.add(node, header);
         UserGroup userGroup = new UserGroup();
         userGroup.user = getDefaultIfMissing(uname, DEFAULT_USERNAME);
         userGroup.group = getDefaultIfMissing(gname, DEFAULT_GROUP);
@@ -259,18 +334,62 @@ public class Contents {
      */
     public void addURL(String path, URL source, int permissions, EnumSet<Directive> directive,
                        String uname, String gname, int uid, int gid, int dirmode) {
-        if (files.contains(path)) {
+        PathIndex.Node node = index.node(path);
+        if (node.hasEntry()) {
             return;
         }
-        addParents(Paths.get(path), dirmode, uname, gname, uid, gid);
-        files.add(path);
+        addParents(node, dirmode, uname, gname, uid, gid);
+        fileTable = null;
         CpioHeader header = new CpioHeader(path, source);
         header.setType(CpioHeader.FILE);
         header.setInode(inode++);
         header.setUid(uid == -1 ? DEFAULT_UID : uid);
         header.setGid(gid == -1 ? DEFAULT_GID : gid);
         header.setPermissions(permissions == -1 ? DEFAULT_FILE_PERMISSION : permissions);
-        headers.add(header);
+        index.add(node, header);
+        UserGroup userGroup = new UserGroup();
+        userGroup.user = getDefaultIfMissing(uname, DEFAULT_USERNAME);
+        userGroup.group = getDefaultIfMissing(gname, DEFAULT_GROUP);
+        usergroups.put(header, userGroup);
+        sources.put(header, source);
+        if (directive != null) {
+            int flag = Directive.NONE.flag();
+            for (Directive d : directive) {
+                flag = flag | d.flag();
+            }
+            header.setFlags(flag);
+        }
+    }
+
+    /**
+     * Adds an entry of a ZIP archive to the archive with the specified permissions. The size and the
+     * modification time are taken from the central directory of the ZIP archive, which must be kept
+     * open until the archive has been built.
+     *
+     * @param path        the destination path for the installed file.
+     * @param source      the entry of the ZIP archive
+     * @param permissions the permissions flags.
+     * @param directive   directive indicating special handling for this file.
+     * @param uname       user owner of the entry
+     * @param gname       group owner of the entry
+     * @param uid       user owner for the given file
+     * @param gid       group owner for the given file
+     * @param dirmode     permission flags for parent directories, use -1 to leave as default.
+     */
+    public void addArchiveEntry(String path, ArchiveEntry source, int permissions, EnumSet<Directive> directive,
+                                String uname, String gname, int uid, int gid, int dirmode) {
+        PathIndex.Node node = index.node(path);
+        if (node.hasEntry()) {
+            return;
+        }
+        addParents(node, dirmode, uname, gname, uid, gid);
+        fileTable = null;
+        CpioHeader header = new CpioHeader(path, source);
+        header.setInode(inode++);
+        header.setUid(uid == -1 ? DEFAULT_UID : uid);
+        header.setGid(gid == -1 ? DEFAULT_GID : gid);
+        header.setPermissions(permissions == -1 ? DEFAULT_FILE_PERMISSION : permissions);
+        index.add(node, header);
         UserGroup userGroup = new UserGroup();
         userGroup.user = getDefaultIfMissing(uname, DEFAULT_USERNAME);
         userGroup.group = getDefaultIfMissing(gname, DEFAULT_GROUP);
@@ -289,16 +408,14 @@ public class Contents {
      * Adds entries for parent directories of this file, so that they may be cleaned up when
      * removing the package.
      *
-     * @param path        the file to add parent directories of
+     * @param node        the index node of the file to add parent directories of
      * @param permissions the permissions flags
      * @param uid       user owner for the given file
      * @param gid       group owner for the given file
      */
-    private void addParents(Path path, int permissions, String uname, String gname, int uid, int gid) {
-        List<String> parents = new ArrayList<>();
-        listParents(parents, path);
-        for (String parent : parents) {
-            addDirectory(parent, permissions, null, uname, gname, uid, gid, true);
+    private void addParents(PathIndex.Node node, int permissions, String uname, String gname, int uid, int gid) {
+        for (String parent : index.parents(node, true)) {
+            addDirectory(parent, permissions, null, uname, gname, uid, gid, false);
         }
     }
 
@@ -310,7 +427,7 @@ public class Contents {
      * @param directory the directory to add
      */
     public void addLocalBuiltinDirectory(String directory) {
-        builtins.add(directory);
+        index.addBuiltin(directory);
     }
 
     /**
@@ -320,7 +437,7 @@ public class Contents {
      * @return the number of files in this archive
      */
     public int size() {
-        return headers.size();
+        return index.size();
     }
 
     /**
@@ -330,7 +447,7 @@ public class Contents {
      * @return the headers
      */
     public Iterable<CpioHeader> headers() {
-        return headers;
+        return index.headers();
     }
 
     /**
@@ -345,38 +462,35 @@ public class Contents {
         return sources.get(header);
     }
 
+    /**
+     * Returns the file metadata of this archive in columns, which the file tags of the RPM header are
+     * created from. The table is built on the first request, and kept until an entry is added.
+     *
+     * @return the file table
+     */
+    public FileTable getFileTable() {
+        if (fileTable == null) {
+            fileTable = new FileTable(index.headers(), sources, usergroups, index.size());
+        }
+        return fileTable;
+    }
+
     /**
      * Accumulated size of all files included in the archive.
      *
      * @return the size of all files included in the archive
      */
     public int getTotalSize() {
-        int total = 0;
-        try {
-            for (Object object : sources.values()) {
-                if (object instanceof Path) {
-                    total += Files.size((Path) object);
-                } else if (object instanceof URL) {
-                    URLConnection urlConnection = null;
-                    try {
-                        urlConnection = ((URL) object).openConnection();
-                        total += urlConnection.getContentLength();
-                    } catch (IOException e) {
-                        //
-                    } finally {
-                        if (urlConnection != null && urlConnection.getInputStream() != null) {
-                            urlConnection.getInputStream().close();
-                        }
-                        if (urlConnection != null && urlConnection.getOutputStream() != null) {
-                            urlConnection.getOutputStream().close();
-                        }
-                    }
-                }
-            }
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
-        return total;
+        return (int) getLongTotalSize();
+    }
+
+    /**
+     * Accumulated size of all files included in the archive, for archives of 2 GiB and more.
+     *
+     * @return the size of all files included in the archive
+     */
+    public long getLongTotalSize() {
+        return getFileTable().getTotalSize();
     }
 
     /**
@@ -385,19 +499,7 @@ public class Contents {
      * @return the dirnames headers values
      */
     public StringList getDirNames() {
-        Set<String> set = new LinkedHashSet<>();
-        for (CpioHeader header : headers) {
-            Path path = Paths.get(header.getName()).getParent();
-            if (path == null) {
-                continue;
-            }
-            String parent = CpioHeader.normalizePath(path.toString());
-            if (!parent.endsWith("/")) {
-                parent += "/";
-            }
-            set.add(parent);
-        }
-        return new StringList(set);
+        return getFileTable().getDirNames();
     }
 
     /**
@@ -406,21 +508,7 @@ public class Contents {
      * @return the dirindexes
      */
     public IntegerList getDirIndexes() {
-        StringList dirs = getDirNames();
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            Path path = Paths.get(header.getName()).getParent();
-            if (path == null) {
-                array.add(0);
-                continue;
-            }
-            String parent = CpioHeader.normalizePath(path.toString());
-            if (!parent.endsWith("/")) {
-                parent += "/";
-            }
-            array.add(dirs.indexOf(parent));
-        }
-        return array;
+        return getFileTable().getDirIndexes();
     }
 
     /**
@@ -429,12 +517,7 @@ public class Contents {
      * @return the basename header values
      */
     public StringList getBaseNames() {
-        StringList array = new StringList();
-        for (CpioHeader header : headers) {
-            Path path = Paths.get(header.getName()).getFileName();
-            array.add(path != null ? CpioHeader.normalizePath(path.toString()) : "");
-        }
-        return array;
+        return getFileTable().getBaseNames();
     }
 
     /**
@@ -443,24 +526,30 @@ public class Contents {
      * @return the sizes header values
      */
     public IntegerList getSizes() {
-        IntegerList array = new IntegerList();
-        try {
-            for (CpioHeader header : headers) {
-                Object object = sources.get(header);
-                if (object instanceof Path) {
-                    array.add((int) Files.size((Path) object));
-                } else if (object instanceof URL) {
-                    array.add(((URL) object).openConnection().getContentLength());
-                } else if (header.getType() == CpioHeader.DIR) {
-                    array.add(4096);
-                } else if (header.getType() == CpioHeader.SYMLINK) {
-                    array.add(((String) object).length());
-                }
+        return getFileTable().getSizes();
+    }
+
+    /**
+     * Gets the sizes header values for archives with files of 4 GiB and more.
+     *
+     * @return the sizes header values
+     */
+    public LongList getLongSizes() {
+        return getFileTable().getLongSizes();
+    }
+
+    /**
+     * Checks if the archive contains a file of 4 GiB or more, whose size does not fit into a CPIO header.
+     *
+     * @return true if there is such a file
+     */
+    public boolean hasLargeFiles() {
+        for (CpioHeader header : index.headers()) {
+            if (header.getLongFileSize() >= 0xffffffffL) {
+                return true;
             }
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
         }
-        return array;
+        return false;
     }
 
     /**
@@ -469,11 +558,7 @@ public class Contents {
      * @return the modes header values
      */
     public ShortList getModes() {
-        ShortList array = new ShortList();
-        for (CpioHeader header : headers) {
-            array.add((short) header.getMode());
-        }
-        return array;
+        return getFileTable().getModes();
     }
 
     /**
@@ -482,11 +567,7 @@ public class Contents {
      * @return the rdevs header values
      */
     public ShortList getRdevs() {
-        ShortList array = new ShortList();
-        for (CpioHeader header : headers) {
-            array.add((short) ((header.getRdevMajor() << 8) + header.getRdevMinor()));
-        }
-        return array;
+        return getFileTable().getRdevs();
     }
 
     /**
@@ -495,11 +576,7 @@ public class Contents {
      * @return the mtimes header values
      */
     public IntegerList getMtimes() {
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            array.add(header.getMtime());
-        }
-        return array;
+        return getFileTable().getMtimes();
     }
 
     /**
@@ -511,13 +588,290 @@ public class Contents {
      * @throws IOException there was an IO error
      */
     public StringList getDigests(HashAlgo hashAlgo) throws IOException, NoSuchAlgorithmException {
-        ByteBuffer buffer = ByteBuffer.allocate(4096);
+        return getDigests(hashAlgo, 1);
+    }
+
+    /**
+     * Caclulates a digest hash for each file in the archive, hashing up to the given number
+     * of files concurrently. The digests are returned in the order of the headers.
+     *
+     * @param hashAlgo the hash algo
+     * @param parallelism the number of files to hash concurrently
+     * @return the digest hashes
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    public StringList getDigests(HashAlgo hashAlgo, int parallelism) throws IOException, NoSuchAlgorithmException {
+        return getDigests(hashAlgo, parallelism, null);
+    }
+
+    /**
+     * Caclulates a digest hash for each file in the archive, hashing up to the given number
+     * of files concurrently, and reports the duration and the hashed files to the build metrics.
+     * The digests are returned in the order of the headers.
+     *
+     * @param hashAlgo the hash algo
+     * @param parallelism the number of files to hash concurrently
+     * @param metrics the build metrics, or null
+     * @return the digest hashes
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    public StringList getDigests(HashAlgo hashAlgo, int parallelism, BuildMetrics metrics)
+            throws IOException, NoSuchAlgorithmException {
+        long start = System.nanoTime();
+        try {
+            return computeDigests(hashAlgo, parallelism, metrics);
+        } finally {
+            if (metrics != null) {
+                metrics.addPhase(BuildPhase.DIGESTS, System.nanoTime() - start);
+            }
+        }
+    }
+
+    private StringList computeDigests(HashAlgo hashAlgo, int parallelism, BuildMetrics metrics)
+            throws IOException, NoSuchAlgorithmException {
         StringList array = new StringList();
+        List<CpioHeader> headers = index.headers();
+        // the entries of an archive are read one after the other, in the order of the archive
+        Collection<List<CpioHeader>> archives = getArchiveHeaders(headers);
+        if (parallelism <= 1) {
+            ByteBuffer buffer = ioOptions.acquire();
+            try {
+                Map<CpioHeader, String> archived = new HashMap<>();
+                for (List<CpioHeader> list : archives) {
+                    archived.putAll(getDigests(list, hashAlgo, buffer, metrics));
+                }
+                for (CpioHeader header : headers) {
+                    String digest = archived.get(header);
+                    array.add(digest != null ? digest : getDigest(header, hashAlgo, buffer, metrics));
+                }
+            } finally {
+                ioOptions.release(buffer);
+            }
+            return array;
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            List<Future<Map<CpioHeader, String>>> archiveFutures = new ArrayList<>();
+            for (List<CpioHeader> list : archives) {
+                archiveFutures.add(executorService.submit(() -> {
+                    ByteBuffer buffer = ioOptions.acquire();
+                    try {
+                        return getDigests(list, hashAlgo, buffer, metrics);
+                    } finally {
+                        ioOptions.release(buffer);
+                    }
+                }));
+            }
+            List<Future<String>> futures = new ArrayList<>();
+            for (CpioHeader header : headers) {
+                if (sources.get(header) instanceof ArchiveEntry) {
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executorService.submit(() -> {
+                    ByteBuffer buffer = ioOptions.acquire();
+                    try {
+                        return getDigest(header, hashAlgo, buffer, metrics);
+                    } finally {
+                        ioOptions.release(buffer);
+                    }
+                }));
+            }
+            Map<CpioHeader, String> archived = new HashMap<>();
+            for (Future<Map<CpioHeader, String>> future : archiveFutures) {
+                archived.putAll(future.get());
+            }
+            for (int i = 0; i < headers.size(); i++) {
+                Future<String> future = futures.get(i);
+                array.add(future != null ? future.get() : archived.get(headers.get(i)));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while computing digests");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof NoSuchAlgorithmException) {
+                throw (NoSuchAlgorithmException) cause;
+            }
+            throw new RuntimeException(cause);
+        } finally {
+            executorService.shutdownNow();
+        }
+        return array;
+    }
+
+    /**
+     * Computes the digests of all entries and keeps them, so they are not computed again, neither for these
+     * contents nor for their copies. The sources of the entries must not change afterwards. Entries which are
+     * added later have their digests computed as usual.
+     *
+     * @param hashAlgo the hash algo
+     * @param parallelism the number of files to hash concurrently
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    public void precomputeDigests(HashAlgo hashAlgo, int parallelism) throws IOException, NoSuchAlgorithmException {
+        StringList digests = getDigests(hashAlgo, parallelism);
+        List<CpioHeader> headers = index.headers();
+        Map<CpioHeader, String> map = new HashMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            map.put(headers.get(i), digests.get(i));
+        }
+        precomputedAlgo = hashAlgo;
+        precomputed = map;
+    }
+
+    /**
+     * Returns the precomputed digest of an entry.
+     *
+     * @param header the header of the entry
+     * @param hashAlgo the hash algo
+     * @return the hex encoded digest hash, or null if it has not been precomputed with the hash algo
+     */
+    public String getPrecomputedDigest(CpioHeader header, HashAlgo hashAlgo) {
+        return precomputed != null && precomputedAlgo == hashAlgo ? precomputed.get(header) : null;
+    }
+
+    /**
+     * Groups the headers of entries from ZIP archives by archive, each group in the order of the archive.
+     *
+     * @param headers the headers
+     * @return the groups
+     */
+    private Collection<List<CpioHeader>> getArchiveHeaders(List<CpioHeader> headers) {
+        Map<ZipArchive, List<CpioHeader>> archives = new LinkedHashMap<>();
         for (CpioHeader header : headers) {
             Object object = sources.get(header);
-            String value = "";
-            if (object instanceof Path) {
-                try (ReadableByteChannel readableByteChannel = FileChannel.open((Path) object)) {
+            if (object instanceof ArchiveEntry) {
+                archives.computeIfAbsent(((ArchiveEntry) object).getArchive(), k -> new ArrayList<>()).add(header);
+            }
+        }
+        for (List<CpioHeader> list : archives.values()) {
+            list.sort(Comparator.comparingInt(header -> ((ArchiveEntry) sources.get(header)).getOrdinal()));
+        }
+        return archives.values();
+    }
+
+    private Map<CpioHeader, String> getDigests(List<CpioHeader> headers, HashAlgo hashAlgo, ByteBuffer buffer,
+                                               BuildMetrics metrics) throws IOException, NoSuchAlgorithmException {
+        Map<CpioHeader, String> map = new HashMap<>();
+        for (CpioHeader header : headers) {
+            map.put(header, getDigest(header, hashAlgo, buffer, metrics));
+        }
+        return map;
+    }
+
+    private String getDigest(CpioHeader header, HashAlgo hashAlgo, ByteBuffer buffer, BuildMetrics metrics)
+            throws IOException, NoSuchAlgorithmException {
+        String digest = getPrecomputedDigest(header, hashAlgo);
+        if (digest != null) {
+            return digest;
+        }
+        Object object = sources.get(header);
+        if (metrics == null || !hasContent(object)) {
+            return getDigest(object, hashAlgo, buffer);
+        }
+        long start = System.nanoTime();
+        digest = getDigest(object, hashAlgo, buffer);
+        metrics.addFile(BuildPhase.DIGESTS, header.getName(), header.getLongFileSize(), System.nanoTime() - start);
+        return digest;
+    }
+
+    /**
+     * Caclulates the digest hash for a single entry of the archive.
+     *
+     * @param header the header of the entry
+     * @param hashAlgo the hash algo
+     * @return the hex encoded digest hash, empty if the entry has no file content
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    public String getDigest(CpioHeader header, HashAlgo hashAlgo) throws IOException, NoSuchAlgorithmException {
+        String digest = getPrecomputedDigest(header, hashAlgo);
+        return digest != null ? digest : getDigest(sources.get(header), hashAlgo);
+    }
+
+    /**
+     * Calculates the size of the digests header entry, without reading any file. Entries
+     * with file content have a hex encoded digest, all others an empty string.
+     *
+     * @param hashAlgo the hash algo
+     * @return the size of the digests header entry in bytes
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     */
+    public int getDigestsSize(HashAlgo hashAlgo) throws NoSuchAlgorithmException {
+        int length = 2 * MessageDigest.getInstance(hashAlgo.algo()).getDigestLength();
+        int size = 0;
+        for (CpioHeader header : index.headers()) {
+            Object object = sources.get(header);
+            size += hasContent(object) ? length + 1 : 1;
+        }
+        return size;
+    }
+
+    /**
+     * Caclulates the digest hash of a single source with a buffer of the I/O options.
+     *
+     * @param object the source
+     * @param hashAlgo the hash algo
+     * @return the hex encoded digest hash
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    private String getDigest(Object object, HashAlgo hashAlgo) throws IOException, NoSuchAlgorithmException {
+        ByteBuffer buffer = ioOptions.acquire();
+        try {
+            return getDigest(object, hashAlgo, buffer);
+        } finally {
+            ioOptions.release(buffer);
+        }
+    }
+
+    /**
+     * Caclulates the digest hash of a single source. Sources other than files, URLs and archive entries
+     * have an empty digest.
+     *
+     * @param object the source
+     * @param hashAlgo the hash algo
+     * @param buffer the buffer to read with
+     * @return the hex encoded digest hash
+     * @throws NoSuchAlgorithmException if the algorithm isn't supported
+     * @throws IOException there was an IO error
+     */
+    private String getDigest(Object object, HashAlgo hashAlgo, ByteBuffer buffer)
+            throws IOException, NoSuchAlgorithmException {
+        String value = "";
+        if (object instanceof Path) {
+            Path path = (Path) object;
+            String cacheKey = null;
+            if (buildCache != null) {
+                cacheKey = BuildCache.digestKey(path, hashAlgo.algo());
+                value = buildCache.getDigest(cacheKey);
+                if (value != null) {
+                    return value;
+                }
+            }
+            try (ReadableByteChannel readableByteChannel = FileChannel.open(path)) {
+                try (ReadableChannelWrapper input = new ReadableChannelWrapper(readableByteChannel)) {
+                    Key<byte[]> key = startDigest(input, MessageDigest.getInstance(hashAlgo.algo()));
+                    while (input.read(buffer) != -1) {
+                        buffer.rewind();
+                    }
+                    value = hex(input.finish(key));
+                }
+            }
+            if (cacheKey != null) {
+                buildCache.putDigest(cacheKey, value);
+            }
+        } else if (object instanceof URL || object instanceof ArchiveEntry) {
+            try (InputStream inputStream = object instanceof URL ? ((URL) object).openStream() :
+                    ((ArchiveEntry) object).newInputStream()) {
+                try (ReadableByteChannel readableByteChannel = Channels.newChannel(inputStream)) {
                     try (ReadableChannelWrapper input = new ReadableChannelWrapper(readableByteChannel)) {
                         Key<byte[]> key = startDigest(input, MessageDigest.getInstance(hashAlgo.algo()));
                         while (input.read(buffer) != -1) {
@@ -526,23 +880,9 @@ public class Contents {
                         value = hex(input.finish(key));
                     }
                 }
-            } else if (object instanceof URL) {
-                URL url = (URL) object;
-                try (InputStream inputStream = url.openStream()) {
-                    try (ReadableByteChannel readableByteChannel = Channels.newChannel(inputStream)) {
-                        try (ReadableChannelWrapper input = new ReadableChannelWrapper(readableByteChannel)) {
-                            Key<byte[]> key = startDigest(input, MessageDigest.getInstance(hashAlgo.algo()));
-                            while (input.read(buffer) != -1) {
-                                buffer.rewind();
-                            }
-                            value = hex(input.finish(key));
-                        }
-                    }
-                }
             }
-            array.add(value);
         }
-        return array;
+        return value;
     }
 
     /**
@@ -580,16 +920,7 @@ public class Contents {
      * @return the linktos header
      */
     public StringList getLinkTos() {
-        StringList array = new StringList();
-        for (CpioHeader header : headers) {
-            Object object = sources.get(header);
-            String value = "";
-            if (object instanceof String) {
-                value = String.valueOf(object);
-            }
-            array.add(value);
-        }
-        return array;
+        return getFileTable().getLinkTos();
     }
 
     /**
@@ -598,11 +929,7 @@ public class Contents {
      * @return the flags header values
      */
     public IntegerList getFlags() {
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            array.add(header.getFlags());
-        }
-        return array;
+        return getFileTable().getFlags();
     }
 
     /**
@@ -611,12 +938,7 @@ public class Contents {
      * @return the users
      */
     public StringList getUsers() {
-        StringList list = new StringList();
-        for (CpioHeader header : headers) {
-            UserGroup userGroup = usergroups.get(header);
-            list.add(userGroup.user);
-        }
-        return list;
+        return getFileTable().getUsers();
     }
 
     /**
@@ -625,12 +947,7 @@ public class Contents {
      * @return the groups
      */
     public StringList getGroups() {
-        StringList list = new StringList();
-        for (CpioHeader header : headers) {
-            UserGroup userGroup = usergroups.get(header);
-            list.add(userGroup.group);
-        }
-        return list;
+        return getFileTable().getGroups();
     }
 
     /**
@@ -639,11 +956,7 @@ public class Contents {
      * @return the verifyflags header values
      */
     public IntegerList getVerifyFlags() {
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            array.add(header.getVerifyFlags());
-        }
-        return array;
+        return getFileTable().getVerifyFlags();
     }
 
     /**
@@ -653,7 +966,7 @@ public class Contents {
      */
     public IntegerList getClasses() {
         IntegerList array = new IntegerList();
-        for (int i = 0; i < headers.size(); i++) {
+        for (int i = 0; i < index.size(); i++) {
             array.add(1);
         }
         return array;
@@ -665,11 +978,7 @@ public class Contents {
      * @return the devices header values
      */
     public IntegerList getDevices() {
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            array.add((header.getDevMajor() << 8) + header.getDevMinor());
-        }
-        return array;
+        return getFileTable().getDevices();
     }
 
     /**
@@ -678,11 +987,7 @@ public class Contents {
      * @return the iNodes header values
      */
     public IntegerList getInodes() {
-        IntegerList array = new IntegerList();
-        for (CpioHeader header : headers) {
-            array.add(header.getInode());
-        }
-        return array;
+        return getFileTable().getInodes();
     }
 
     /**
@@ -691,11 +996,7 @@ public class Contents {
      * @return the langs header values
      */
     public StringList getLangs() {
-        StringList array = new StringList();
-        for (int i =0; i < headers.size(); i++) {
-            array.add("");
-        }
-        return array;
+        return FileTable.repeat("", index.size());
     }
 
     /**
@@ -704,11 +1005,7 @@ public class Contents {
      * @return the contexts header values
      */
     public StringList getContexts() {
-        StringList array = new StringList();
-        for (int i = 0; i< headers.size(); i++) {
-            array.add("<<none>>");
-        }
-        return array;
+        return FileTable.repeat("<<none>>", index.size());
     }
 
     /**
@@ -718,16 +1015,20 @@ public class Contents {
      * @param path    the file to search for parents of
      */
     protected void listParents(List<String> parents, Path path) {
-        Path parent = path.getParent();
-        if (parent == null) {
-            return;
-        }
-        String s = CpioHeader.normalizePath(parent.toString());
-        if (builtins.contains(s)) {
-            return;
+        List<String> list = index.parents(index.node(CpioHeader.normalizePath(path.toString())), false);
+        for (int i = list.size() - 1; i >= 0; i--) {
+            parents.add(list.get(i));
         }
-        parents.add(s);
-        listParents(parents, parent);
+    }
+
+    /**
+     * Checks if a source has file content with a digest, which is a file, a URL or an archive entry.
+     *
+     * @param object the source
+     * @return true if the source has file content
+     */
+    static boolean hasContent(Object object) {
+        return object instanceof Path || object instanceof URL || object instanceof ArchiveEntry;
     }
 
     private String getDefaultIfMissing(String value, String defaultValue) {
@@ -39,7 +39,29 @@ public class CpioHeader {
 
     private static final int CPIO_HEADER = 110;
 
-    private static final String MAGIC = "070701";
+    private static final byte[] MAGIC = {'0', '7', '0', '7', '0', '1'};
+
+    /**
+     * The magic of the stripped format, which rpm uses for packages with files of 4 GiB and more.
+     */
+    private static final byte[] STRIPPED_MAGIC = {'0', '7', '0', '7', '0', 'X'};
+
+    /**
+     * The size of a stripped header, the magic and the index of the file in the RPM header.
+     */
+    private static final int STRIPPED_HEADER = 14;
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+
+    /**
+     * Buffer for formatting and parsing descriptors, reused by all headers of a thread.
+     */
+    private static final ThreadLocal<ByteBuffer> BUFFER = ThreadLocal.withInitial(() -> ByteBuffer.allocate(512));
+
+    /**
+     * Zeros for padding, shared by all headers of a thread.
+     */
+    private static final ThreadLocal<ByteBuffer> ZEROS = ThreadLocal.withInitial(() -> ByteBuffer.allocate(3));
 
     private static final String TRAILER = "TRAILER!!!";
 
@@ -59,7 +81,7 @@ public class CpioHeader {
 
     private long mtime;
 
-    private int filesize;
+    private long filesize;
 
     private int devMinor = 1;
 
@@ -77,6 +99,8 @@ public class CpioHeader {
 
     private int verifyFlags = -1;
 
+    private int fileIndex = -1;
+
     public CpioHeader() {
     }
 
@@ -88,7 +112,7 @@ public class CpioHeader {
         try {
             URLConnection connection = url.openConnection();
             mtime = connection.getLastModified();
-            filesize = connection.getContentLength();
+            filesize = connection.getContentLengthLong();
             this.name = normalizePath(name);
             setType(FILE);
         } catch (IOException e) {
@@ -96,13 +120,45 @@ public class CpioHeader {
         }
     }
 
+    /**
+     * Creates a copy of a header, which can be written independently of the original.
+     *
+     * @param header the header to copy
+     */
+    public CpioHeader(CpioHeader header) {
+        this.inode = header.inode;
+        this.type = header.type;
+        this.permissions = header.permissions;
+        this.uid = header.uid;
+        this.gid = header.gid;
+        this.nlink = header.nlink;
+        this.mtime = header.mtime;
+        this.filesize = header.filesize;
+        this.devMinor = header.devMinor;
+        this.devMajor = header.devMajor;
+        this.rdevMinor = header.rdevMinor;
+        this.rdevMajor = header.rdevMajor;
+        this.checksum = header.checksum;
+        this.name = header.name;
+        this.flags = header.flags;
+        this.verifyFlags = header.verifyFlags;
+        this.fileIndex = header.fileIndex;
+    }
+
     public CpioHeader(String name, Path path) throws IOException {
         mtime = Files.getLastModifiedTime(path).toMillis();
-        filesize = (int) Files.size(path);
+        filesize = Files.size(path);
         this.name = normalizePath(name);
         setType(Files.isDirectory(path) ? DIR : FILE);
     }
 
+    public CpioHeader(String name, ArchiveEntry entry) {
+        mtime = entry.getLastModified();
+        filesize = entry.getSize();
+        this.name = normalizePath(name);
+        setType(FILE);
+    }
+
     public static String normalizePath(String path) {
         return path.replace('\\', '/');
     }
@@ -218,30 +274,109 @@ public class CpioHeader {
         name = TRAILER;
     }
 
+    /**
+     * Returns the size of the file.
+     *
+     * @return the size of the file
+     * @throws IllegalStateException if the size of the file does not fit into an int
+     * @deprecated files may have 2 GiB and more, use {@link #getLongFileSize()}
+     */
+    @Deprecated
     public int getFileSize() {
+        if (filesize > Integer.MAX_VALUE) {
+            throw new IllegalStateException("the size " + filesize + " of " + name + " does not fit into an int");
+        }
+        return (int) filesize;
+    }
+
+    public long getLongFileSize() {
         return filesize;
     }
 
     public void setFileSize(int filesize) {
+        setFileSize((long) filesize);
+    }
+
+    public void setFileSize(long filesize) {
         this.filesize = filesize;
     }
 
+    /**
+     * Test to see if this header was read in the stripped format. A stripped header only carries the index
+     * of the file in the RPM header, the name, the size and the mode have to be taken from there.
+     *
+     * @return true if stripped, false if not
+     */
+    public boolean isStripped() {
+        return fileIndex >= 0;
+    }
+
+    /**
+     * Returns the index of the file in the RPM header, or -1 if this header is not stripped.
+     *
+     * @return the file index
+     */
+    public int getFileIndex() {
+        return fileIndex;
+    }
+
+    /**
+     * Formats a six character field.
+     *
+     * @param data the characters
+     * @return the encoded field
+     * @deprecated the descriptor is formatted in place by {@link #write(WritableByteChannel, int)}
+     */
+    @Deprecated
     protected ByteBuffer writeSix(CharSequence data) {
         return charset.encode(pad(data, 6));
     }
 
+    /**
+     * Formats an eight digit hex field.
+     *
+     * @param data the value
+     * @return the encoded field
+     * @deprecated the descriptor is formatted in place by {@link #write(WritableByteChannel, int)}
+     */
+    @Deprecated
     protected ByteBuffer writeEight(int data) {
         return charset.encode(pad(Integer.toHexString(data), 8));
     }
 
+    /**
+     * Reads a six character field.
+     *
+     * @param buffer the buffer to read from
+     * @return the characters
+     * @deprecated the descriptor is parsed in place by {@link #read(ReadableByteChannel, int)}
+     */
+    @Deprecated
     protected CharSequence readSix(CharBuffer buffer) {
         return readChars(buffer, 6);
     }
 
+    /**
+     * Reads an eight digit hex field.
+     *
+     * @param buffer the buffer to read from
+     * @return the value
+     * @deprecated the descriptor is parsed in place by {@link #read(ReadableByteChannel, int)}
+     */
+    @Deprecated
     protected int readEight(CharBuffer buffer) {
         return Integer.parseInt(readChars(buffer, 8).toString(), 16);
     }
 
+    /**
+     * Reads a number of characters.
+     *
+     * @param buffer the buffer to read from
+     * @param length the number of characters
+     * @return the characters
+     * @deprecated the descriptor is parsed in place by {@link #read(ReadableByteChannel, int)}
+     */
+    @Deprecated
     protected CharSequence readChars(CharBuffer buffer, int length) {
         if (buffer.remaining() < length) {
             throw new IllegalStateException("Buffer has '" + buffer.remaining() + "' bytes but '" + length + "' are needed.");
@@ -253,61 +388,98 @@ public class CpioHeader {
         }
     }
 
+    /**
+     * Pads a sequence with leading zeros.
+     *
+     * @param sequence the sequence
+     * @param length the length to pad to
+     * @return the padded sequence
+     * @deprecated the descriptor is formatted in place by {@link #write(WritableByteChannel, int)}
+     */
+    @Deprecated
     protected String pad(CharSequence sequence, int length) {
         StringBuilder sequenceBuilder = new StringBuilder(sequence);
         while (sequenceBuilder.length() < length) {
             sequenceBuilder.insert(0, "0");
         }
-        sequence = sequenceBuilder.toString();
-        return sequence.toString();
+        return sequenceBuilder.toString();
     }
 
+    /**
+     * Reads and discards the padding before the next 4 byte boundary.
+     *
+     * @param channel the channel to read from
+     * @param total the number of bytes read so far
+     * @return the number of bytes skipped
+     * @throws IOException if an IO error occurs
+     */
     protected int skip(ReadableByteChannel channel, int total) throws IOException {
         int skipped = difference(total, 3);
-        ChannelWrapper.fill(channel, skipped);
+        ChannelWrapper.fill(channel, buffer(skipped));
         return skipped;
     }
 
+    /**
+     * Writes zeros up to the next 4 byte boundary.
+     *
+     * @param channel the channel to write to
+     * @param total the number of bytes written so far
+     * @return the number of bytes written
+     * @throws IOException if an IO error occurs
+     */
     public int skip(WritableByteChannel channel, int total) throws IOException {
         int skipped = difference(total, 3);
-        ChannelWrapper.empty(channel, ByteBuffer.allocate(skipped));
+        ByteBuffer zeros = ZEROS.get();
+        zeros.clear().limit(skipped);
+        ChannelWrapper.empty(channel, zeros);
         return skipped;
     }
 
     public int read(ReadableByteChannel channel, int total) throws IOException {
         total += skip(channel, total);
-        ByteBuffer descriptor = ChannelWrapper.fill(channel, CPIO_HEADER);
-        CharBuffer buffer = charset.decode(descriptor);
-        CharSequence magic = readSix(buffer);
-        if (!MAGIC.equals(magic.toString())) {
-            throw new IllegalStateException("Invalid magic number '" + magic + "' of length '" + magic.length() + "'.");
+        ByteBuffer buffer = ChannelWrapper.fill(channel, buffer(STRIPPED_HEADER));
+        if (startsWith(buffer, STRIPPED_MAGIC)) {
+            buffer.position(STRIPPED_MAGIC.length);
+            fileIndex = readHex(buffer);
+            total += STRIPPED_HEADER;
+            total += skip(channel, total);
+            return total;
+        }
+        if (!startsWith(buffer, MAGIC)) {
+            throw new IllegalStateException("Invalid magic number '" +
+                    new String(buffer.array(), 0, MAGIC.length, StandardCharsets.US_ASCII) + "'.");
         }
-        inode = readEight(buffer);
-        int mode = readEight(buffer);
+        buffer.position(MAGIC.length);
+        inode = readHex(buffer);
+        buffer.limit(CPIO_HEADER);
+        ChannelWrapper.fill(channel, buffer);
+        buffer.position(STRIPPED_HEADER);
+        int mode = readHex(buffer);
         permissions = mode & 07777;
         type = mode >>> 12;
-        uid = readEight(buffer);
-        gid = readEight(buffer);
-        nlink = readEight(buffer);
-        mtime = 1000L * readEight(buffer);
-        filesize = readEight(buffer);
-        devMajor = readEight(buffer);
-        devMinor = readEight(buffer);
-        rdevMajor = readEight(buffer);
-        rdevMinor = readEight(buffer);
-        int namesize = readEight(buffer);
-        checksum = readEight(buffer);
+        uid = readHex(buffer);
+        gid = readHex(buffer);
+        nlink = readHex(buffer);
+        mtime = 1000L * readHex(buffer);
+        filesize = readHex(buffer) & 0xffffffffL;
+        devMajor = readHex(buffer);
+        devMinor = readHex(buffer);
+        rdevMajor = readHex(buffer);
+        rdevMinor = readHex(buffer);
+        int namesize = readHex(buffer);
+        checksum = readHex(buffer);
         total += CPIO_HEADER;
-        name = charset.decode(ChannelWrapper.fill(channel, namesize - 1)).toString();
-        ChannelWrapper.fill(channel, 1);
-        total += namesize;
-        total += skip(channel, total);
+        int pad = difference(total + namesize, 3);
+        buffer = ChannelWrapper.fill(channel, buffer(namesize + pad));
+        name = new String(buffer.array(), 0, namesize - 1, charset);
+        total += namesize + pad;
         return total;
     }
 
     /**
      * Write the content for the CPIO header, including the name immediately following. The name data is rounded
-     * to the nearest 2 byte boundary as CPIO requires by appending a null when needed.
+     * to the nearest 4 byte boundary as CPIO requires by appending nulls. The descriptor, the name and the padding
+     * are formatted into a reused buffer and written at once.
      *
      * @param channel which channel to write on
      * @param total   current size of header?
@@ -315,29 +487,110 @@ public class CpioHeader {
      * @throws IOException there was an IO error
      */
     public int write(WritableByteChannel channel, int total) throws IOException {
-        ByteBuffer buffer = charset.encode(CharBuffer.wrap(name));
-        int length = buffer.remaining() + 1;
-        ByteBuffer descriptor = ByteBuffer.allocate(CPIO_HEADER);
-        descriptor.put(writeSix(MAGIC));
-        descriptor.put(writeEight(inode));
-        descriptor.put(writeEight(getMode()));
-        descriptor.put(writeEight(uid));
-        descriptor.put(writeEight(gid));
-        descriptor.put(writeEight(nlink));
-        descriptor.put(writeEight((int) (mtime / 1000)));
-        descriptor.put(writeEight(filesize));
-        descriptor.put(writeEight(devMajor));
-        descriptor.put(writeEight(devMinor));
-        descriptor.put(writeEight(rdevMajor));
-        descriptor.put(writeEight(rdevMinor));
-        descriptor.put(writeEight(length));
-        descriptor.put(writeEight(checksum));
-        descriptor.flip();
-        total += CPIO_HEADER + length;
-        ChannelWrapper.empty(channel, descriptor);
+        byte[] encoded = isAscii(name) ? null : name.getBytes(charset);
+        int length = (encoded != null ? encoded.length : name.length()) + 1;
+        int pad = difference(total + CPIO_HEADER + length, 3);
+        ByteBuffer buffer = buffer(CPIO_HEADER + length + pad);
+        buffer.put(MAGIC);
+        writeHex(buffer, inode);
+        writeHex(buffer, getMode());
+        writeHex(buffer, uid);
+        writeHex(buffer, gid);
+        writeHex(buffer, nlink);
+        writeHex(buffer, (int) (mtime / 1000));
+        writeHex(buffer, (int) filesize);
+        writeHex(buffer, devMajor);
+        writeHex(buffer, devMinor);
+        writeHex(buffer, rdevMajor);
+        writeHex(buffer, rdevMinor);
+        writeHex(buffer, length);
+        writeHex(buffer, checksum);
+        if (encoded != null) {
+            buffer.put(encoded);
+        } else {
+            for (int i = 0; i < name.length(); i++) {
+                buffer.put((byte) name.charAt(i));
+            }
+        }
+        for (int i = 0; i < 1 + pad; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
+        ChannelWrapper.empty(channel, buffer);
+        return total + CPIO_HEADER + length + pad;
+    }
+
+    /**
+     * Write a header in the stripped format, which refers to the file with the given index in the RPM header
+     * instead of describing it. It is used for packages with files of 4 GiB and more, whose size does not fit
+     * into a CPIO header.
+     *
+     * @param channel which channel to write on
+     * @param total the number of bytes written so far
+     * @param fileIndex the index of the file in the RPM header
+     * @return total written and skipped
+     * @throws IOException there was an IO error
+     */
+    public int writeStripped(WritableByteChannel channel, int total, int fileIndex) throws IOException {
+        int pad = difference(total + STRIPPED_HEADER, 3);
+        ByteBuffer buffer = buffer(STRIPPED_HEADER + pad);
+        buffer.put(STRIPPED_MAGIC);
+        writeHex(buffer, fileIndex);
+        for (int i = 0; i < pad; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.flip();
         ChannelWrapper.empty(channel, buffer);
-        ChannelWrapper.empty(channel, ByteBuffer.allocate(1));
-        return total + skip(channel, total);
+        return total + STRIPPED_HEADER + pad;
+    }
+
+    /**
+     * Returns the buffer of the current thread, cleared and limited to the given size.
+     */
+    private static ByteBuffer buffer(int size) {
+        ByteBuffer buffer = BUFFER.get();
+        if (buffer.capacity() < size) {
+            buffer = ByteBuffer.allocate(Math.max(size, 2 * buffer.capacity()));
+            BUFFER.set(buffer);
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    private static int readHex(ByteBuffer buffer) {
+        int value = 0;
+        for (int i = 0; i < 8; i++) {
+            int digit = Character.digit(buffer.get(), 16);
+            if (digit < 0) {
+                throw new IllegalStateException("Invalid hex digit at position " + (buffer.position() - 1) + ".");
+            }
+            value = (value << 4) | digit;
+        }
+        return value;
+    }
+
+    private static void writeHex(ByteBuffer buffer, int value) {
+        for (int shift = 28; shift >= 0; shift -= 4) {
+            buffer.put(HEX[(value >>> shift) & 0xf]);
+        }
+    }
+
+    private static boolean startsWith(ByteBuffer buffer, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (buffer.get(i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAscii(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (string.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public String toString() {
@@ -0,0 +1,312 @@
+package org.xbib.rpm.payload;
+
+import org.xbib.rpm.header.Header;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.IntegerList;
+import org.xbib.rpm.header.LongList;
+import org.xbib.rpm.header.ShortList;
+import org.xbib.rpm.header.StringList;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The file metadata of the contents of an RPM archive, in the order of the archive, kept in columns of
+ * primitive arrays. The table is built in a single pass over the headers: the names are split into an
+ * interned dictionary of directory names and the base names, and equal user and group names share one
+ * string. All file tags of the RPM header are then taken from the columns without looking at the headers,
+ * the sources or the file system again.
+ */
+public class FileTable {
+
+    private static final int DIRECTORY_SIZE = 4096;
+
+    private final int count;
+
+    private final StringList dirNames = new StringList();
+
+    private final int[] dirIndexes;
+
+    private final String[] baseNames;
+
+    private final long[] sizes;
+
+    private final short[] modes;
+
+    private final short[] rdevs;
+
+    private final int[] mtimes;
+
+    private final String[] linkTos;
+
+    private final int[] flags;
+
+    private final String[] users;
+
+    private final String[] groups;
+
+    private final int[] verifyFlags;
+
+    private final int[] devices;
+
+    private final int[] inodes;
+
+    private long totalSize;
+
+    /**
+     * Creates the table of the given headers.
+     *
+     * @param headers the headers in archive order
+     * @param sources the sources of the headers
+     * @param usergroups the user and group names of the headers
+     * @param count the number of headers
+     */
+    FileTable(Iterable<CpioHeader> headers, Map<CpioHeader, Object> sources,
+              Map<CpioHeader, UserGroup> usergroups, int count) {
+        this.count = count;
+        this.dirIndexes = new int[count];
+        this.baseNames = new String[count];
+        this.sizes = new long[count];
+        this.modes = new short[count];
+        this.rdevs = new short[count];
+        this.mtimes = new int[count];
+        this.linkTos = new String[count];
+        this.flags = new int[count];
+        this.users = new String[count];
+        this.groups = new String[count];
+        this.verifyFlags = new int[count];
+        this.devices = new int[count];
+        this.inodes = new int[count];
+        Map<String, Integer> dirs = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        int i = 0;
+        for (CpioHeader header : headers) {
+            String name = header.getName();
+            int slash = name.lastIndexOf('/');
+            String parent;
+            if (slash < 0) {
+                parent = null;
+                baseNames[i] = CpioHeader.normalizePath(name);
+            } else if (slash == name.length() - 1 || name.contains("//")) {
+                // names which are not in canonical form are split like the file system does
+                Path path = Paths.get(name);
+                parent = path.getParent() != null ? CpioHeader.normalizePath(path.getParent().toString()) : null;
+                baseNames[i] = path.getFileName() != null ? CpioHeader.normalizePath(path.getFileName().toString()) : "";
+            } else {
+                parent = slash == 0 ? "/" : CpioHeader.normalizePath(name.substring(0, slash));
+                baseNames[i] = CpioHeader.normalizePath(name.substring(slash + 1));
+            }
+            if (parent != null) {
+                if (!parent.endsWith("/")) {
+                    parent += "/";
+                }
+                Integer index = dirs.get(parent);
+                if (index == null) {
+                    index = dirNames.size();
+                    dirs.put(parent, index);
+                    dirNames.add(parent);
+                }
+                dirIndexes[i] = index;
+            }
+            Object object = sources.get(header);
+            sizes[i] = size(header, object);
+            if (Contents.hasContent(object)) {
+                totalSize += sizes[i];
+            }
+            modes[i] = (short) header.getMode();
+            rdevs[i] = (short) ((header.getRdevMajor() << 8) + header.getRdevMinor());
+            mtimes[i] = header.getMtime();
+            linkTos[i] = object instanceof String ? (String) object : "";
+            flags[i] = header.getFlags();
+            UserGroup userGroup = usergroups.get(header);
+            users[i] = names.computeIfAbsent(userGroup.user, k -> k);
+            groups[i] = names.computeIfAbsent(userGroup.group, k -> k);
+            verifyFlags[i] = header.getVerifyFlags();
+            devices[i] = (header.getDevMajor() << 8) + header.getDevMinor();
+            inodes[i] = header.getInode();
+            i++;
+        }
+    }
+
+    /**
+     * Returns the size of an entry. Files, URLs and archive entries have the size taken when they were added,
+     * which is also the size written to the payload. Ghost files are not written, they have the size of the file.
+     */
+    private static long size(CpioHeader header, Object object) {
+        if (object instanceof Path) {
+            if ((header.getFlags() & Directive.GHOST.flag()) == Directive.GHOST.flag()) {
+                try {
+                    return Files.size((Path) object);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return header.getLongFileSize();
+        }
+        if (object instanceof URL || object instanceof ArchiveEntry) {
+            return header.getLongFileSize();
+        }
+        if (header.getType() == CpioHeader.DIR) {
+            return DIRECTORY_SIZE;
+        }
+        if (header.getType() == CpioHeader.SYMLINK) {
+            return ((String) object).length();
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Returns the accumulated size of all files, URLs and archive entries.
+     *
+     * @return the total size
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public StringList getDirNames() {
+        return new StringList(dirNames);
+    }
+
+    public IntegerList getDirIndexes() {
+        return integers(dirIndexes);
+    }
+
+    public StringList getBaseNames() {
+        return strings(baseNames);
+    }
+
+    public IntegerList getSizes() {
+        IntegerList list = new IntegerList(count);
+        for (long size : sizes) {
+            list.add((int) size);
+        }
+        return list;
+    }
+
+    public LongList getLongSizes() {
+        LongList list = new LongList(count);
+        for (long size : sizes) {
+            list.add(size);
+        }
+        return list;
+    }
+
+    public ShortList getModes() {
+        return shorts(modes);
+    }
+
+    public ShortList getRdevs() {
+        return shorts(rdevs);
+    }
+
+    public IntegerList getMtimes() {
+        return integers(mtimes);
+    }
+
+    public StringList getLinkTos() {
+        return strings(linkTos);
+    }
+
+    public IntegerList getFlags() {
+        return integers(flags);
+    }
+
+    public StringList getUsers() {
+        return strings(users);
+    }
+
+    public StringList getGroups() {
+        return strings(groups);
+    }
+
+    public IntegerList getVerifyFlags() {
+        return integers(verifyFlags);
+    }
+
+    public IntegerList getDevices() {
+        return integers(devices);
+    }
+
+    public IntegerList getInodes() {
+        return integers(inodes);
+    }
+
+    /**
+     * Creates the file tags of a header from the columns of this table, except for the file digests,
+     * which have to be computed from the file contents.
+     *
+     * @param header the header
+     * @param longSizes true for 64 bit file sizes
+     */
+    public void createEntries(Header header, boolean longSizes) {
+        header.createEntry(HeaderTag.DIRNAMES, getDirNames());
+        header.createEntry(HeaderTag.DIRINDEXES, getDirIndexes());
+        header.createEntry(HeaderTag.BASENAMES, getBaseNames());
+        if (longSizes) {
+            header.createEntry(HeaderTag.LONGFILESIZES, getLongSizes());
+        } else {
+            header.createEntry(HeaderTag.FILESIZES, getSizes());
+        }
+        header.createEntry(HeaderTag.FILEMODES, getModes());
+        header.createEntry(HeaderTag.FILERDEVS, getRdevs());
+        header.createEntry(HeaderTag.FILEMTIMES, getMtimes());
+        header.createEntry(HeaderTag.FILELINKTOS, getLinkTos());
+        header.createEntry(HeaderTag.FILEFLAGS, getFlags());
+        header.createEntry(HeaderTag.FILEUSERNAME, getUsers());
+        header.createEntry(HeaderTag.FILEGROUPNAME, getGroups());
+        header.createEntry(HeaderTag.FILEVERIFYFLAGS, getVerifyFlags());
+        header.createEntry(HeaderTag.FILEDEVICES, getDevices());
+        header.createEntry(HeaderTag.FILEINODES, getInodes());
+        header.createEntry(HeaderTag.FILELANGS, repeat("", count));
+        header.createEntry(HeaderTag.FILECONTEXTS, repeat("<<none>>", count));
+    }
+
+    static StringList repeat(String value, int count) {
+        StringList list = new StringList();
+        list.ensureCapacity(count);
+        for (int i = 0; i < count; i++) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static IntegerList integers(int[] values) {
+        IntegerList list = new IntegerList(values.length);
+        for (int value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static ShortList shorts(short[] values) {
+        ShortList list = new ShortList(values.length);
+        for (short value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static StringList strings(String[] values) {
+        StringList list = new StringList();
+        list.ensureCapacity(values.length);
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,241 @@
+package org.xbib.rpm.payload;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the entries of an archive by path, kept as a tree of path components. Each component string
+ * is interned, so the paths of many entries in the same directories share their strings. The index finds
+ * duplicates with a single walk down the tree, and the missing parent directories of an entry by walking
+ * up from its node, without building the strings of parent paths which already have an entry. Builtin
+ * directories, which are never added as entries, are marked in the tree.
+ *
+ * Paths are split at slashes, empty components are ignored, so a path with a trailing or a double slash
+ * is the same as its canonical form. A leading slash makes a path absolute, other paths are relative
+ * and have no parent above their first component.
+ */
+class PathIndex {
+
+    private static final Comparator<CpioHeader> BY_NAME = Comparator.comparing(CpioHeader::getName);
+
+    private static final Comparator<Node> BY_COMPONENT = Comparator.comparing(node -> node.name);
+
+    private final Node root = new Node(null, "");
+
+    private final Node relativeRoot = new Node(null, "");
+
+    private final Map<String, String> components = new HashMap<>();
+
+    private int size;
+
+    private List<CpioHeader> sorted;
+
+    /**
+     * Marks a directory as builtin, which is assumed to exist on the system where the RPM is installed.
+     *
+     * @param path the directory
+     */
+    void addBuiltin(String path) {
+        node(path).builtin = true;
+    }
+
+    /**
+     * Returns the node of a path, which is created if it does not exist yet.
+     *
+     * @param path the path
+     * @return the node
+     */
+    Node node(String path) {
+        Node node = path.startsWith("/") ? root : relativeRoot;
+        int start = 0;
+        int length = path.length();
+        while (start < length) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                node = node.child(path.substring(start, end));
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Adds an entry at a node.
+     *
+     * @param node the node of the path of the entry
+     * @param header the header of the entry
+     * @return false if there is already an entry at the node
+     */
+    boolean add(Node node, CpioHeader header) {
+        if (node.header != null) {
+            return false;
+        }
+        node.header = header;
+        size++;
+        sorted = null;
+        return true;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the parent directories of a node up to the first builtin directory, from the top down.
+     * The root of an absolute path is builtin.
+     *
+     * @param node the node
+     * @param missing true for only the parent directories without an entry
+     * @return the paths of the parent directories
+     */
+    List<String> parents(Node node, boolean missing) {
+        List<String> parents = null;
+        for (Node parent = node.parent; parent != null && parent.parent != null && !parent.builtin;
+             parent = parent.parent) {
+            if (!missing || parent.header == null) {
+                if (parents == null) {
+                    parents = new ArrayList<>();
+                }
+                parents.add(parent.path());
+            }
+        }
+        if (parents == null) {
+            return Collections.emptyList();
+        }
+        Collections.reverse(parents);
+        return parents;
+    }
+
+    /**
+     * Returns the headers of all entries, ordered by name.
+     *
+     * @return the headers
+     */
+    List<CpioHeader> headers() {
+        if (sorted == null) {
+            List<CpioHeader> list = new ArrayList<>(size);
+            collect(root, list);
+            collect(relativeRoot, list);
+            // the tree is ordered by components, which is almost, but not exactly, the order of the names,
+            // e.g. for names with characters before the slash, so the adaptive sort only fixes a few runs
+            list.sort(BY_NAME);
+            sorted = Collections.unmodifiableList(list);
+        }
+        return sorted;
+    }
+
+    /**
+     * Creates a copy of this index, with copies of the headers of its entries. The index is only read,
+     * so copies can be created concurrently, as long as the index is not changed.
+     *
+     * @param copies the map receiving the copy of each header
+     * @return the copy
+     */
+    PathIndex copy(Map<CpioHeader, CpioHeader> copies) {
+        PathIndex index = new PathIndex();
+        index.components.putAll(components);
+        index.size = size;
+        copy(root, index.root, index, copies);
+        copy(relativeRoot, index.relativeRoot, index, copies);
+        if (sorted != null) {
+            List<CpioHeader> list = new ArrayList<>(sorted.size());
+            for (CpioHeader header : sorted) {
+                list.add(copies.get(header));
+            }
+            index.sorted = Collections.unmodifiableList(list);
+        }
+        return index;
+    }
+
+    private static void copy(Node node, Node copy, PathIndex index, Map<CpioHeader, CpioHeader> copies) {
+        copy.builtin = node.builtin;
+        if (node.header != null) {
+            copy.header = new CpioHeader(node.header);
+            copies.put(node.header, copy.header);
+        }
+        if (node.children != null) {
+            copy.children = new HashMap<>(node.children.size() * 4 / 3 + 1);
+            for (Node child : node.children.values()) {
+                Node childCopy = index.new Node(copy, child.name);
+                copy.children.put(child.name, childCopy);
+                copy(child, childCopy, index, copies);
+            }
+        }
+    }
+
+    private static void collect(Node node, List<CpioHeader> list) {
+        if (node.header != null) {
+            list.add(node.header);
+        }
+        if (node.children != null) {
+            Node[] children = node.children.values().toArray(new Node[0]);
+            Arrays.sort(children, BY_COMPONENT);
+            for (Node child : children) {
+                collect(child, list);
+            }
+        }
+    }
+
+    /**
+     * A path component in the tree.
+     */
+    final class Node {
+
+        private final Node parent;
+
+        private final String name;
+
+        private Map<String, Node> children;
+
+        private CpioHeader header;
+
+        private boolean builtin;
+
+        private Node(Node parent, String name) {
+            this.parent = parent;
+            this.name = name;
+        }
+
+        boolean hasEntry() {
+            return header != null;
+        }
+
+        private Node child(String name) {
+            Node child = children != null ? children.get(name) : null;
+            if (child == null) {
+                if (children == null) {
+                    children = new HashMap<>();
+                }
+                String interned = components.computeIfAbsent(name, k -> k);
+                child = new Node(this, interned);
+                children.put(interned, child);
+            }
+            return child;
+        }
+
+        private String path() {
+            List<String> names = new ArrayList<>();
+            Node node = this;
+            while (node.parent != null) {
+                names.add(node.name);
+                node = node.parent;
+            }
+            StringBuilder sb = new StringBuilder();
+            for (int i = names.size() - 1; i >= 0; i--) {
+                if (node == root || i < names.size() - 1) {
+                    sb.append('/');
+                }
+                sb.append(names.get(i));
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package org.xbib.rpm.payload;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A ZIP or JAR archive whose entries are added to the contents of an RPM archive. The archive is opened once,
+ * the names, sizes and modification times of all entries are read from its central directory, and the entries
+ * are read from the same open file, in the order of the archive where possible. The archive must be kept open
+ * until the RPM archive has been built.
+ */
+public class ZipArchive implements Closeable {
+
+    private final Path path;
+
+    private final ZipFile zipFile;
+
+    private final Map<String, ArchiveEntry> entries = new LinkedHashMap<>();
+
+    /**
+     * Opens an archive.
+     *
+     * @param path the archive file
+     * @throws IOException if the archive could not be opened or its central directory could not be read
+     */
+    public ZipArchive(Path path) throws IOException {
+        this.path = path;
+        this.zipFile = new ZipFile(path.toFile());
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        int ordinal = 0;
+        while (enumeration.hasMoreElements()) {
+            ZipEntry zipEntry = enumeration.nextElement();
+            if (!zipEntry.isDirectory()) {
+                entries.put(zipEntry.getName(), new ArchiveEntry(this, zipEntry, ordinal++));
+            }
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Returns a file entry of the archive.
+     *
+     * @param name the name of the entry in the archive
+     * @return the entry, or null if the archive has no such file entry
+     */
+    public ArchiveEntry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Returns the file entries of the archive, in the order of the archive.
+     *
+     * @return the entries
+     */
+    public Collection<ArchiveEntry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    InputStream getInputStream(ZipEntry zipEntry) throws IOException {
+        return zipFile.getInputStream(zipEntry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
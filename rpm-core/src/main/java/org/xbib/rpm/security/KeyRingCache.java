@@ -0,0 +1,75 @@
+package org.xbib.rpm.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread safe cache of {@link SigningKey signing keys}, keyed by the fingerprint of the key ring contents,
+ * the key id and the passphrase. Each key is extracted only once, also if it is requested concurrently.
+ * The passphrase is part of the key, so a cached key is never handed out for a wrong passphrase.
+ */
+public class KeyRingCache {
+
+    private final ConcurrentMap<String, SigningKey> signingKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the signing key of a key ring file.
+     *
+     * @param privateKeyRing the path of the secret key ring
+     * @param privateKeyId the key id, or null for the first signing key of the key ring
+     * @param privateKeyPassphrase the passphrase of the key
+     * @return the signing key
+     * @throws IOException if the key ring could not be read
+     */
+    public SigningKey getSigningKey(Path privateKeyRing, Long privateKeyId, String privateKeyPassphrase)
+            throws IOException {
+        return getSigningKey(Files.readAllBytes(privateKeyRing), privateKeyId, privateKeyPassphrase);
+    }
+
+    /**
+     * Returns the signing key of a key ring.
+     *
+     * @param privateKeyRing the secret key ring
+     * @param privateKeyId the key id, or null for the first signing key of the key ring
+     * @param privateKeyPassphrase the passphrase of the key
+     * @return the signing key
+     */
+    public SigningKey getSigningKey(byte[] privateKeyRing, Long privateKeyId, String privateKeyPassphrase) {
+        String key = fingerprint(privateKeyRing, privateKeyId, privateKeyPassphrase);
+        return signingKeys.computeIfAbsent(key, k ->
+                new SigningKey(new ByteArrayInputStream(privateKeyRing), privateKeyId, privateKeyPassphrase));
+    }
+
+    public int size() {
+        return signingKeys.size();
+    }
+
+    public void clear() {
+        signingKeys.clear();
+    }
+
+    private static String fingerprint(byte[] privateKeyRing, Long privateKeyId, String privateKeyPassphrase) {
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("SHA-256");
+            messageDigest.update(privateKeyRing);
+            if (privateKeyPassphrase != null) {
+                messageDigest.update((byte) 0);
+                messageDigest.update(privateKeyPassphrase.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : messageDigest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.append('/').append(privateKeyId != null ? Long.toHexString(privateKeyId) : "").toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -2,31 +2,23 @@ package org.xbib.rpm.security;
 
 import org.bouncycastle.openpgp.PGPException;
 import org.bouncycastle.openpgp.PGPPrivateKey;
-import org.bouncycastle.openpgp.PGPSecretKey;
-import org.bouncycastle.openpgp.PGPSecretKeyRing;
-import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
 import org.bouncycastle.openpgp.PGPSignature;
 import org.bouncycastle.openpgp.PGPSignatureGenerator;
-import org.bouncycastle.openpgp.PGPUtil;
-import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
-import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
 import org.bouncycastle.openpgp.operator.bc.BcPGPContentSignerBuilder;
-import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
-import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
 import org.xbib.rpm.exception.RpmException;
 import org.xbib.rpm.header.entry.SpecEntry;
 import org.xbib.rpm.io.ChannelWrapper;
-import org.xbib.rpm.io.WritableChannelWrapper;
+import org.xbib.rpm.metrics.BuildMetrics;
+import org.xbib.rpm.metrics.BuildPhase;
 import org.xbib.rpm.signature.SignatureHeader;
 import org.xbib.rpm.signature.SignatureTag;
 
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.Iterator;
 
 /**
  * To verify the authenticity of the package, the SIGTAG_PGP tag holds a
@@ -39,9 +31,11 @@ import java.util.Iterator;
  */
 public class SignatureGenerator {
 
+    private static final long MAP_SIZE = 64L * 1024 * 1024;
+
     private final boolean enabled;
 
-    private PGPPrivateKey privateKey;
+    private final PGPPrivateKey privateKey;
 
     private SpecEntry<byte[]> headerOnlyEntry;
 
@@ -51,15 +45,20 @@ public class SignatureGenerator {
 
     private ChannelWrapper.Key<byte[]> headerAndPayloadKey;
 
+    private BuildMetrics buildMetrics;
+
     public SignatureGenerator(InputStream privateKeyRing, Long privateKeyId, String privateKeyPassphrase) {
-        if (privateKeyRing != null) {
-            PGPSecretKeyRingCollection keyRings = readKeyRing(privateKeyRing);
-            PGPSecretKey secretKey = findMatchingSecretKey(keyRings, privateKeyId);
-            this.privateKey = extractPrivateKey(secretKey, privateKeyPassphrase);;
-            this.enabled = privateKey != null;
-        } else {
-            this.enabled = false;
-        }
+        this(privateKeyRing != null ? new SigningKey(privateKeyRing, privateKeyId, privateKeyPassphrase) : null);
+    }
+
+    /**
+     * Creates a signature generator for a signing key, without decoding a key ring again.
+     *
+     * @param signingKey the signing key, or null for not signing
+     */
+    public SignatureGenerator(SigningKey signingKey) {
+        this.privateKey = signingKey != null ? signingKey.getPrivateKey() : null;
+        this.enabled = privateKey != null;
     }
 
     @SuppressWarnings("unchecked")
@@ -71,7 +70,7 @@ public class SignatureGenerator {
         }
     }
 
-    public void startBeforeHeader(WritableChannelWrapper output, HashAlgo algo) throws RpmException {
+    public void startBeforeHeader(ChannelWrapper output, HashAlgo algo) throws RpmException {
         if (enabled) {
             try {
                 headerOnlyKey = output.startCount(new SignatureConsumer(algo.num()));
@@ -82,6 +81,58 @@ public class SignatureGenerator {
         }
     }
 
+    /**
+     * Signs the given bytes, like the header section of an existing RPM.
+     *
+     * @param buffer the bytes to sign, from the position to the limit of the buffer
+     * @param algo the hash algorithm of the signature
+     * @return the encoded signature, or null if signing is not enabled
+     * @throws RpmException if the signature could not be generated
+     */
+    public byte[] sign(ByteBuffer buffer, HashAlgo algo) throws RpmException {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            SignatureConsumer consumer = new SignatureConsumer(algo.num());
+            consumer.consume(buffer.duplicate());
+            return consumer.finish();
+        } catch (PGPException e) {
+            throw new RpmException(e);
+        }
+    }
+
+    /**
+     * Signs a region of a file, like the header and the payload of an existing RPM. The region is mapped
+     * in chunks, so it is not read into the heap, and may be larger than 2 GiB.
+     *
+     * @param channel the file
+     * @param position the start of the region
+     * @param count the length of the region
+     * @param algo the hash algorithm of the signature
+     * @return the encoded signature, or null if signing is not enabled
+     * @throws IOException if the file could not be read
+     * @throws RpmException if the signature could not be generated
+     */
+    public byte[] sign(FileChannel channel, long position, long count, HashAlgo algo)
+            throws IOException, RpmException {
+        if (!enabled) {
+            return null;
+        }
+        try {
+            SignatureConsumer consumer = new SignatureConsumer(algo.num());
+            while (count > 0) {
+                long chunk = Math.min(count, MAP_SIZE);
+                consumer.consume(channel.map(FileChannel.MapMode.READ_ONLY, position, chunk));
+                position += chunk;
+                count -= chunk;
+            }
+            return consumer.finish();
+        } catch (PGPException e) {
+            throw new RpmException(e);
+        }
+    }
+
     /**
      * Start a digest.
      *
@@ -90,7 +141,7 @@ public class SignatureGenerator {
      * @throws RpmException if digest could not be generated
      * @return reference to the new key added to the consumers
      */
-    public ChannelWrapper.Key<byte[]> startDigest(WritableChannelWrapper output, String digest) throws RpmException {
+    public ChannelWrapper.Key<byte[]> startDigest(ChannelWrapper output, String digest) throws RpmException {
         try {
             MessageDigest messageDigest = MessageDigest.getInstance(digest);
             ChannelWrapper.Consumer<byte[]> consumer = new ChannelWrapper.Consumer<>() {
@@ -122,11 +173,11 @@ public class SignatureGenerator {
         return Math.min(4096, totalSize);
     }
 
-    public void finishAfterHeader(WritableChannelWrapper output) {
+    public void finishAfterHeader(ChannelWrapper output) {
         finishEntry(output, headerOnlyEntry, headerOnlyKey);
     }
 
-    public void finishAfterPayload(WritableChannelWrapper output) {
+    public void finishAfterPayload(ChannelWrapper output) {
         finishEntry(output, headerAndPayloadEntry, headerAndPayloadKey);
     }
 
@@ -134,49 +185,16 @@ public class SignatureGenerator {
         return enabled;
     }
 
-    private PGPSecretKeyRingCollection readKeyRing(InputStream privateKeyRing) {
-        try {
-            try (InputStream decoderStream = PGPUtil.getDecoderStream(new BufferedInputStream(privateKeyRing))) {
-                return new PGPSecretKeyRingCollection(decoderStream, new JcaKeyFingerprintCalculator());
-            }
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Could not read key ring", e);
-        } catch (PGPException e) {
-            throw new IllegalArgumentException("Could not extract key ring", e);
-        }
-    }
-
-    private PGPSecretKey findMatchingSecretKey(PGPSecretKeyRingCollection keyRings, Long privateKeyId) {
-        Iterator<PGPSecretKeyRing> iter = keyRings.getKeyRings();
-        while (iter.hasNext()) {
-            PGPSecretKeyRing keyRing = iter.next();
-            Iterator<PGPSecretKey> keyIter = keyRing.getSecretKeys();
-            while (keyIter.hasNext()) {
-                PGPSecretKey key = keyIter.next();
-                if (key.isSigningKey() && isMatchingKeyId(key, privateKeyId)) {
-                    return key;
-                }
-            }
-        }
-        throw new IllegalArgumentException("can't find signing key in key rings");
-    }
-
-    private boolean isMatchingKeyId(PGPSecretKey key, Long privateKeyId) {
-        return privateKeyId == null || Long.toHexString(key.getKeyID()).endsWith(Long.toHexString(privateKeyId));
-    }
-
-    private PGPPrivateKey extractPrivateKey(PGPSecretKey secretKey, String privateKeyPassphrase) {
-        try {
-            PBESecretKeyDecryptor secretKeyDecryptor =
-                    new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider())
-                            .build(privateKeyPassphrase.toCharArray());
-            return secretKey.extractPrivateKey(secretKeyDecryptor);
-        } catch (Exception e) {
-            throw new IllegalArgumentException("could not extract private key from key ring", e);
-        }
+    /**
+     * Sets the metrics which the time spent for hashing and signing is reported to.
+     *
+     * @param buildMetrics the build metrics, or null
+     */
+    public void setBuildMetrics(BuildMetrics buildMetrics) {
+        this.buildMetrics = buildMetrics;
     }
 
-    private void finishEntry(WritableChannelWrapper output, SpecEntry<byte[]> entry, ChannelWrapper.Key<byte[]> key) {
+    private void finishEntry(ChannelWrapper output, SpecEntry<byte[]> entry, ChannelWrapper.Key<byte[]> key) {
         if (enabled) {
             if (key == null) {
                 throw new IllegalStateException("key is not initialized");
@@ -207,7 +225,13 @@ public class SignatureGenerator {
             if (!buffer.hasRemaining()) {
                 return;
             }
+            if (buildMetrics == null) {
+                write(buffer);
+                return;
+            }
+            long start = System.nanoTime();
             write(buffer);
+            buildMetrics.addPhase(BuildPhase.SIGNING, System.nanoTime() - start);
         }
 
         private void write(ByteBuffer buffer) {
@@ -232,10 +256,15 @@ public class SignatureGenerator {
 
         @Override
         public byte[] finish() {
+            long start = System.nanoTime();
             try {
                 return pgpSignatureGenerator.generate().getEncoded();
             } catch (Exception e) {
                 throw new RuntimeException("could not generate signature", e);
+            } finally {
+                if (buildMetrics != null) {
+                    buildMetrics.addPhase(BuildPhase.SIGNING, System.nanoTime() - start);
+                }
             }
         }
     }
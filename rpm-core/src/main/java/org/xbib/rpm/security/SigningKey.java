@@ -0,0 +1,92 @@
+package org.xbib.rpm.security;
+
+import org.bouncycastle.openpgp.PGPException;
+import org.bouncycastle.openpgp.PGPPrivateKey;
+import org.bouncycastle.openpgp.PGPSecretKey;
+import org.bouncycastle.openpgp.PGPSecretKeyRing;
+import org.bouncycastle.openpgp.PGPSecretKeyRingCollection;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.operator.PBESecretKeyDecryptor;
+import org.bouncycastle.openpgp.operator.bc.BcPBESecretKeyDecryptorBuilder;
+import org.bouncycastle.openpgp.operator.bc.BcPGPDigestCalculatorProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+/**
+ * A private signing key, extracted from a secret key ring. Decoding the key ring and deriving the key from
+ * the passphrase is expensive, so a signing key can be created once and used for any number of builds.
+ * A signing key is immutable and thread safe. See {@link KeyRingCache} for sharing signing keys.
+ */
+public class SigningKey {
+
+    private final PGPPrivateKey privateKey;
+
+    /**
+     * Extracts a signing key from a secret key ring.
+     *
+     * @param privateKeyRing the secret key ring, it is closed afterwards
+     * @param privateKeyId the key id, or null for the first signing key of the key ring
+     * @param privateKeyPassphrase the passphrase of the key
+     * @throws IllegalArgumentException if the key ring can not be read, or has no matching signing key,
+     * or the key can not be extracted with the passphrase
+     */
+    public SigningKey(InputStream privateKeyRing, Long privateKeyId, String privateKeyPassphrase) {
+        PGPSecretKeyRingCollection keyRings = readKeyRing(privateKeyRing);
+        PGPSecretKey secretKey = findMatchingSecretKey(keyRings, privateKeyId);
+        this.privateKey = extractPrivateKey(secretKey, privateKeyPassphrase);
+    }
+
+    public PGPPrivateKey getPrivateKey() {
+        return privateKey;
+    }
+
+    public long getKeyId() {
+        return privateKey.getKeyID();
+    }
+
+    private static PGPSecretKeyRingCollection readKeyRing(InputStream privateKeyRing) {
+        try {
+            try (InputStream decoderStream = PGPUtil.getDecoderStream(new BufferedInputStream(privateKeyRing))) {
+                return new PGPSecretKeyRingCollection(decoderStream, new JcaKeyFingerprintCalculator());
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not read key ring", e);
+        } catch (PGPException e) {
+            throw new IllegalArgumentException("Could not extract key ring", e);
+        }
+    }
+
+    private static PGPSecretKey findMatchingSecretKey(PGPSecretKeyRingCollection keyRings, Long privateKeyId) {
+        Iterator<PGPSecretKeyRing> iter = keyRings.getKeyRings();
+        while (iter.hasNext()) {
+            PGPSecretKeyRing keyRing = iter.next();
+            Iterator<PGPSecretKey> keyIter = keyRing.getSecretKeys();
+            while (keyIter.hasNext()) {
+                PGPSecretKey key = keyIter.next();
+                if (key.isSigningKey() && isMatchingKeyId(key, privateKeyId)) {
+                    return key;
+                }
+            }
+        }
+        throw new IllegalArgumentException("can't find signing key in key rings");
+    }
+
+    private static boolean isMatchingKeyId(PGPSecretKey key, Long privateKeyId) {
+        return privateKeyId == null || Long.toHexString(key.getKeyID()).endsWith(Long.toHexString(privateKeyId));
+    }
+
+    private static PGPPrivateKey extractPrivateKey(PGPSecretKey secretKey, String privateKeyPassphrase) {
+        try {
+            PBESecretKeyDecryptor secretKeyDecryptor =
+                    new BcPBESecretKeyDecryptorBuilder(new BcPGPDigestCalculatorProvider())
+                            .build(privateKeyPassphrase.toCharArray());
+            return secretKey.extractPrivateKey(secretKeyDecryptor);
+        } catch (Exception e) {
+            throw new IllegalArgumentException("could not extract private key from key ring", e);
+        }
+    }
+}
@@ -5,19 +5,28 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import static org.hamcrest.CoreMatchers.*;
+import org.xbib.rpm.exception.RpmException;
 import org.xbib.rpm.format.Flags;
 import org.xbib.rpm.format.Format;
 import org.xbib.rpm.header.HeaderTag;
 import org.xbib.rpm.header.IntegerList;
 import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.io.IoOptions;
 import org.xbib.rpm.lead.Architecture;
 import org.xbib.rpm.lead.Os;
 import org.xbib.rpm.lead.PackageType;
 import org.xbib.rpm.payload.CompressionType;
 import org.xbib.rpm.payload.Directive;
 import org.xbib.rpm.security.HashAlgo;
+import org.xbib.rpm.signature.SignatureTag;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.EnumSet;
 import java.util.List;
 
@@ -221,6 +230,279 @@ public class RpmBuilderTest {
         new RpmReader().readHeader(path);
     }
 
+    @Test
+    public void testStreamingBuild() throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+        rpmBuilder.setStreaming(true);
+        rpmBuilder.setPackage("test-streaming", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.build(getTargetDir());
+        Path path = getTargetDir().resolve("test-streaming-1.0-1.noarch.rpm");
+        RpmReaderResult result = new RpmReader().read(path);
+        Format format = result.getFormat();
+        byte[] bytes = Files.readAllBytes(path);
+        MessageDigest payloadDigest = MessageDigest.getInstance("SHA-256");
+        payloadDigest.update(bytes, format.getHeader().getEndPos(), bytes.length - format.getHeader().getEndPos());
+        assertThat(StringList.of(hex(payloadDigest.digest())),
+                is(format.getHeader().getEntry(HeaderTag.PAYLOADDIGEST).getValues()));
+        MessageDigest headerDigest = MessageDigest.getInstance("SHA-256");
+        headerDigest.update(bytes, format.getHeader().getStartPos(),
+                format.getHeader().getEndPos() - format.getHeader().getStartPos());
+        assertThat(StringList.of(hex(headerDigest.digest())),
+                is(format.getSignatureHeader().getEntry(SignatureTag.SHA256HEADER).getValues()));
+        RpmReaderFile file = result.getFiles().get(result.getFiles().size() - 1);
+        assertEquals("./etc/prein.sh", file.getName());
+        ByteBuffer expected = ByteBuffer.wrap(Files.readAllBytes(Paths.get("src/test/resources/prein.sh")));
+        assertEquals(expected, file.getContents());
+        StringList fileDigests = (StringList) format.getHeader().getEntry(HeaderTag.FILEDIGESTS).getValues();
+        assertEquals(hex(MessageDigest.getInstance("SHA-256").digest(expected.array())),
+                fileDigests.get(fileDigests.size() - 1));
+    }
+
+    @Test
+    public void testLargeFiles() throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+        rpmBuilder.setLargeFiles(true);
+        rpmBuilder.setPackage("test-largefiles", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.addLink("/etc/prein.link", "/etc/prein.sh", 0777);
+        rpmBuilder.build(getTargetDir());
+        Path path = getTargetDir().resolve("test-largefiles-1.0-1.noarch.rpm");
+        RpmReaderResult result = new RpmReader().read(path);
+        Format format = result.getFormat();
+        assertThat(format.getHeader().getEntry(HeaderTag.FILESIZES), nullValue());
+        assertThat(format.getHeader().getEntry(HeaderTag.LONGFILESIZES), notNullValue());
+        StringList require = (StringList) format.getHeader().getEntry(HeaderTag.REQUIRENAME).getValues();
+        assertThat(require, hasItem("rpmlib(LargeFiles)"));
+        assertThat(format.getSignatureHeader().getEntry(SignatureTag.PAYLOADSIZE), nullValue());
+        assertThat(format.getSignatureHeader().getEntry(SignatureTag.LONGARCHIVESIZE), notNullValue());
+        assertThat(format.getSignatureHeader().getEntry(SignatureTag.LONGSIGSIZE), notNullValue());
+        ByteBuffer expected = ByteBuffer.wrap(Files.readAllBytes(Paths.get("src/test/resources/prein.sh")));
+        boolean found = false;
+        for (RpmReaderFile file : result.getFiles()) {
+            if (file.getName().equals("./etc/prein.sh")) {
+                assertEquals(expected, file.getContents());
+                found = true;
+            }
+        }
+        assertThat(found, is(true));
+    }
+
+    @Test
+    public void testParallelCompression() throws Exception {
+        for (CompressionType compressionType : EnumSet.of(CompressionType.GZIP, CompressionType.XZ)) {
+            RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, compressionType);
+            rpmBuilder.setCompressionThreads(4);
+            rpmBuilder.setCompressionBlockSize(16384);
+            rpmBuilder.setPackage("test-parallel-" + compressionType.name().toLowerCase(), "1.0", "1");
+            rpmBuilder.setBuildHost("localhost");
+            rpmBuilder.setLicense("GPL");
+            rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+            rpmBuilder.setType(PackageType.BINARY);
+            Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+            rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                    EnumSet.of(Directive.NONE), "root", "root", true);
+            rpmBuilder.build(getTargetDir());
+            Path path = getTargetDir().resolve("test-parallel-" + compressionType.name().toLowerCase()
+                    + "-1.0-1.noarch.rpm");
+            RpmReaderResult result = new RpmReader().read(path);
+            assertThat(List.of(compressionType.name().toLowerCase()),
+                    is(result.getFormat().getHeader().getEntry(HeaderTag.PAYLOADCOMPRESSOR).getValues()));
+            RpmReaderFile file = result.getFiles().get(result.getFiles().size() - 1);
+            assertEquals("./usr/share/test/test.rpm", file.getName());
+            assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+        }
+    }
+
+    @Test
+    public void testZstdCompression() throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.ZSTD);
+        rpmBuilder.setZstdLevel(19);
+        rpmBuilder.setZstdWindowLog(27);
+        rpmBuilder.setPackage("test-zstd", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+        rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.build(getTargetDir());
+        Path path = getTargetDir().resolve("test-zstd-1.0-1.noarch.rpm");
+        RpmReaderResult result = new RpmReader().read(path);
+        Format format = result.getFormat();
+        assertThat(List.of("zstd"), is(format.getHeader().getEntry(HeaderTag.PAYLOADCOMPRESSOR).getValues()));
+        StringList require = (StringList) format.getHeader().getEntry(HeaderTag.REQUIRENAME).getValues();
+        assertThat(require, hasItem("rpmlib(PayloadIsZstd)"));
+        RpmReaderFile file = result.getFiles().get(result.getFiles().size() - 1);
+        assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+    }
+
+    @Test
+    public void testIoOptions() throws Exception {
+        IoOptions ioOptions = new IoOptions(1000, true, true);
+        Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+        for (boolean streaming : new boolean[] { false, true }) {
+            RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+            rpmBuilder.setIoOptions(ioOptions);
+            rpmBuilder.setStreaming(streaming);
+            rpmBuilder.setDigestParallelism(streaming ? 1 : 2);
+            rpmBuilder.setPackage("test-iooptions", "1.0", streaming ? "2" : "1");
+            rpmBuilder.setBuildHost("localhost");
+            rpmBuilder.setLicense("GPL");
+            rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+            rpmBuilder.setType(PackageType.BINARY);
+            rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                    EnumSet.of(Directive.NONE), "root", "root", true);
+            rpmBuilder.build(getTargetDir());
+            Path path = getTargetDir().resolve("test-iooptions-1.0-" + (streaming ? "2" : "1") + ".noarch.rpm");
+            assertThat(new RpmVerifier().verify(path).isValid(), is(true));
+            RpmReader rpmReader = new RpmReader();
+            rpmReader.setIoOptions(ioOptions);
+            RpmReaderResult result = rpmReader.read(path);
+            StringList digests = (StringList) result.getFormat().getHeader().getEntry(HeaderTag.FILEDIGESTS).getValues();
+            String expected = hex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(source)));
+            assertThat(digests, hasItem(expected));
+            RpmReaderFile file = result.getFiles().get(result.getFiles().size() - 1);
+            assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+        }
+    }
+
+    @Test
+    public void testUncompressedTransfer() throws Exception {
+        Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+        Path script = Paths.get("src/test/resources/prein.sh");
+        for (boolean largeFiles : new boolean[] { false, true }) {
+            String release = largeFiles ? "2" : "1";
+            RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.NONE);
+            rpmBuilder.setLargeFiles(largeFiles);
+            rpmBuilder.setPackage("test-transfer", "1.0", release);
+            rpmBuilder.setBuildHost("localhost");
+            rpmBuilder.setLicense("GPL");
+            rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+            rpmBuilder.setType(PackageType.BINARY);
+            rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                    EnumSet.of(Directive.NONE), "root", "root", true);
+            rpmBuilder.addFile("/etc/prein.sh", script, 493, 493,
+                    EnumSet.of(Directive.NONE), "root", "root", true);
+            rpmBuilder.addLink("/etc/prein.link", "/etc/prein.sh", 0777);
+            rpmBuilder.build(getTargetDir());
+            Path path = getTargetDir().resolve("test-transfer-1.0-" + release + ".noarch.rpm");
+            assertThat(new RpmVerifier().verify(path).isValid(), is(true));
+            RpmReaderResult result = new RpmReader().read(path);
+            Format format = result.getFormat();
+            assertThat(List.of("none"), is(format.getHeader().getEntry(HeaderTag.PAYLOADCOMPRESSOR).getValues()));
+            StringList digests = (StringList) format.getHeader().getEntry(HeaderTag.FILEDIGESTS).getValues();
+            assertThat(digests, hasItem(hex(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(source)))));
+            int found = 0;
+            for (RpmReaderFile file : result.getFiles()) {
+                if (file.getName().equals("./usr/share/test/test.rpm")) {
+                    assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+                    found++;
+                } else if (file.getName().equals("./etc/prein.sh")) {
+                    assertEquals(ByteBuffer.wrap(Files.readAllBytes(script)), file.getContents());
+                    found++;
+                }
+            }
+            assertEquals(2, found);
+        }
+    }
+
+    @Test
+    public void testUncompressedWriteOnlyChannel() throws Exception {
+        Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.NONE);
+        rpmBuilder.setPackage("test-write-only", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        Path path = getTargetDir().resolve("test-write-only-1.0-1.noarch.rpm");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            rpmBuilder.build(channel);
+        }
+        assertThat(new RpmVerifier().verify(path).isValid(), is(true));
+        List<RpmReaderFile> files = new RpmReader().read(path).getFiles();
+        RpmReaderFile file = files.get(files.size() - 1);
+        assertEquals("./usr/share/test/test.rpm", file.getName());
+        assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+    }
+
+    @Test
+    public void testLargePayloadStreaming() throws Exception {
+        Path source = Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm");
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+        rpmBuilder.setMaxBufferedPayloadSize(1024);
+        rpmBuilder.setPackage("test-large-payload", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        Path path = getTargetDir().resolve("test-large-payload-1.0-1.noarch.rpm");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            Assertions.assertThrows(RpmException.class, () -> rpmBuilder.build(channel));
+        }
+        rpmBuilder.build(getTargetDir());
+        assertThat(new RpmVerifier().verify(path).isValid(), is(true));
+        List<RpmReaderFile> files = new RpmReader().read(path).getFiles();
+        assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), files.get(files.size() - 1).getContents());
+    }
+
+    @Test
+    public void testParallelCompressionFailure() throws Exception {
+        Path large = Files.write(getTargetDir().resolve("large.txt"), new byte[100000]);
+        Path source = Files.write(getTargetDir().resolve("vanishing.txt"), new byte[100]);
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+        rpmBuilder.setCompressionThreads(4);
+        rpmBuilder.setCompressionBlockSize(16384);
+        rpmBuilder.setPackage("test-parallel-failure", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/usr/share/test/a.txt", large, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.addFile("/usr/share/test/b.txt", source, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        Files.delete(source);
+        Assertions.assertThrows(IOException.class, () -> rpmBuilder.build(getTargetDir()));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (compressorThreads() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, compressorThreads());
+    }
+
+    private static long compressorThreads() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter(thread -> thread.getName().equals("rpm-compressor") && thread.isAlive())
+                .count();
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
     private Path getTargetDir() {
         return Paths.get("build");
     }
@@ -2,10 +2,26 @@ package org.xbib.rpm;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.fail;
 import org.junit.jupiter.api.Test;
 import org.xbib.rpm.format.Format;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.entry.SpecEntry;
+import org.xbib.rpm.payload.CpioHeader;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,6 +42,26 @@ public class RpmReaderTest {
         rpmReader.read(Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm"));
     }
 
+    @Test
+    public void visitPayload() throws Exception {
+        Path path = Paths.get("src/test/resources/rpm-1-1.0-1.noarch.rpm");
+        List<RpmReaderFile> files = new RpmReader().read(path).getFiles();
+        List<String> names = new ArrayList<>();
+        new RpmReader().read(path, (header, content) -> {
+            RpmReaderFile file = files.get(names.size());
+            names.add(header.getName());
+            if (header.getType() == CpioHeader.FILE && header.getLongFileSize() > 0) {
+                ByteBuffer buffer = ByteBuffer.allocate(1);
+                assertEquals(1, content.read(buffer));
+                assertEquals(file.getContents().get(0), buffer.get(0));
+            }
+        });
+        assertEquals(files.size(), names.size());
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(files.get(i).getName(), names.get(i));
+        }
+    }
+
     @Test
     public void setHeaderStartAndEndPosition() throws Exception {
         Format format = new RpmReader().readHeader(getClass().getResourceAsStream("/rpm-1-1.0-1.noarch.rpm"));
@@ -33,6 +69,56 @@ public class RpmReaderTest {
         assertEquals(4760, format.getHeader().getEndPos());
     }
 
+    @Test
+    public void readMemoryMappedHeader() throws Exception {
+        Path path = Paths.get("src/test/resources/rpm-1-1.0-1.noarch.rpm");
+        RpmReader rpmReader = new RpmReader();
+        rpmReader.setMemoryMapped(true);
+        Format format = rpmReader.readHeader(path);
+        assertEquals(280, format.getHeader().getStartPos());
+        assertEquals(4760, format.getHeader().getEndPos());
+        assertEquals(new RpmReader().readHeader(path).toString(), format.toString());
+    }
+
+    @Test
+    public void readMemoryMappedHeaderFromChannel() throws Exception {
+        Path path = Paths.get("src/test/resources/rpm-1-1.0-1.noarch.rpm");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            Format format = new RpmReader().readHeader(channel);
+            assertEquals(4760, channel.position());
+            assertEquals(new RpmReader().readHeader(path).toString(), format.toString());
+        }
+        Path truncated = Files.createDirectories(Paths.get("build")).resolve("truncated-header.rpm");
+        Files.write(truncated, Arrays.copyOf(Files.readAllBytes(path), 1000));
+        try (FileChannel channel = FileChannel.open(truncated, StandardOpenOption.READ)) {
+            assertThrows(EOFException.class, () -> new RpmReader().readHeader(channel));
+        }
+    }
+
+    @Test
+    public void readHeaderConcurrently() throws Exception {
+        Path path = Paths.get("src/test/resources/rpm-1-1.0-1.noarch.rpm");
+        Format expected = new RpmReader().readHeader(path);
+        Format format = new RpmReader().readHeader(path);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executorService.submit(() -> {
+                    for (HeaderTag tag : HeaderTag.values()) {
+                        SpecEntry<?> entry = expected.getHeader().getEntry(tag);
+                        assertEquals(String.valueOf(entry), String.valueOf(format.getHeader().getEntry(tag)));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
     @Test
     public void fileModesHeaderIsCorrect() throws Exception {
         Format format = new RpmReader().readHeader(getClass().getResourceAsStream("/rpm-1-1.0-1.noarch.rpm"));
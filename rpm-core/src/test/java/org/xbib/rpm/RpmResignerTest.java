@@ -0,0 +1,84 @@
+package org.xbib.rpm;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.bouncycastle.openpgp.PGPPublicKeyRingCollection;
+import org.bouncycastle.openpgp.PGPSignature;
+import org.bouncycastle.openpgp.PGPSignatureList;
+import org.bouncycastle.openpgp.PGPUtil;
+import org.bouncycastle.openpgp.bc.BcPGPObjectFactory;
+import org.bouncycastle.openpgp.operator.bc.BcPGPContentVerifierBuilderProvider;
+import org.bouncycastle.openpgp.operator.jcajce.JcaKeyFingerprintCalculator;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.format.Format;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.signature.SignatureTag;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+
+public class RpmResignerTest {
+
+    @Test
+    public void testResign() throws Exception {
+        Path source = Paths.get("src/test/resources/signing-test-1.0-1.noarch.rpm");
+        Path target = Paths.get("build/signing-test-resigned-1.0-1.noarch.rpm");
+        Files.createDirectories(target.getParent());
+        RpmResigner rpmResigner = new RpmResigner(getClass().getResourceAsStream("/pgp/test-secring.gpg"),
+                null, "test");
+        rpmResigner.resign(source, target);
+        Format original = new RpmReader().readHeader(source);
+        Format resigned = new RpmReader().readHeader(target);
+        assertNull(original.getHeader().getEntry(HeaderTag.PAYLOADDIGEST));
+        assertNotNull(resigned.getSignatureHeader().getEntry(SignatureTag.LEGACY_PGP));
+        assertEquals(original.getSignatureHeader().getEntry(SignatureTag.SHA1HEADER).getValues(),
+                resigned.getSignatureHeader().getEntry(SignatureTag.SHA1HEADER).getValues());
+        byte[] originalBytes = Files.readAllBytes(source);
+        byte[] resignedBytes = Files.readAllBytes(target);
+        int originalStart = original.getHeader().getStartPos();
+        int resignedStart = resigned.getHeader().getStartPos();
+        assertArrayEquals(Arrays.copyOfRange(originalBytes, originalStart, originalBytes.length),
+                Arrays.copyOfRange(resignedBytes, resignedStart, resignedBytes.length));
+        assertNotNull(resigned.getSignatureHeader().getEntry(SignatureTag.RSAHEADER));
+        byte[] encoded = (byte[]) resigned.getSignatureHeader().getEntry(SignatureTag.RSAHEADER).getValues();
+        PGPSignature signature = ((PGPSignatureList) new BcPGPObjectFactory(encoded).nextObject()).get(0);
+        try (InputStream inputStream = PGPUtil.getDecoderStream(getClass().getResourceAsStream("/pgp/test-pubring.gpg"))) {
+            PGPPublicKeyRingCollection publicKeys =
+                    new PGPPublicKeyRingCollection(inputStream, new JcaKeyFingerprintCalculator());
+            signature.init(new BcPGPContentVerifierBuilderProvider(), publicKeys.getPublicKey(signature.getKeyID()));
+        }
+        signature.update(resignedBytes, resignedStart, resigned.getHeader().getEndPos() - resignedStart);
+        assertTrue(signature.verify());
+        assertEquals(new RpmReader().read(source).getFiles().size(), new RpmReader().read(target).getFiles().size());
+        RpmVerifierResult result = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg")).verify(target);
+        assertEquals(RpmVerifierResult.Status.OK, result.getStatus(RpmVerifierResult.Check.HEADER_SIGNATURE));
+        assertEquals(RpmVerifierResult.Status.OK, result.getStatus(RpmVerifierResult.Check.HEADER_AND_PAYLOAD_SIGNATURE));
+    }
+
+    @Test
+    public void testResignInPlace() throws Exception {
+        Path path = Paths.get("build/signing-test-in-place-1.0-1.noarch.rpm");
+        Files.createDirectories(path.getParent());
+        Files.copy(Paths.get("src/test/resources/signing-test-1.0-1.noarch.rpm"), path,
+                StandardCopyOption.REPLACE_EXISTING);
+        boolean posix = Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class);
+        if (posix) {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString("rw-r--r--"));
+        }
+        RpmResigner rpmResigner = new RpmResigner(getClass().getResourceAsStream("/pgp/test-secring.gpg"),
+                null, "test");
+        rpmResigner.resign(path);
+        assertNotNull(new RpmReader().readHeader(path).getSignatureHeader().getEntry(SignatureTag.RSAHEADER));
+        if (posix) {
+            assertEquals(PosixFilePermissions.fromString("rw-r--r--"), Files.getPosixFilePermissions(path));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.xbib.rpm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.format.Format;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.Contents;
+import org.xbib.rpm.payload.CpioHeader;
+import org.xbib.rpm.payload.Directive;
+import org.xbib.rpm.security.HashAlgo;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ *
+ */
+public class RpmTemplateTest {
+
+    private static final String CHANGELOG = "* Tue Feb 24 2015 Thomas Jefferson\n- Initial rpm for this package\n";
+
+    @Test
+    public void testConcurrentBuilds() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/template"));
+        RpmBuilder rpmBuilder = new RpmBuilder();
+        rpmBuilder.setPackage("tenant", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.setPreInstall("echo pre");
+        rpmBuilder.addDependencyMore("httpd", "2.4");
+        rpmBuilder.addChangelog(CHANGELOG);
+        rpmBuilder.setPrivateKeyRing(getClass().getResourceAsStream("/pgp/test-secring.gpg"));
+        rpmBuilder.setPrivateKeyPassphrase("test");
+        rpmBuilder.addFile("/etc/tenant/test.txt", Paths.get("src/test/resources/test.txt"), 0644, 0755,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        RpmTemplate template = new RpmTemplate(rpmBuilder);
+        // changes of the builder after the template has been created are not seen by the template
+        rpmBuilder.addChangelog(CHANGELOG);
+        rpmBuilder.setSummary("not in the template");
+        int count = 8;
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                int release = i;
+                futures.add(executorService.submit(() -> {
+                    Path config = directory.resolve("tenant-" + release + ".conf");
+                    Files.write(config, ("tenant=" + release + "\n").getBytes(StandardCharsets.UTF_8));
+                    RpmBuilder builder = template.newBuilder();
+                    builder.setPackage("tenant", "1.0", String.valueOf(release));
+                    if (release % 2 == 0) {
+                        builder.setDigestParallelism(2);
+                    }
+                    builder.addFile("/etc/tenant/tenant.conf", config, 0600, 0755,
+                            EnumSet.of(Directive.CONFIG), "root", "root", true);
+                    builder.build(directory);
+                    return directory.resolve(builder.getPackageName());
+                }));
+            }
+            RpmVerifier rpmVerifier = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg"));
+            for (int i = 0; i < count; i++) {
+                Path path = futures.get(i).get();
+                assertEquals("tenant-1.0-" + i + ".noarch.rpm", path.getFileName().toString());
+                RpmVerifierResult result = rpmVerifier.verify(path);
+                assertTrue(result.isValid(), result.toString());
+                Format format = new RpmReader().readFormat(path);
+                assertEquals(StringList.of(String.valueOf(i)), format.getHeader().getEntry(HeaderTag.RELEASE).getValues());
+                assertEquals(1, ((StringList) format.getHeader().getEntry(HeaderTag.CHANGELOGNAME).getValues()).size());
+                assertNull(format.getHeader().getEntry(HeaderTag.SUMMARY));
+                assertNotNull(format.getHeader().getEntry(HeaderTag.PREINSCRIPT));
+                assertTrue(((StringList) format.getHeader().getEntry(HeaderTag.REQUIRENAME).getValues()).contains("httpd"));
+                List<String> names = new ArrayList<>();
+                for (RpmReaderFile file : new RpmReader().read(path).getFiles()) {
+                    names.add(file.getName());
+                }
+                assertEquals(List.of("./etc/tenant", "./etc/tenant/tenant.conf", "./etc/tenant/test.txt"), names);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testPrecomputedDigests() throws Exception {
+        Contents contents = new Contents();
+        contents.addFile("/test/test.txt", Paths.get("src/test/resources/test.txt"),
+                -1, -1, null, null, null, 0, 0, true, -1);
+        contents.precomputeDigests(HashAlgo.SHA256, 1);
+        Contents copy = new Contents(contents);
+        copy.addFile("/test/prein.sh", Paths.get("src/test/resources/prein.sh"),
+                -1, -1, null, null, null, 0, 0, true, -1);
+        assertEquals(2, contents.size());
+        assertEquals(3, copy.size());
+        CpioHeader header = null;
+        for (CpioHeader h : copy.headers()) {
+            if (h.getName().equals("/test/test.txt")) {
+                header = h;
+            }
+        }
+        assertNotNull(header);
+        assertEquals(contents.getDigests(HashAlgo.SHA256).get(1), copy.getPrecomputedDigest(header, HashAlgo.SHA256));
+        assertNull(copy.getPrecomputedDigest(header, HashAlgo.SHA1));
+        Contents fresh = new Contents();
+        fresh.addFile("/test/test.txt", Paths.get("src/test/resources/test.txt"),
+                -1, -1, null, null, null, 0, 0, true, -1);
+        fresh.addFile("/test/prein.sh", Paths.get("src/test/resources/prein.sh"),
+                -1, -1, null, null, null, 0, 0, true, -1);
+        assertEquals(fresh.getDigests(HashAlgo.SHA256), copy.getDigests(HashAlgo.SHA256));
+    }
+}
@@ -0,0 +1,96 @@
+package org.xbib.rpm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.RpmVerifierResult.Check;
+import org.xbib.rpm.RpmVerifierResult.Status;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.Directive;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+public class RpmVerifierTest {
+
+    @Test
+    public void testVerify() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/verifier"));
+        Path path = buildSigned(directory);
+        RpmVerifier rpmVerifier = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg"));
+        RpmVerifierResult result = rpmVerifier.verify(path);
+        assertTrue(result.isValid(), result.toString());
+        for (Check check : Check.values()) {
+            assertEquals(Status.OK, result.getStatus(check), check.name());
+        }
+    }
+
+    @Test
+    public void testVerifyWithoutKey() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/verifier"));
+        Path path = buildSigned(directory);
+        RpmVerifierResult result = new RpmVerifier().verify(path);
+        assertFalse(result.isValid());
+        assertEquals(Status.OK, result.getStatus(Check.SHA256HEADER));
+        assertEquals(Status.NOKEY, result.getStatus(Check.HEADER_SIGNATURE));
+    }
+
+    @Test
+    public void testVerifyAll() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/verifier-all"));
+        Path path = buildSigned(directory);
+        byte[] bytes = Files.readAllBytes(path);
+        bytes[bytes.length - 100] ^= 1;
+        Files.write(directory.resolve("corrupt.rpm"), bytes);
+        Files.write(directory.resolve("truncated.rpm"), new byte[100]);
+        RpmVerifier rpmVerifier = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg"));
+        List<RpmVerifierResult> results = rpmVerifier.verifyAll(directory, 4);
+        assertEquals(3, results.size());
+        RpmVerifierResult corrupt = results.get(0);
+        assertEquals(Status.OK, corrupt.getStatus(Check.HEADER_SIGNATURE));
+        assertEquals(Status.BAD, corrupt.getStatus(Check.PAYLOADDIGEST));
+        assertEquals(Status.BAD, corrupt.getStatus(Check.MD5));
+        assertEquals(Status.BAD, corrupt.getStatus(Check.HEADER_AND_PAYLOAD_SIGNATURE));
+        assertNotNull(results.get(1).getException());
+        assertFalse(results.get(1).isValid());
+        assertTrue(results.get(2).isValid(), results.get(2).toString());
+    }
+
+    @Test
+    public void testVerifyAllTruncated() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/verifier-truncated"));
+        Path path = buildSigned(directory);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(directory.resolve("truncated.rpm"), Arrays.copyOf(bytes, 200));
+        RpmVerifier rpmVerifier = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg"));
+        for (int parallelism : new int[] { 1, 4 }) {
+            List<RpmVerifierResult> results = rpmVerifier.verifyAll(directory, parallelism);
+            assertEquals(2, results.size());
+            assertNotNull(results.get(0).getException());
+            assertFalse(results.get(0).isValid());
+            assertTrue(results.get(1).isValid(), results.get(1).toString());
+        }
+    }
+
+    private Path buildSigned(Path directory) throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder();
+        rpmBuilder.setPackage("verifier-test", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.setPrivateKeyRing(getClass().getResourceAsStream("/pgp/test-secring.gpg"));
+        rpmBuilder.setPrivateKeyPassphrase("test");
+        rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.build(directory);
+        return directory.resolve("verifier-test-1.0-1.noarch.rpm");
+    }
+}
@@ -1,6 +1,9 @@
 package org.xbib.rpm.header;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import org.junit.jupiter.api.Test;
 import org.xbib.rpm.header.entry.BinSpecEntry;
 import org.xbib.rpm.header.entry.I18NStringSpecEntry;
@@ -11,8 +14,14 @@ import org.xbib.rpm.header.entry.Int8SpecEntry;
 import org.xbib.rpm.header.entry.SpecEntry;
 import org.xbib.rpm.header.entry.StringListSpecEntry;
 import org.xbib.rpm.header.entry.StringSpecEntry;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  *
@@ -271,4 +280,141 @@ public class HeaderTest {
         buffer.flip();
         assertEquals(buffer, data);
     }
+
+    @Test
+    public void testLazyEntries() throws Exception {
+        Header header = new Header();
+        header.createEntry(HeaderTag.NAME, "test");
+        header.createEntry(HeaderTag.EPOCH, 1);
+        header.createEntry(HeaderTag.BASENAMES, StringList.of("a", "b", "c"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(Channels.newChannel(out));
+        Header read = new Header();
+        assertEquals(3, read.read(ByteBuffer.wrap(out.toByteArray())));
+        SpecEntry<?> name = read.getEntry(HeaderTag.NAME);
+        assertEquals(StringList.of("test"), name.getValues());
+        assertSame(name, read.getEntry(HeaderTag.NAME));
+        assertNull(read.getEntry(HeaderTag.VERSION));
+        assertEquals(StringList.of("a", "b", "c"), read.getEntry(HeaderTag.BASENAMES).getValues());
+        assertEquals(3, read.count());
+        assertEquals(IntegerList.of(1), read.getEntries().get(HeaderTag.EPOCH.getCode()).getValues());
+    }
+
+    @Test
+    public void testStringNonAscii() {
+        StringList values = StringList.of("ascii", "n\u00e4me", "\ud83d\ude00", "\ud800x");
+        SpecEntry<StringList> entry = new StringListSpecEntry();
+        entry.setCount(values.size());
+        entry.setValues(values);
+        ByteBuffer expected = ByteBuffer.allocate(64);
+        for (String value : values) {
+            expected.put(StandardCharsets.UTF_8.encode(value)).put((byte) 0);
+        }
+        expected.flip();
+        assertEquals(expected.remaining(), entry.size());
+        ByteBuffer data = ByteBuffer.allocate(entry.size());
+        entry.write(data);
+        data.flip();
+        assertEquals(expected, data);
+    }
+
+    @Test
+    public void testWriteAlignment() throws Exception {
+        Header header = new Header();
+        header.createEntry(HeaderTag.HEADERI18NTABLE, "C");
+        header.createEntry(HeaderTag.NAME, "odd");
+        header.createEntry(HeaderTag.FILEMODES, ShortList.of((short) 1, (short) 2, (short) 3));
+        header.createEntry(HeaderTag.DIRINDEXES, IntegerList.of(1, 2, 3));
+        header.createEntry(HeaderTag.LONGFILESIZES, LongList.of(1L, 1L << 40));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(0, header.write(Channels.newChannel(out)));
+        ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray());
+        int count = bytes.getInt(8);
+        int total = bytes.getInt(12);
+        assertEquals(5, count);
+        assertEquals(16 + count * 16 + total, bytes.remaining());
+        for (int i = 0; i < count; i++) {
+            int type = bytes.getInt(16 + i * 16 + 4);
+            int offset = bytes.getInt(16 + i * 16 + 8);
+            int alignment = type == EntryType.INT16_ENTRY ? 2 : type == EntryType.INT32_ENTRY ? 4 :
+                    type == EntryType.INT64_ENTRY ? 8 : 1;
+            assertEquals(0, offset % alignment);
+        }
+        assertEquals(HeaderTag.HEADERI18NTABLE.getCode(), bytes.getInt(16));
+        Header read = new Header();
+        read.read(bytes.duplicate());
+        assertEquals(StringList.of("odd"), read.getEntry(HeaderTag.NAME).getValues());
+        assertEquals(ShortList.of((short) 1, (short) 2, (short) 3), read.getEntry(HeaderTag.FILEMODES).getValues());
+        assertEquals(IntegerList.of(1, 2, 3), read.getEntry(HeaderTag.DIRINDEXES).getValues());
+        assertEquals(LongList.of(1L, 1L << 40), read.getEntry(HeaderTag.LONGFILESIZES).getValues());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testWriteSizeMismatch() {
+        Header header = new Header();
+        header.createEntry(HeaderTag.HEADERI18NTABLE, "C");
+        SpecEntry<byte[]> entry = (SpecEntry<byte[]>) header.addEntry(HeaderTag.SOURCEPKGID, 4);
+        entry.setValues(new byte[6]);
+        assertThrows(IllegalStateException.class,
+                () -> header.write(Channels.newChannel(new ByteArrayOutputStream())));
+    }
+
+    @Test
+    public void testInt16AndInt64WriteCount() {
+        SpecEntry<ShortList> shorts = new Int16SpecEntry();
+        shorts.setCount(2);
+        shorts.setValues(ShortList.of((short) 1, (short) 2, (short) 3));
+        ByteBuffer data = ByteBuffer.allocate(shorts.size());
+        shorts.write(data);
+        assertEquals(4, data.position());
+        SpecEntry<LongList> longs = new Int64SpecEntry();
+        longs.setCount(1);
+        longs.setValues(LongList.of(1L, 2L));
+        data = ByteBuffer.allocate(longs.size());
+        longs.write(data);
+        assertEquals(8, data.position());
+    }
+
+    @Test
+    public void testPrimitiveListsLikeArrayList() throws Exception {
+        IntegerList integers = IntegerList.of(1, 2, 3);
+        integers.ensureCapacity(100);
+        integers.trimToSize();
+        IntegerList clone = integers.clone();
+        clone.setInt(0, 4);
+        assertEquals(IntegerList.of(1, 2, 3), integers);
+        assertEquals(IntegerList.of(4, 2, 3), clone);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(integers);
+            out.writeObject(ShortList.of((short) 1));
+            out.writeObject(LongList.of(1L << 40));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            assertEquals(integers, in.readObject());
+            assertEquals(ShortList.of((short) 1), in.readObject());
+            assertEquals(LongList.of(1L << 40), in.readObject());
+        }
+        assertEquals(ShortList.of((short) 1, (short) 2), ShortList.of((short) 1, (short) 2).clone());
+        assertEquals(LongList.of(1L, 2L), LongList.of(1L, 2L).clone());
+    }
+
+    @Test
+    public void testPrimitiveLists() {
+        IntegerList integers = new IntegerList(1);
+        for (int i = 0; i < 100; i++) {
+            integers.add(i);
+        }
+        integers.add(0, -1);
+        assertEquals(101, integers.size());
+        assertEquals(-1, integers.getInt(0));
+        assertEquals(Integer.valueOf(99), integers.remove(100));
+        assertEquals(List.of(-1, 0, 1), integers.subList(0, 3));
+        ByteBuffer buffer = ByteBuffer.allocate(integers.size() * 4);
+        integers.write(buffer.asIntBuffer(), integers.size());
+        assertEquals(integers, IntegerList.read(buffer.asIntBuffer(), integers.size()));
+        assertEquals(List.of((short) 1, (short) 2), ShortList.of((short) 1, (short) 2));
+        assertEquals(List.of(1L, 2L), LongList.of(1L, 2L));
+    }
 }
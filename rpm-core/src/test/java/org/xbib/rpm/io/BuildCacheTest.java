@@ -0,0 +1,107 @@
+package org.xbib.rpm.io;
+
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.RpmReader;
+import org.xbib.rpm.RpmReaderFile;
+import org.xbib.rpm.RpmReaderResult;
+import org.xbib.rpm.RpmVerifier;
+import org.xbib.rpm.header.HeaderTag;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.CompressionType;
+import org.xbib.rpm.payload.Directive;
+import org.xbib.rpm.security.HashAlgo;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+public class BuildCacheTest {
+
+    @Test
+    public void testDigests() throws Exception {
+        BuildCache buildCache = new BuildCache(emptyDirectory("build/build-cache-digests"));
+        Path path = Files.write(Paths.get("build/build-cache-digests.txt"), new byte[] { 1, 2, 3 });
+        String key = BuildCache.digestKey(path, "SHA-256");
+        assertThat(buildCache.getDigest(key), nullValue());
+        buildCache.putDigest(key, "0123");
+        assertEquals("0123", buildCache.getDigest(BuildCache.digestKey(path, "SHA-256")));
+        assertThat(buildCache.getDigest(BuildCache.digestKey(path, "MD5")), nullValue());
+        Files.setLastModifiedTime(path, FileTime.fromMillis(Files.getLastModifiedTime(path).toMillis() - 10000L));
+        assertThat(buildCache.getDigest(BuildCache.digestKey(path, "SHA-256")), nullValue());
+    }
+
+    @Test
+    public void testCachedBuild() throws Exception {
+        Path directory = emptyDirectory("build/build-cache");
+        BuildCache buildCache = new BuildCache(directory);
+        Path source = Files.copy(Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm"),
+                Paths.get("build/build-cache-source.rpm"), StandardCopyOption.REPLACE_EXISTING);
+        Path first = build(buildCache, source, "1");
+        long blocks = count(directory.resolve("blocks"));
+        assertThat(blocks > 1, is(true));
+        Path second = build(buildCache, source, "2");
+        assertEquals(blocks, count(directory.resolve("blocks")));
+        RpmVerifier rpmVerifier = new RpmVerifier();
+        assertThat(rpmVerifier.verify(first).isValid(), is(true));
+        assertThat(rpmVerifier.verify(second).isValid(), is(true));
+        RpmReaderResult result = new RpmReader().read(second);
+        RpmReaderFile file = result.getFiles().get(result.getFiles().size() - 1);
+        assertEquals(ByteBuffer.wrap(Files.readAllBytes(source)), file.getContents());
+        // the digest of an unchanged file is never computed again
+        String cached = "ab".repeat(32);
+        buildCache.putDigest(BuildCache.digestKey(source, HashAlgo.SHA256.algo()), cached);
+        Path third = build(buildCache, source, "3");
+        StringList digests = (StringList) new RpmReader().readHeader(third).getHeader()
+                .getEntry(HeaderTag.FILEDIGESTS).getValues();
+        assertThat(digests, hasItem(cached));
+    }
+
+    private static Path build(BuildCache buildCache, Path source, String release) throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, CompressionType.GZIP);
+        rpmBuilder.setBuildCache(buildCache);
+        rpmBuilder.setCompressionThreads(2);
+        rpmBuilder.setCompressionBlockSize(16384);
+        rpmBuilder.setPackage("build-cache-test", "1.0", release);
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.addFile("/usr/share/test/test.rpm", source, 420, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        Path directory = Paths.get("build");
+        rpmBuilder.build(directory);
+        return directory.resolve("build-cache-test-1.0-" + release + ".noarch.rpm");
+    }
+
+    private static Path emptyDirectory(String name) throws Exception {
+        Path directory = Paths.get(name);
+        if (Files.exists(directory)) {
+            try (Stream<Path> stream = Files.walk(directory)) {
+                stream.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+        return Files.createDirectories(directory);
+    }
+
+    private static long count(Path directory) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(Files::isRegularFile).count();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package org.xbib.rpm.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.Random;
+
+public class ChannelWrapperTest {
+
+    @Test
+    public void testReadDigests() throws Exception {
+        byte[] bytes = new byte[100000];
+        new Random(42).nextBytes(bytes);
+        for (ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(4096), ByteBuffer.allocateDirect(65536) }) {
+            ReadableChannelWrapper input =
+                    new ReadableChannelWrapper(Channels.newChannel(new ByteArrayInputStream(bytes)));
+            ChannelWrapper.Key<Integer> count = input.startCount();
+            ChannelWrapper.Key<byte[]> md5 = input.startDigest(MessageDigest.getInstance("MD5"));
+            ChannelWrapper.Key<byte[]> sha256 = input.startDigest(MessageDigest.getInstance("SHA-256"));
+            while (input.read(buffer) != -1) {
+                // the consumers see each byte once, also if the buffer is not cleared after each read
+                if (!buffer.hasRemaining()) {
+                    buffer.clear();
+                }
+            }
+            assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(bytes), input.finish(sha256));
+            assertEquals(bytes.length, (int) input.finish(count));
+            assertArrayEquals(MessageDigest.getInstance("MD5").digest(bytes), input.finish(md5));
+            input.close();
+        }
+    }
+
+    @Test
+    public void testPartialWrites() throws Exception {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(outputStream);
+        WritableChannelWrapper output = new WritableChannelWrapper(new WritableByteChannel() {
+            @Override
+            public int write(ByteBuffer buffer) throws IOException {
+                ByteBuffer slice = buffer.slice();
+                slice.limit(Math.min(slice.limit(), 7));
+                int written = channel.write(slice);
+                buffer.position(buffer.position() + written);
+                return written;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return true;
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+        ChannelWrapper.Key<byte[]> sha1 = output.startDigest(MessageDigest.getInstance("SHA-1"));
+        ChannelWrapper.Key<Long> count = output.startLongCount();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1000);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) buffer.position());
+        }
+        buffer.flip();
+        ChannelWrapper.empty(output, buffer);
+        assertEquals(1000L, (long) output.finish(count));
+        assertArrayEquals(MessageDigest.getInstance("SHA-1").digest(outputStream.toByteArray()), output.finish(sha1));
+        assertEquals(1000, outputStream.size());
+    }
+}
@@ -0,0 +1,109 @@
+package org.xbib.rpm.metrics;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.CompressionType;
+import org.xbib.rpm.payload.Directive;
+import org.xbib.rpm.security.HashAlgo;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import javax.management.ObjectName;
+
+public class BuildMetricsTest {
+
+    @Test
+    public void testBuildMetrics() throws Exception {
+        List<BuildMetrics> finished = new ArrayList<>();
+        RpmBuildListener listener = new RpmBuildListener() {
+            @Override
+            public void buildFinished(BuildMetrics metrics) {
+                finished.add(metrics);
+            }
+        };
+        RpmBuilder rpmBuilder = createBuilder(CompressionType.GZIP);
+        rpmBuilder.setDigestParallelism(2);
+        rpmBuilder.setBuildListener(listener);
+        Path directory = Paths.get("build");
+        rpmBuilder.build(directory);
+        assertEquals(1, finished.size());
+        BuildMetrics metrics = finished.get(0);
+        assertEquals("metrics-test-1.0-1", metrics.getPackageName());
+        // the files and the parent directory which has been created for them
+        assertEquals(3, metrics.getFileCount());
+        assertEquals(Files.size(directory.resolve("metrics-test-1.0-1.noarch.rpm")), metrics.getPackageSize());
+        assertThat(metrics.getPayloadSize() > metrics.getCompressedPayloadSize(), is(true));
+        assertThat(metrics.getNanos(BuildPhase.PAYLOAD) > 0, is(true));
+        assertThat(metrics.getNanos(BuildPhase.COMPRESSION) > 0, is(true));
+        assertThat(metrics.getNanos(BuildPhase.HEADER) > 0, is(true));
+        assertThat(metrics.getNanos(BuildPhase.SIGNATURE) > 0, is(true));
+        assertThat(metrics.getTotalNanos() >= metrics.getNanos(BuildPhase.PAYLOAD), is(true));
+        // both files are digested in a separate pass and written to the payload
+        assertEquals(4, metrics.getSlowFiles().size());
+        assertThat(metrics.toString(), notNullValue());
+    }
+
+    @Test
+    public void testStreamingBuildMetrics() throws Exception {
+        List<BuildMetrics> finished = new ArrayList<>();
+        RpmBuilder rpmBuilder = createBuilder(CompressionType.NONE);
+        rpmBuilder.setBuildListener(new RpmBuildListener() {
+            @Override
+            public void buildFinished(BuildMetrics metrics) {
+                finished.add(metrics);
+            }
+        });
+        Path directory = Paths.get("build");
+        rpmBuilder.build(directory);
+        BuildMetrics metrics = finished.get(0);
+        assertEquals(Files.size(directory.resolve("metrics-test-1.0-1.noarch.rpm")), metrics.getPackageSize());
+        assertEquals(metrics.getPayloadSize(), metrics.getCompressedPayloadSize());
+        assertThat(metrics.getNanos(BuildPhase.DIGESTS) > 0, is(true));
+        assertThat(metrics.getBytes(BuildPhase.DIGESTS) > 0, is(true));
+        assertEquals(0L, metrics.getNanos(BuildPhase.COMPRESSION));
+    }
+
+    @Test
+    public void testJmxBuildListener() throws Exception {
+        JmxBuildListener jmxBuildListener = new JmxBuildListener().register();
+        try {
+            ObjectName objectName = new ObjectName(JmxBuildListener.OBJECT_NAME);
+            RpmBuilder rpmBuilder = createBuilder(CompressionType.GZIP);
+            rpmBuilder.setBuildListener(jmxBuildListener);
+            rpmBuilder.build(Paths.get("build"));
+            rpmBuilder = createBuilder(CompressionType.GZIP);
+            rpmBuilder.setBuildListener(jmxBuildListener);
+            rpmBuilder.build(Paths.get("build"));
+            assertEquals(2L, ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Builds"));
+            assertEquals(6L, jmxBuildListener.getFiles());
+            assertThat(jmxBuildListener.getPhaseMillis().containsKey("PAYLOAD"), is(true));
+        } finally {
+            jmxBuildListener.unregister();
+        }
+    }
+
+    private static RpmBuilder createBuilder(CompressionType compressionType) throws Exception {
+        RpmBuilder rpmBuilder = new RpmBuilder(HashAlgo.SHA256, compressionType);
+        rpmBuilder.setPackage("metrics-test", "1.0", "1");
+        rpmBuilder.setBuildHost("localhost");
+        rpmBuilder.setLicense("GPL");
+        rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+        rpmBuilder.setType(PackageType.BINARY);
+        rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                EnumSet.of(Directive.NONE), "root", "root", true);
+        rpmBuilder.addFile("/usr/share/test/test.rpm", Paths.get("src/test/resources/rpm-3-1.0-1.somearch.rpm"),
+                420, 493, EnumSet.of(Directive.NONE), "root", "root", true);
+        return rpmBuilder;
+    }
+}
@@ -0,0 +1,4 @@
+/**
+ *
+ */
+package org.xbib.rpm.metrics;
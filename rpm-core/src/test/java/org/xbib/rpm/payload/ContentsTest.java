@@ -5,7 +5,10 @@ import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.xbib.rpm.payload.CpioHeader.DIR;
 import org.junit.jupiter.api.Test;
+import org.xbib.rpm.header.StringList;
+import org.xbib.rpm.security.HashAlgo;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.EnumSet;
@@ -104,6 +107,91 @@ public class ContentsTest {
         assertThat(DIR, is(header.type));
     }
 
+    @Test
+    public void testParallelDigests() throws Exception {
+        Contents contents = new Contents();
+        String[] names = {"postin.sh", "postun.sh", "prein.sh", "preun.sh", "test.txt"};
+        for (String name : names) {
+            contents.addFile("/test/" + name, Paths.get("src/test/resources/" + name),
+                    -1, -1, null, null, null, 0, 0, true, -1);
+        }
+        contents.addLink("/test/link", "/test/test.txt", -1, null, null, 0, 0, true);
+        StringList digests = contents.getDigests(HashAlgo.SHA256);
+        assertEquals(names.length + 2, digests.size());
+        assertThat(contents.getDigests(HashAlgo.SHA256, 4), is(digests));
+    }
+
+    @Test
+    public void testFileTable() throws Exception {
+        Contents contents = new Contents();
+        String[] names = {"postin.sh", "prein.sh", "test.txt"};
+        for (String name : names) {
+            contents.addFile("/test/" + name, Paths.get("src/test/resources/" + name),
+                    -1, -1, null, "user", "group", 0, 0, true, -1);
+        }
+        contents.addLink("/test/sub/link", "/test/test.txt", -1, "user", "group", 0, 0, true);
+        contents.addDirectory("top", -1, null, null, null, 0, 0, true);
+        FileTable fileTable = contents.getFileTable();
+        assertEquals(7, fileTable.size());
+        assertEquals(StringList.of("/", "/test/", "/test/sub/"), fileTable.getDirNames());
+        assertEquals(List.of(0, 1, 1, 1, 2, 1, 0), fileTable.getDirIndexes());
+        assertEquals(StringList.of("test", "postin.sh", "prein.sh", "sub", "link", "test.txt", "top"),
+                fileTable.getBaseNames());
+        assertEquals(Files.size(Paths.get("src/test/resources/test.txt")), fileTable.getLongSizes().getLong(5));
+        assertEquals(4096L, fileTable.getLongSizes().getLong(0));
+        assertEquals(14L, fileTable.getLongSizes().getLong(4));
+        assertEquals("/test/test.txt", fileTable.getLinkTos().get(4));
+        assertThat(fileTable.getUsers().get(1) == fileTable.getUsers().get(2), is(true));
+        assertEquals("root", fileTable.getUsers().get(6));
+        long total = 0;
+        for (String name : names) {
+            total += Files.size(Paths.get("src/test/resources/" + name));
+        }
+        assertEquals(total, contents.getLongTotalSize());
+        assertThat(contents.getFileTable() == fileTable, is(true));
+        contents.addDirectory("/other", -1, null, null, null, 0, 0, true);
+        assertEquals(8, contents.getFileTable().size());
+    }
+
+    @Test
+    public void testHeadersOrderedByName() {
+        Contents contents = new Contents();
+        String[] names = {"/opt/a/b", "/opt/a.b", "/opt/a-1/c", "/opt/a", "/opt/b", "rel/x", "/opt/a/b/c"};
+        for (String name : names) {
+            contents.addLink(name, "/target", -1, null, null, 0, 0, true);
+        }
+        List<String> list = new ArrayList<>();
+        for (CpioHeader header : contents.headers()) {
+            list.add(header.getName());
+        }
+        assertEquals(List.of("/opt/a", "/opt/a-1", "/opt/a-1/c", "/opt/a.b", "/opt/a/b", "/opt/a/b/c",
+                "/opt/b", "rel", "rel/x"), list);
+        assertEquals(list.size(), contents.size());
+    }
+
+    @Test
+    public void testDuplicates() {
+        Contents contents = new Contents();
+        contents.addDirectory("/opt/test", -1, null, null, null, 0, 0, true);
+        contents.addDirectory("/opt/test/", -1, null, null, null, 0, 0, true);
+        contents.addDirectory("/opt//test", -1, null, null, null, 0, 0, true);
+        contents.addLink("/opt/test/link", "/target", -1, null, null, 0, 0, true);
+        contents.addLink("/opt/test/link", "/other", -1, null, null, 0, 0, true);
+        assertEquals(2, contents.size());
+    }
+
+    @Test
+    public void testParentsBelowBuiltin() {
+        Contents contents = new Contents();
+        contents.addLocalBuiltinDirectory("/srv/www");
+        contents.addLink("/srv/www/site/index.html", "/target", -1, null, null, 0, 0, true);
+        List<String> list = new ArrayList<>();
+        for (CpioHeader header : contents.headers()) {
+            list.add(header.getName());
+        }
+        assertEquals(List.of("/srv/www/site", "/srv/www/site/index.html"), list);
+    }
+
     private void addDirectoryWithParents(Contents contents, String path) {
         contents.addDirectory(path, 0,
                 EnumSet.of(Directive.NONE), null, null, 0,0, true);
@@ -0,0 +1,98 @@
+package org.xbib.rpm.payload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ *
+ */
+public class CpioHeaderTest {
+
+    @Test
+    public void testAsciiName() throws IOException {
+        for (int total = 0; total < 4; total++) {
+            assertRoundTrip("./usr/share/test/test.txt", total);
+        }
+    }
+
+    @Test
+    public void testNonAsciiName() throws IOException {
+        for (int total = 0; total < 4; total++) {
+            assertRoundTrip("./usr/share/test/n\u00e4me-\u65e5\u672c-\ud83d\ude00.txt", total);
+        }
+    }
+
+    @Test
+    public void testInvalidHexDigit() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        newHeader("./test").write(Channels.newChannel(out), 0);
+        byte[] bytes = out.toByteArray();
+        // the first digit of the inode, after the six characters of the magic
+        bytes[6] = 'g';
+        CpioHeader header = new CpioHeader();
+        assertThrows(IllegalStateException.class,
+                () -> header.read(Channels.newChannel(new ByteArrayInputStream(bytes)), 0));
+    }
+
+    @SuppressWarnings("deprecation")
+    @Test
+    public void testLargeFileSize() throws IOException {
+        CpioHeader header = newHeader("./large");
+        header.setFileSize(3L * 1024 * 1024 * 1024);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        header.write(Channels.newChannel(out), 0);
+        CpioHeader read = new CpioHeader();
+        read.read(Channels.newChannel(new ByteArrayInputStream(out.toByteArray())), 0);
+        assertEquals(3L * 1024 * 1024 * 1024, read.getLongFileSize());
+        assertThrows(IllegalStateException.class, read::getFileSize);
+        read.setFileSize(Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, read.getFileSize());
+    }
+
+    /**
+     * Writes the padding up to the next 4 byte boundary and a header after it, and reads them back.
+     */
+    private static void assertRoundTrip(String name, int total) throws IOException {
+        CpioHeader header = newHeader(name);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        WritableByteChannel channel = Channels.newChannel(out);
+        int skipped = header.skip(channel, total);
+        assertEquals((4 - total % 4) % 4, skipped);
+        assertEquals(skipped, out.size());
+        int written = header.write(channel, total + skipped);
+        assertEquals(0, written % 4);
+        assertEquals(written - total, out.size());
+        byte[] bytes = out.toByteArray();
+        for (int i = 0; i < skipped; i++) {
+            assertEquals(0, bytes[i]);
+        }
+        CpioHeader read = new CpioHeader();
+        assertEquals(written, read.read(Channels.newChannel(new ByteArrayInputStream(bytes)), total));
+        assertEquals(name, read.getName());
+        assertEquals(CpioHeader.FILE, read.getType());
+        assertEquals(0644, read.getPermissions());
+        assertEquals(12345, read.getLongFileSize());
+        assertEquals(7, read.getInode());
+        assertEquals(1000, read.getUid());
+        assertEquals(100, read.getGid());
+        assertEquals(1500000000, read.getMtime());
+    }
+
+    private static CpioHeader newHeader(String name) {
+        CpioHeader header = new CpioHeader(name);
+        header.setType(CpioHeader.FILE);
+        header.setPermissions(0644);
+        header.setFileSize(12345L);
+        header.setInode(7);
+        header.setUid(1000);
+        header.setGid(100);
+        header.setMtime(1500000000000L);
+        return header;
+    }
+}
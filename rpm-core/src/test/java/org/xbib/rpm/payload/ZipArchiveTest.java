@@ -0,0 +1,131 @@
+package org.xbib.rpm.payload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.RpmReader;
+import org.xbib.rpm.RpmReaderFile;
+import org.xbib.rpm.RpmVerifier;
+import org.xbib.rpm.RpmVerifierResult;
+import org.xbib.rpm.RpmVerifierResult.Check;
+import org.xbib.rpm.RpmVerifierResult.Status;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.security.HashAlgo;
+import java.io.OutputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ *
+ */
+public class ZipArchiveTest {
+
+    private static final Map<String, String> ENTRIES = new LinkedHashMap<>();
+
+    static {
+        ENTRIES.put("lib/b.txt", "second entry, first in the payload");
+        ENTRIES.put("lib/a.txt", "first entry");
+        ENTRIES.put("bin/run.sh", "#!/bin/sh\necho run\n");
+        ENTRIES.put("empty.txt", "");
+    }
+
+    @Test
+    public void testEntries() throws Exception {
+        Path zip = createZip(Files.createDirectories(Paths.get("build/zip-archive")).resolve("entries.zip"));
+        try (ZipArchive archive = new ZipArchive(zip)) {
+            List<String> names = new ArrayList<>();
+            for (ArchiveEntry entry : archive.getEntries()) {
+                names.add(entry.getName());
+                assertEquals(ENTRIES.get(entry.getName()).length(), entry.getSize());
+            }
+            assertEquals(new ArrayList<>(ENTRIES.keySet()), names);
+            assertNull(archive.getEntry("lib/"));
+            assertNull(archive.getEntry("missing.txt"));
+        }
+    }
+
+    @Test
+    public void testDigestsAsURL() throws Exception {
+        Path zip = createZip(Files.createDirectories(Paths.get("build/zip-archive")).resolve("digests.zip"));
+        Contents urls = new Contents();
+        for (String name : ENTRIES.keySet()) {
+            urls.addURL("/opt/" + name, new URL("jar:" + zip.toUri().toURL() + "!/" + name),
+                    -1, null, null, null, 0, 0, -1);
+        }
+        try (ZipArchive archive = new ZipArchive(zip)) {
+            Contents entries = new Contents();
+            for (ArchiveEntry entry : archive.getEntries()) {
+                entries.addArchiveEntry("/opt/" + entry.getName(), entry, -1, null, null, null, 0, 0, -1);
+            }
+            assertEquals(urls.getLongTotalSize(), entries.getLongTotalSize());
+            assertEquals(urls.getDigests(HashAlgo.SHA256), entries.getDigests(HashAlgo.SHA256));
+            assertEquals(urls.getDigests(HashAlgo.SHA256), entries.getDigests(HashAlgo.SHA256, 2));
+        }
+    }
+
+    @Test
+    public void testBuild() throws Exception {
+        Path directory = Files.createDirectories(Paths.get("build/zip-archive"));
+        Path zip = createZip(directory.resolve("build.zip"));
+        for (int parallelism : new int[] { 1, 2 }) {
+            Path path = directory.resolve("zip-test-" + parallelism + "-1.0-1.noarch.rpm");
+            try (ZipArchive archive = new ZipArchive(zip)) {
+                RpmBuilder rpmBuilder = new RpmBuilder();
+                rpmBuilder.setPackage("zip-test-" + parallelism, "1.0", "1");
+                rpmBuilder.setBuildHost("localhost");
+                rpmBuilder.setLicense("GPL");
+                rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+                rpmBuilder.setType(PackageType.BINARY);
+                rpmBuilder.setDigestParallelism(parallelism);
+                for (ArchiveEntry entry : archive.getEntries()) {
+                    rpmBuilder.addArchiveEntry("/opt/zip/" + entry.getName(), entry, 0644, 0755,
+                            EnumSet.of(Directive.NONE), "root", "root");
+                }
+                rpmBuilder.build(directory);
+            }
+            RpmVerifierResult result = new RpmVerifier().verify(path);
+            assertEquals(Status.OK, result.getStatus(Check.PAYLOADDIGEST), result.toString());
+            assertEquals(Status.OK, result.getStatus(Check.MD5), result.toString());
+            int files = 0;
+            for (RpmReaderFile file : new RpmReader().read(path).getFiles()) {
+                if (file.getType() == CpioHeader.FILE) {
+                    String name = file.getName().substring(file.getName().indexOf("/opt/zip/") + "/opt/zip/".length());
+                    ByteBuffer contents = file.getContents();
+                    byte[] bytes = new byte[contents.remaining()];
+                    contents.get(bytes);
+                    assertEquals(ENTRIES.get(name), new String(bytes, StandardCharsets.UTF_8), name);
+                    files++;
+                }
+            }
+            assertEquals(ENTRIES.size(), files);
+        }
+    }
+
+    private static Path createZip(Path path) throws Exception {
+        try (OutputStream outputStream = Files.newOutputStream(path);
+             ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+            zipOutputStream.putNextEntry(new ZipEntry("lib/"));
+            zipOutputStream.closeEntry();
+            for (Map.Entry<String, String> entry : ENTRIES.entrySet()) {
+                zipOutputStream.putNextEntry(new ZipEntry(entry.getKey()));
+                zipOutputStream.write(entry.getValue().getBytes(StandardCharsets.UTF_8));
+                zipOutputStream.closeEntry();
+            }
+        }
+        return path;
+    }
+}
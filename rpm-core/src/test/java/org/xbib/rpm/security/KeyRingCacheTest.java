@@ -0,0 +1,76 @@
+package org.xbib.rpm.security;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.xbib.rpm.RpmBuilder;
+import org.xbib.rpm.RpmVerifier;
+import org.xbib.rpm.lead.Architecture;
+import org.xbib.rpm.lead.Os;
+import org.xbib.rpm.lead.PackageType;
+import org.xbib.rpm.payload.Directive;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class KeyRingCacheTest {
+
+    @Test
+    public void testCache() throws Exception {
+        byte[] keyRing = readKeyRing();
+        KeyRingCache keyRingCache = new KeyRingCache();
+        SigningKey signingKey = keyRingCache.getSigningKey(keyRing, null, "test");
+        assertSame(signingKey, keyRingCache.getSigningKey(keyRing, null, "test"));
+        assertSame(signingKey, keyRingCache.getSigningKey(keyRing.clone(), null, "test"));
+        assertEquals(1, keyRingCache.size());
+        assertThrows(IllegalArgumentException.class, () -> keyRingCache.getSigningKey(keyRing, null, "wrong"));
+        assertEquals(1, keyRingCache.size());
+    }
+
+    @Test
+    public void testConcurrentBuilds() throws Exception {
+        SigningKey signingKey = new KeyRingCache().getSigningKey(readKeyRing(), null, "test");
+        Path directory = Files.createDirectories(Paths.get("build/signing-key"));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                String release = Integer.toString(i);
+                futures.add(executorService.submit(() -> {
+                    RpmBuilder rpmBuilder = new RpmBuilder();
+                    rpmBuilder.setPackage("signing-key-test", "1.0", release);
+                    rpmBuilder.setBuildHost("localhost");
+                    rpmBuilder.setLicense("GPL");
+                    rpmBuilder.setPlatform(Architecture.NOARCH, Os.LINUX);
+                    rpmBuilder.setType(PackageType.BINARY);
+                    rpmBuilder.setSigningKey(signingKey);
+                    rpmBuilder.addFile("/etc/prein.sh", Paths.get("src/test/resources/prein.sh"), 493, 493,
+                            EnumSet.of(Directive.NONE), "root", "root", true);
+                    rpmBuilder.build(directory);
+                    return directory.resolve("signing-key-test-1.0-" + release + ".noarch.rpm");
+                }));
+            }
+            RpmVerifier rpmVerifier = new RpmVerifier(getClass().getResourceAsStream("/pgp/test-pubring.gpg"));
+            for (Future<Path> future : futures) {
+                assertTrue(rpmVerifier.verify(future.get()).isValid());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private byte[] readKeyRing() throws Exception {
+        try (InputStream inputStream = getClass().getResourceAsStream("/pgp/test-secring.gpg")) {
+            return inputStream.readAllBytes();
+        }
+    }
+}